@@ -0,0 +1,62 @@
+package kapistelykirjasto.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import kapistelykirjasto.domain.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The combined listings of ApplicationLogic on libraries of different sizes. Every tenth
+ * entry belongs to the listed course.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ApplicationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"file", "memory"})
+    public String storage;
+
+    private Library library;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        library = Library.open(storage);
+        library.seed(entries, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        library.close();
+    }
+
+    @Benchmark
+    public ArrayList<Entry> getEntries() {
+        return library.app.getEntries();
+    }
+
+    @Benchmark
+    public ArrayList<Entry> getCourseEntries() {
+        return library.app.getCourseEntries(1);
+    }
+}
@@ -0,0 +1,127 @@
+package kapistelykirjasto.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single operations of the SQLite DAOs against a library of 1000 entries and 10 courses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DaoBenchmark {
+
+    private static final int ENTRIES = 1000;
+    private static final int COURSES = 10;
+
+    @Param({"file", "memory"})
+    public String storage;
+
+    private Library library;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        library = Library.open(storage);
+        library.seed(ENTRIES, COURSES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        library.close();
+    }
+
+    private int nextId() {
+        next++;
+        return next % (ENTRIES / 2) + 1;
+    }
+
+    @Benchmark
+    public Result<String, Integer> createBook() {
+        next++;
+        return library.bookDao.createBook("Uusi kirja " + next, "", "Kirjailija", "ISBN-" + next);
+    }
+
+    @Benchmark
+    public boolean createAndDeleteBook() {
+        next++;
+        return library.bookDao.deleteBook(
+                library.bookDao.createBook("Poistettava " + next, "", "Kirjailija", "ISBN").getValue());
+    }
+
+    @Benchmark
+    public ArrayList<BookModel> getBooks() {
+        return library.bookDao.getBooks();
+    }
+
+    @Benchmark
+    public boolean editBook() {
+        int id = nextId();
+        return library.bookDao.editBook(id, "Kirja " + (id - 1), "Muokattu " + next, "Kirjailija", "ISBN");
+    }
+
+    @Benchmark
+    public boolean markBookAsRead() {
+        return library.bookDao.markBookAsRead(nextId());
+    }
+
+    @Benchmark
+    public Result<String, Integer> createVideo() {
+        next++;
+        return library.videoDao.createVideo("Uusi video " + next, "", "https://example.com/" + next, "1:00");
+    }
+
+    @Benchmark
+    public boolean createAndDeleteVideo() {
+        next++;
+        return library.videoDao.deleteVideo(
+                library.videoDao.createVideo("Poistettava " + next, "", "https://example.com", "").getValue());
+    }
+
+    @Benchmark
+    public ArrayList<VideoModel> getVideos() {
+        return library.videoDao.getVideos();
+    }
+
+    @Benchmark
+    public boolean editVideo() {
+        int id = nextId();
+        return library.videoDao.editVideo(id, "Video " + (id - 1), "Muokattu " + next, "https://example.com", "");
+    }
+
+    @Benchmark
+    public boolean markVideoAsRead() {
+        return library.videoDao.markVideoAsRead(nextId());
+    }
+
+    @Benchmark
+    public boolean addBookCourseRelation() {
+        return library.courseDao.addBookCourseRelation(next % COURSES + 1, nextId());
+    }
+
+    @Benchmark
+    public boolean addVideoCourseRelation() {
+        return library.courseDao.addVideoCourseRelation(next % COURSES + 1, nextId());
+    }
+}
@@ -0,0 +1,94 @@
+package kapistelykirjasto.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.SQLiteBookDao;
+import kapistelykirjasto.dao.SQLiteCourseDao;
+import kapistelykirjasto.dao.SQLiteEntryDao;
+import kapistelykirjasto.dao.SQLiteVideoDao;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.domain.ApplicationLogic;
+
+/**
+ * A benchmark database with all DAOs, either in a temporary file ("file") or in memory
+ * ("memory").
+ */
+class Library {
+
+    private static final int BATCH_SIZE = 10000;
+
+    final ConnectionProvider connections;
+    final SQLiteBookDao bookDao;
+    final SQLiteVideoDao videoDao;
+    final SQLiteCourseDao courseDao;
+    final ApplicationLogic app;
+    private final File file;
+
+    private Library(File file) {
+        this.file = file;
+        this.connections = new ConnectionProvider(file == null ? ":memory:" : file.getAbsolutePath());
+        this.bookDao = new SQLiteBookDao(connections);
+        this.videoDao = new SQLiteVideoDao(connections);
+        this.courseDao = new SQLiteCourseDao(connections);
+        this.app = new ApplicationLogic(bookDao, videoDao, courseDao, new SQLiteEntryDao(connections));
+    }
+
+    static Library open(String storage) throws IOException {
+        if (storage.equals("memory")) {
+            return new Library(null);
+        }
+        File file = File.createTempFile("kapistelykirjasto-benchmark", ".db");
+        file.deleteOnExit();
+        return new Library(file);
+    }
+
+    /**
+     * Adds the given number of entries, half books and half videos, and the given number
+     * of courses. Every tenth entry is linked to course 1.
+     */
+    void seed(int entries, int courses) throws SQLException {
+        for (int i = 1; i <= courses; i++) {
+            courseDao.createCourse("KURSSI" + i, "Kurssi " + i);
+        }
+        for (int first = 0; first < entries; first += BATCH_SIZE) {
+            int last = Math.min(entries, first + BATCH_SIZE);
+            bookDao.createBooks(books(first / 2, last / 2));
+            videoDao.createVideos(videos(first / 2, last / 2));
+        }
+        connections.transaction(connection -> {
+            for (int id = 1; id <= entries / 2; id += 10) {
+                courseDao.addBookCourseRelation(1, id);
+                courseDao.addVideoCourseRelation(1, id);
+            }
+            return null;
+        });
+    }
+
+    private static ArrayList<BookModel> books(int from, int to) {
+        ArrayList<BookModel> books = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            books.add(new BookModel(0, "Kirja " + i, "Kommentti " + i, "Kirjailija " + (i % 1000), "ISBN-" + i));
+        }
+        return books;
+    }
+
+    private static ArrayList<VideoModel> videos(int from, int to) {
+        ArrayList<VideoModel> videos = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            videos.add(new VideoModel(0, "Video " + i, "Kommentti " + i, "https://example.com/" + i, "1:00"));
+        }
+        return videos;
+    }
+
+    void close() {
+        connections.close();
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
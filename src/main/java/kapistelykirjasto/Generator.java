@@ -0,0 +1,176 @@
+package kapistelykirjasto;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import kapistelykirjasto.dao.*;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Fills a database with a synthetic library for load and scale tests. The same seed
+ * always produces the same library. The database is written with the "bulk-load"
+ * profile, so it must not be in use while generating.
+ *
+ * Usage: Generator [file] [books] [videos] [courses] [fan-out] [seed]
+ *
+ * Course sizes follow Zipf's law: the course of rank r gets about fanOut * courses /
+ * (r * H(courses)) entries, so a few courses have most of the links and the average is
+ * fanOut, like real course lists.
+ */
+public class Generator {
+
+    private static final int BATCH_SIZE = 10000;
+    private static final String[] WORDS = {"Algoritmit", "Tietorakenteet", "Ohjelmointi", "Java", "Python",
+        "Tietokannat", "Verkot", "Käyttöjärjestelmät", "Laskenta", "Teoria", "Johdatus", "Käytännön",
+        "Moderni", "Funktionaalinen", "Rinnakkainen", "Hajautettu", "Ohjelmistotuotanto", "Testaus",
+        "Koneoppiminen", "Tilastotiede", "Kääntäjät", "Grafiikka", "Turvallisuus", "Web"};
+
+    private final BookDao bookDao;
+    private final VideoDao videoDao;
+    private final CourseDao courseDao;
+    private final ConnectionProvider connections;
+    private final Random random;
+
+    public Generator(ConnectionProvider connections, long seed) {
+        this.connections = connections;
+        this.bookDao = new SQLiteBookDao(connections);
+        this.videoDao = new SQLiteVideoDao(connections);
+        this.courseDao = new SQLiteCourseDao(connections);
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws SQLException {
+        String fileName = args.length > 0 ? args[0] : "library.db";
+        int books = argument(args, 1, 10000);
+        int videos = argument(args, 2, 10000);
+        int courses = argument(args, 3, 100);
+        int fanOut = argument(args, 4, 50);
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+        ConnectionProvider connections = new ConnectionProvider(fileName, DatabaseProfile.BULK_LOAD);
+        long start = System.nanoTime();
+        new Generator(connections, seed).generate(books, videos, courses, fanOut);
+        connections.close();
+        System.out.printf("%s: %d kirjaa, %d videota, %d kurssia (%.1f s)%n", fileName, books, videos, courses,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    private static int argument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    public void generate(int books, int videos, int courses, int fanOut) throws SQLException {
+        int[] bookIds = createAll(books, this::book, bookDao::createBooks);
+        int[] videoIds = createAll(videos, this::video, videoDao::createVideos);
+        int[] courseIds = createCourses(courses);
+        double harmonic = 0;
+        for (int rank = 1; rank <= courseIds.length; rank++) {
+            harmonic += 1.0 / rank;
+        }
+        for (int rank = 1; rank <= courseIds.length; rank++) {
+            int size = (int) Math.round(fanOut * courseIds.length / (rank * harmonic));
+            link(courseIds[rank - 1], size, bookIds, videoIds);
+        }
+    }
+
+    /**
+     * Creates the courses and returns their ids in the order they were created. The
+     * database may already have courses, so the new ones are those with a higher id than
+     * any course before.
+     */
+    private int[] createCourses(int courses) {
+        int last = 0;
+        for (CourseModel course : courseDao.getCourses()) {
+            last = Math.max(last, course.getId());
+        }
+        for (int i = 1; i <= courses; i++) {
+            courseDao.createCourse("TKT" + (20000 + i), title());
+        }
+        int newest = last;
+        return courseDao.getCourses().stream().mapToInt(CourseModel::getId).filter(id -> id > newest).sorted()
+                .toArray();
+    }
+
+    /**
+     * Creates the models in batches of BATCH_SIZE, each in its own transaction, and returns
+     * the ids of the created rows. A rejected row, such as a title already in an existing
+     * database, is skipped and reported.
+     */
+    private <T> int[] createAll(int count, IntFunction<T> model, Function<List<T>, List<Result<String, Integer>>> create) {
+        int[] ids = new int[count];
+        int created = 0;
+        ArrayList<String> errors = new ArrayList<>();
+        for (int first = 0; first < count; first += BATCH_SIZE) {
+            ArrayList<T> batch = new ArrayList<>();
+            for (int i = first; i < Math.min(count, first + BATCH_SIZE); i++) {
+                batch.add(model.apply(i));
+            }
+            created = collectIds(create.apply(batch), ids, created, errors);
+        }
+        if (!errors.isEmpty()) {
+            System.out.printf("%d riviä ohitettiin, esimerkiksi: %s%n", errors.size(), errors.get(0));
+        }
+        return Arrays.copyOf(ids, created);
+    }
+
+    private static int collectIds(List<Result<String, Integer>> results, int[] ids, int created,
+            List<String> errors) {
+        for (Result<String, Integer> result : results) {
+            if (result.isValue()) {
+                ids[created++] = result.getValue();
+            } else {
+                errors.add(result.getError());
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Links the course to size random entries, books and videos in proportion to their
+     * counts, in one transaction.
+     */
+    private void link(int courseId, int size, int[] bookIds, int[] videoIds) throws SQLException {
+        int total = bookIds.length + videoIds.length;
+        connections.transaction(connection -> {
+            for (int i = 0; i < Math.min(size, total); i++) {
+                int pick = random.nextInt(total);
+                if (pick < bookIds.length) {
+                    courseDao.addBookCourseRelation(courseId, bookIds[pick]);
+                } else {
+                    courseDao.addVideoCourseRelation(courseId, videoIds[pick - bookIds.length]);
+                }
+            }
+            return null;
+        });
+    }
+
+    private BookModel book(int i) {
+        return new BookModel(0, title() + " (" + i + ")", comment(), "Kirjailija " + random.nextInt(5000),
+                String.format("978-%010d", random.nextInt(Integer.MAX_VALUE)));
+    }
+
+    private VideoModel video(int i) {
+        return new VideoModel(0, title() + " -video (" + i + ")", comment(),
+                "https://www.youtube.com/watch?v=" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36),
+                (1 + random.nextInt(90)) + ":" + String.format("%02d", random.nextInt(60)));
+    }
+
+    private String title() {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)].toLowerCase();
+    }
+
+    private String comment() {
+        StringBuilder comment = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            comment.append(comment.length() == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)].toLowerCase());
+        }
+        return comment.toString();
+    }
+}
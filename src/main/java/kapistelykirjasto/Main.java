@@ -4,16 +4,83 @@ import kapistelykirjasto.dao.*;
 import kapistelykirjasto.ui.*;
 import kapistelykirjasto.ui.cli.CLI;
 import kapistelykirjasto.domain.*;
+import kapistelykirjasto.util.FlightRecording;
+import kapistelykirjasto.util.MetricsRegistry;
+import kapistelykirjasto.util.Threads;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Starts the command line application on library.db. The only argument picks the
+ * database profile: the name of a profile ("safe", "balanced" or "bulk-load") or a
+ * .properties file with the pragmas (see DatabaseProfile). The default is "balanced".
+ */
 public class Main {
-    public static void main(String[] args) {
+
+    private static final long SLOW_QUERY_MILLIS = 100;
+
+    public static void main(String[] args) throws IOException {
         String dbFileName = "library.db";
-        BookDao bookDao = new SQLiteBookDao(dbFileName);
-        VideoDao videoDao = new SQLiteVideoDao(dbFileName);
-        CourseDao courseDao = new SQLiteCourseDao(dbFileName);
-        Application app = new ApplicationLogic(bookDao, videoDao, courseDao);
+        ConnectionProvider connections = new ConnectionProvider(dbFileName, profile(args.length > 0 ? args[0] : null));
+        SlowQueryLog slowQueryLog = new SlowQueryLog(Paths.get("slow-queries.log"), SLOW_QUERY_MILLIS);
+        connections.setSlowQueryLog(slowQueryLog);
+        connections.startWriteQueue();
+        MetricsRegistry metrics = new MetricsRegistry();
+        ExecutorService executor = Threads.newExecutor(ConnectionProvider.DEFAULT_MAX_READERS);
+        Application app = createApplication(connections, metrics, executor);
         IO io = new ConsoleIO();
-        CLI userInterface = new CLI(app, io);
+        FlightRecording recording = new FlightRecording(Paths.get("kapistelykirjasto.jfr"));
+        CLI userInterface = new CLI(app, io, metrics, recording);
         userInterface.run();
+        if (recording.isRunning()) {
+            io.print(recording.toggle());
+        }
+        executor.shutdown();
+        connections.close();
+        slowQueryLog.close();
+    }
+
+    /**
+     * The named profile or the profile in the given .properties file, or "balanced" if
+     * the argument is null.
+     */
+    static DatabaseProfile profile(String argument) throws IOException {
+        if (argument == null) {
+            return DatabaseProfile.BALANCED;
+        } else if (argument.endsWith(".properties")) {
+            return DatabaseProfile.load(Paths.get(argument));
+        }
+        return DatabaseProfile.forName(argument);
+    }
+
+    static Application createApplication(ConnectionProvider connections, MetricsRegistry metrics,
+            ExecutorService executor) {
+        return createApplication(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                new SQLiteCourseDao(connections), new SQLiteEntryDao(connections), metrics, executor);
+    }
+
+    /**
+     * Like createApplication, but one object that keeps the whole library by itself, a
+     * MemoryDao or a LogDao, serves as all the DAOs.
+     */
+    static <D extends BookDao & VideoDao & CourseDao & EntryDao> Application createApplication(D dao,
+            MetricsRegistry metrics, ExecutorService executor) {
+        return createApplication(dao, dao, dao, dao, metrics, executor);
+    }
+
+    /**
+     * Builds the application on metered DAOs, with the listing cache and the flight
+     * recorder events.
+     */
+    private static Application createApplication(BookDao books, VideoDao videos, CourseDao courses,
+            EntryDao entries, MetricsRegistry metrics, ExecutorService executor) {
+        BookDao bookDao = MeteredDao.wrap(BookDao.class, books, metrics);
+        VideoDao videoDao = MeteredDao.wrap(VideoDao.class, videos, metrics);
+        CourseDao courseDao = MeteredDao.wrap(CourseDao.class, courses, metrics);
+        EntryDao entryDao = MeteredDao.wrap(EntryDao.class, entries, metrics);
+        return RecordedApplication.wrap(new CachingApplication(new ApplicationLogic(bookDao, videoDao, courseDao,
+                entryDao, executor)));
     }
 }
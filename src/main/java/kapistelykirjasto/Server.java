@@ -0,0 +1,100 @@
+package kapistelykirjasto;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.DatabaseProfile;
+import kapistelykirjasto.dao.LogDao;
+import kapistelykirjasto.dao.MemoryDao;
+import kapistelykirjasto.domain.Application;
+import kapistelykirjasto.ui.http.LibraryServer;
+import kapistelykirjasto.util.MetricsRegistry;
+import kapistelykirjasto.util.Threads;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves library.db over HTTP instead of the command line, for many users at once.
+ *
+ * Usage: Server [port] [max concurrent requests] [database profile] [memory|log]
+ *
+ * The database profile is given as for Main. Writes from concurrent requests share
+ * commits through the write queue of the ConnectionProvider. With "memory" the whole
+ * library is loaded into a MemoryDao at start, so that reads never touch the database.
+ * The MemoryDao is saved to library.snapshot every SNAPSHOT_INTERVAL_MILLIS and at
+ * shutdown, and the next start reads the snapshot instead of the database if nothing
+ * has been written to the database in between.
+ *
+ * With "log" there is no database: the library is kept by a LogDao in the directory
+ * library-log, which is snapshotted as often. Every change is forced to the disk only
+ * if the database profile is durable ("safe").
+ */
+public class Server {
+
+    static final Path SNAPSHOT = Paths.get("library.snapshot");
+    static final Path LOG = Paths.get("library-log");
+    static final long SNAPSHOT_INTERVAL_MILLIS = 60_000;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxConcurrent = args.length > 1 ? Integer.parseInt(args[1]) : LibraryServer.DEFAULT_MAX_CONCURRENT;
+        // separate executors, so that the page loads forked by a request never wait behind requests
+        ExecutorService executor = Threads.newExecutor(ConnectionProvider.DEFAULT_MAX_READERS);
+        ExecutorService requests = Threads.newExecutor(maxConcurrent);
+        ArrayDeque<Runnable> closing = new ArrayDeque<>();
+        Application app = createApplication(Main.profile(args.length > 2 ? args[2] : null),
+                args.length > 3 ? args[3] : "", executor, closing);
+        LibraryServer server = new LibraryServer(app, new InetSocketAddress(port), maxConcurrent,
+                LibraryServer.DEFAULT_QUEUE_TIMEOUT_MILLIS, requests);
+        Runnable stop = () -> stop(server, requests, executor, closing);
+        Runtime.getRuntime().addShutdownHook(new Thread(stop));
+        server.start();
+        System.out.println("kirjasto palvelee osoitteessa http://localhost:" + server.getPort() + "/");
+    }
+
+    /**
+     * Opens the storage and pushes what must be closed at shutdown on closing, the first
+     * to close on top.
+     */
+    private static Application createApplication(DatabaseProfile profile, String storage, ExecutorService executor,
+            ArrayDeque<Runnable> closing) throws IOException, SQLException {
+        if (storage.equals("log")) {
+            LogDao log = LogDao.open(LOG, profile.isDurable());
+            log.startSnapshots(SNAPSHOT_INTERVAL_MILLIS);
+            closing.push(log::close);
+            return Main.createApplication(log, new MetricsRegistry(), executor);
+        }
+        ConnectionProvider connections = new ConnectionProvider("library.db", profile);
+        connections.startWriteQueue();
+        closing.push(connections::close);
+        if (!storage.equals("memory")) {
+            return Main.createApplication(connections, new MetricsRegistry(), executor);
+        }
+        MemoryDao memory = loadMemory(connections);
+        closing.push(memory::close);
+        return Main.createApplication(memory, new MetricsRegistry(), executor);
+    }
+
+    private static MemoryDao loadMemory(ConnectionProvider connections) throws SQLException {
+        long start = System.nanoTime();
+        MemoryDao memory = MemoryDao.load(connections, SNAPSHOT);
+        System.out.println("kirjasto ladattu muistiin: " + memory.size() + " lukuvinkkiä, "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        memory.startSnapshots(SNAPSHOT, SNAPSHOT_INTERVAL_MILLIS);
+        return memory;
+    }
+
+    private static void stop(LibraryServer server, ExecutorService requests, ExecutorService executor,
+            ArrayDeque<Runnable> closing) {
+        server.stop(1);
+        requests.shutdown();
+        executor.shutdown();
+        for (Runnable close : closing) {
+            close.run();
+        }
+    }
+}
@@ -1,17 +1,45 @@
 package kapistelykirjasto.dao;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 import kapistelykirjasto.dao.models.BookModel;
 import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
 import kapistelykirjasto.util.Result;
 
 public interface BookDao {
 
     public Result<String, Integer> createBook(String title, String comment, String author, String ISBN);
 
+    /**
+     * Creates the book and links it to the given courses in one transaction. Nothing is
+     * written if any of the inserts fails.
+     */
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN, int[] courseIds);
+
+    /**
+     * Creates all books in one transaction. The ids of the given models are ignored; the
+     * result list has one entry per book, in order, so a duplicate title fails only its
+     * own row.
+     */
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books);
+
     public ArrayList<BookModel> getBooks();
 
+    /**
+     * Returns at most pageSize books ordered by the given sort key and id, starting after
+     * the position encoded in token, or from the beginning if token is null.
+     */
+    public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize);
+
+    /**
+     * Returns all books as a lazy stream that reads fetchSize rows from the database at a
+     * time. The stream keeps a connection open until it is fully consumed or closed.
+     */
+    public Stream<BookModel> streamBooks(int fetchSize);
+
     public boolean deleteBook(int id);
 
     public boolean editBook(int id, String title, String comment, String author, String ISBN);
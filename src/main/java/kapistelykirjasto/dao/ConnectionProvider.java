@@ -0,0 +1,407 @@
+package kapistelykirjasto.dao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Owns all connections to one SQLite database: a single writer connection shared by
+ * every DAO and a bounded pool of read-only connections. In-memory databases cannot be
+ * shared between connections, so for ":memory:" every read is served by the writer.
+ * Every connection is opened with the pragmas of the provider's DatabaseProfile.
+ */
+public class ConnectionProvider {
+
+    public static final int DEFAULT_MAX_READERS = 4;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+
+    private final String fileName;
+    private final int maxReaders;
+    private final long acquireTimeoutMillis;
+    private final int statementCacheSize;
+    private final DatabaseProfile profile;
+
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private Connection writer;
+
+    private final BlockingQueue<Connection> idleReaders;
+    private final ArrayList<Connection> openReaders = new ArrayList<>();
+    private final AtomicInteger openReaderCount = new AtomicInteger();
+    private volatile boolean closed = false;
+    private volatile boolean migrated = false;
+    private volatile SlowQueryLog slowQueryLog;
+    private volatile WriteQueue writeQueue;
+
+    private final WaitStatistics writerWaits = new WaitStatistics();
+    private final WaitStatistics readerWaits = new WaitStatistics();
+    private final StatementCache.Statistics statementCacheStatistics = new StatementCache.Statistics();
+
+    public ConnectionProvider(String fileName, int maxReaders, long acquireTimeoutMillis, int statementCacheSize,
+            DatabaseProfile profile) {
+        this.fileName = fileName;
+        this.maxReaders = isInMemory(fileName) ? 0 : maxReaders;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.profile = profile;
+        this.idleReaders = new ArrayBlockingQueue<>(Math.max(1, this.maxReaders));
+    }
+
+    public ConnectionProvider(String fileName, int maxReaders, long acquireTimeoutMillis, int statementCacheSize) {
+        this(fileName, maxReaders, acquireTimeoutMillis, statementCacheSize, DatabaseProfile.SAFE);
+    }
+
+    public ConnectionProvider(String fileName, int maxReaders, long acquireTimeoutMillis) {
+        this(fileName, maxReaders, acquireTimeoutMillis, StatementCache.DEFAULT_SIZE);
+    }
+
+    public ConnectionProvider(String fileName) {
+        this(fileName, DEFAULT_MAX_READERS, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionProvider(String fileName, DatabaseProfile profile) {
+        this(fileName, DEFAULT_MAX_READERS, DEFAULT_ACQUIRE_TIMEOUT_MILLIS, StatementCache.DEFAULT_SIZE, profile);
+    }
+
+    private static boolean isInMemory(String fileName) {
+        return fileName.equals(":memory:") || fileName.isEmpty();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public DatabaseProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Logs the slow statements of the connections that are opened after this call.
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * From now on runs the writes of other threads on one writer thread that commits
+     * everything waiting in the queue together (see WriteQueue). A thread that already
+     * holds the writer, like the writer thread itself, still writes directly.
+     */
+    public synchronized WriteQueue startWriteQueue(int capacity, int maxBatch) {
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue(this, capacity, maxBatch, acquireTimeoutMillis);
+        }
+        return writeQueue;
+    }
+
+    public WriteQueue startWriteQueue() {
+        return startWriteQueue(WriteQueue.DEFAULT_CAPACITY, WriteQueue.DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * The write queue, or null if writes are not queued.
+     */
+    public WriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * Applies the schema migrations that are missing from the database. Only the first
+     * call per provider touches the database.
+     */
+    public void migrate() throws SQLException {
+        if (migrated) {
+            return;
+        }
+        write(connection -> {
+            if (!migrated) {
+                SchemaMigrations.migrate(connection);
+                migrated = true;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs the given work on the writer connection, or queues it to the write queue and
+     * waits for it to be committed.
+     */
+    public <T> T write(Work<T> work) throws SQLException {
+        if (isQueued()) {
+            return writeQueue.run(work);
+        }
+        Connection connection = acquireWriter();
+        try {
+            return work.run(connection);
+        } finally {
+            releaseWriter();
+        }
+    }
+
+    /**
+     * Runs the given work on the writer connection inside one transaction, which is rolled
+     * back if the work throws. Nested calls join the transaction that is already open.
+     */
+    public <T> T transaction(Work<T> work) throws SQLException {
+        if (isQueued()) {
+            return writeQueue.run(work);
+        }
+        Connection connection = acquireWriter();
+        try {
+            return runInTransaction(connection, work);
+        } finally {
+            releaseWriter();
+        }
+    }
+
+    private boolean isQueued() {
+        return writeQueue != null && !writerLock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Runs the work in a transaction of its own, or as a part of the transaction that is
+     * already open on the connection.
+     */
+    static <T> T runInTransaction(Connection connection, Work<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.run(connection);
+        }
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Runs the given work on a pooled read-only connection.
+     */
+    public <T> T read(Work<T> work) throws SQLException {
+        Connection connection = acquireReader();
+        try {
+            return work.run(connection);
+        } finally {
+            releaseReader(connection);
+        }
+    }
+
+    /**
+     * Locks the writer connection for the calling thread. The lock is reentrant, so a DAO
+     * method may call another writing method while holding it. Every call must be paired
+     * with {@link #releaseWriter()}.
+     */
+    public Connection acquireWriter() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!writerLock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("kirjoitusyhteyden odotus aikakatkaistiin");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("kirjoitusyhteyden odotus keskeytettiin", e);
+        }
+        writerWaits.record(System.nanoTime() - start);
+        try {
+            return getOrOpenWriter();
+        } catch (SQLException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    public void releaseWriter() {
+        writerLock.unlock();
+    }
+
+    private Connection getOrOpenWriter() throws SQLException {
+        ensureOpen();
+        if (writer == null) {
+            writer = open(false);
+        }
+        return writer;
+    }
+
+    /**
+     * Borrows a read-only connection, waiting for one to be returned when all of them are
+     * in use. A thread that currently holds the writer gets the writer back so that it
+     * sees its own uncommitted changes.
+     */
+    public Connection acquireReader() throws SQLException {
+        if (maxReaders == 0 || writerLock.isHeldByCurrentThread()) {
+            return acquireWriter();
+        }
+        ensureOpen();
+        long start = System.nanoTime();
+        Connection connection = idleReaders.poll();
+        if (connection == null) {
+            connection = openReaderOrWait();
+        }
+        readerWaits.record(System.nanoTime() - start);
+        return connection;
+    }
+
+    public void releaseReader(Connection connection) {
+        if (connection == writer) {
+            releaseWriter();
+        } else if (closed || !idleReaders.offer(connection)) {
+            closeQuietly(connection);
+        }
+    }
+
+    private Connection openReaderOrWait() throws SQLException {
+        if (openReaderCount.incrementAndGet() <= maxReaders) {
+            return openReader();
+        }
+        openReaderCount.decrementAndGet();
+        try {
+            Connection connection = idleReaders.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (connection == null) {
+                throw new SQLException("lukuyhteyden odotus aikakatkaistiin");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("lukuyhteyden odotus keskeytettiin", e);
+        }
+    }
+
+    private Connection openReader() throws SQLException {
+        try {
+            Connection connection = open(true);
+            synchronized (openReaders) {
+                openReaders.add(connection);
+            }
+            return connection;
+        } catch (SQLException e) {
+            openReaderCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnly);
+        config.enforceForeignKeys(true);
+        profile.apply(config, readOnly);
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + fileName, config.toProperties());
+        if (slowQueryLog != null) {
+            connection = slowQueryLog.wrap(connection);
+        }
+        return StatementCache.wrap(connection, statementCacheSize, statementCacheStatistics);
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("database connection closed");
+        }
+    }
+
+    public WaitStatistics getWriterWaits() {
+        return writerWaits;
+    }
+
+    public WaitStatistics getReaderWaits() {
+        return readerWaits;
+    }
+
+    public StatementCache.Statistics getStatementCacheStatistics() {
+        return statementCacheStatistics;
+    }
+
+    public int getOpenReaderCount() {
+        return Math.min(openReaderCount.get(), maxReaders);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Writes what is left in the write queue and closes every connection.
+     */
+    public void close() {
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        closed = true;
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                closeQuietly(writer);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+        synchronized (openReaders) {
+            openReaders.forEach(ConnectionProvider::closeQuietly);
+            openReaders.clear();
+        }
+        idleReaders.clear();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Counts how long callers have waited to get a connection.
+     */
+    public static class WaitStatistics {
+
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        void record(long waitNanos) {
+            acquisitions.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        public long getAcquisitions() {
+            return acquisitions.get();
+        }
+
+        public long getTotalWaitNanos() {
+            return totalWaitNanos.get();
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos.get();
+        }
+
+        public double getAverageWaitMillis() {
+            long count = getAcquisitions();
+            return count == 0 ? 0 : getTotalWaitNanos() / (double) count / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hakua, keskimäärin %.3f ms, enintään %.3f ms",
+                    getAcquisitions(), getAverageWaitMillis(), getMaxWaitNanos() / 1000000.0);
+        }
+    }
+}
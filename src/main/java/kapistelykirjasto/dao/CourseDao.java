@@ -1,12 +1,18 @@
 package kapistelykirjasto.dao;
 
 import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.util.Result;
 import java.util.List;
 
 public interface CourseDao {
 
     public boolean createCourse(String courseCode, String name);
 
+    /**
+     * Creates the course like createCourse and returns its id.
+     */
+    public Result<String, Integer> insertCourse(String courseCode, String name);
+
     public boolean addBookCourseRelation(int courseId, int bookId);
 
     public boolean addVideoCourseRelation(int courseId, int videoId);
@@ -0,0 +1,103 @@
+package kapistelykirjasto.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams the rows of one query straight from an open ResultSet. The read connection is
+ * borrowed when the first row is requested and given back when the rows run out or the
+ * stream is closed, so a stream that is never consumed holds nothing, and one that is
+ * abandoned half way must be closed (use try-with-resources).
+ *
+ * While the cursor is open it holds a read transaction on its connection; for an
+ * in-memory database that is the writer, which other threads then wait for.
+ */
+class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final ConnectionProvider connections;
+    private final String sql;
+    private final Object[] params;
+    private final int fetchSize;
+    private final Util.RowMapper<T> mapper;
+
+    private Connection connection;
+    private PreparedStatement stmt;
+    private ResultSet rs;
+    private StatementEvent event;
+    private int rows = 0;
+    private boolean done = false;
+
+    private Cursor(ConnectionProvider connections, String sql, Object[] params, int fetchSize,
+            Util.RowMapper<T> mapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.connections = connections;
+        this.sql = sql;
+        this.params = params;
+        this.fetchSize = fetchSize;
+        this.mapper = mapper;
+    }
+
+    static <T> Stream<T> stream(ConnectionProvider connections, String sql, int fetchSize, Util.RowMapper<T> mapper,
+            Object... params) {
+        Cursor<T> cursor = new Cursor<>(connections, sql, params, fetchSize, mapper);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (done) {
+            return false;
+        }
+        try {
+            if (rs == null) {
+                open();
+            }
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            action.accept(mapper.map(rs));
+            rows++;
+            return true;
+        } catch (SQLException e) {
+            close();
+            throw new RuntimeException("tietokannan lukeminen epäonnistui: " + sql, e);
+        }
+    }
+
+    private void open() throws SQLException {
+        connection = connections.acquireReader();
+        stmt = connection.prepareStatement(sql);
+        stmt.setFetchSize(fetchSize);
+        event = StatementEvent.start(sql);
+        rs = Util.setObjects(stmt, params).executeQuery();
+    }
+
+    void close() {
+        if (done) {
+            return;
+        }
+        done = true;
+        if (event != null) {
+            event.finish(rows);
+        }
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            if (connection != null) {
+                connections.releaseReader(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package kapistelykirjasto.dao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * The SQLite settings applied to every connection a ConnectionProvider opens. There are
+ * three named profiles:
+ * <ul>
+ * <li>"safe": the SQLite defaults, a rollback journal and a full fsync on every commit.
+ * Readers and the writer block each other.</li>
+ * <li>"balanced": a write-ahead log synced only at checkpoints, a 64 MB page cache and
+ * 256 MB of memory mapped I/O. Readers run while the writer commits, and a commit that
+ * is lost in a power cut leaves the database consistent.</li>
+ * <li>"bulk-load": the journal in memory and no fsync at all, for filling an empty
+ * database. A crash during the load can corrupt the database.</li>
+ * </ul>
+ * A profile can also be read from a properties file, which names a profile to start from
+ * and overrides single pragmas, for example:
+ * <pre>
+ * profile=balanced
+ * cache_size=-262144
+ * busy_timeout=10000
+ * </pre>
+ * The journal mode is stored in the database file, so it is set only by the writer.
+ */
+public class DatabaseProfile {
+
+    public static final DatabaseProfile SAFE = new DatabaseProfile("safe", "DELETE", "FULL", -2000, 0, 3000,
+            "DEFAULT");
+    public static final DatabaseProfile BALANCED = new DatabaseProfile("balanced", "WAL", "NORMAL", -65536,
+            268435456L, 5000, "MEMORY");
+    public static final DatabaseProfile BULK_LOAD = new DatabaseProfile("bulk-load", "MEMORY", "OFF", -262144,
+            268435456L, 30000, "MEMORY");
+
+    private final String name;
+    private final SQLiteConfig.JournalMode journalMode;
+    private final SQLiteConfig.SynchronousMode synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+    private final int busyTimeout;
+    private final SQLiteConfig.TempStore tempStore;
+
+    /**
+     * The cache size is in pages, or in kibibytes when negative, as in PRAGMA
+     * cache_size. The mmap size is in bytes and the busy timeout in milliseconds.
+     */
+    public DatabaseProfile(String name, String journalMode, String synchronous, int cacheSize, long mmapSize,
+            int busyTimeout, String tempStore) {
+        this.name = name;
+        this.journalMode = SQLiteConfig.JournalMode.valueOf(journalMode.toUpperCase(Locale.ROOT));
+        this.synchronous = SQLiteConfig.SynchronousMode.valueOf(synchronous.toUpperCase(Locale.ROOT));
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.busyTimeout = busyTimeout;
+        this.tempStore = SQLiteConfig.TempStore.valueOf(tempStore.toUpperCase(Locale.ROOT));
+    }
+
+    public static DatabaseProfile forName(String name) {
+        for (DatabaseProfile profile : new DatabaseProfile[] {SAFE, BALANCED, BULK_LOAD}) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("tuntematon tietokantaprofiili: " + name);
+    }
+
+    /**
+     * Reads a profile from a properties file. Pragmas missing from the file are taken
+     * from the profile named by the key "profile", or from "balanced".
+     */
+    public static DatabaseProfile load(Path file) throws IOException {
+        Properties properties = new Properties();
+        Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            properties.load(reader);
+        } finally {
+            reader.close();
+        }
+        return fromProperties(properties);
+    }
+
+    static DatabaseProfile fromProperties(Properties properties) {
+        DatabaseProfile base = forName(properties.getProperty("profile", BALANCED.name));
+        try {
+            return new DatabaseProfile(base.name,
+                    properties.getProperty("journal_mode", base.journalMode.name()),
+                    properties.getProperty("synchronous", base.synchronous.name()),
+                    Integer.parseInt(properties.getProperty("cache_size", String.valueOf(base.cacheSize))),
+                    Long.parseLong(properties.getProperty("mmap_size", String.valueOf(base.mmapSize))),
+                    Integer.parseInt(properties.getProperty("busy_timeout", String.valueOf(base.busyTimeout))),
+                    properties.getProperty("temp_store", base.tempStore.name()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("virheellinen tietokanta-asetus: " + e.getMessage(), e);
+        }
+    }
+
+    void apply(SQLiteConfig config, boolean readOnly) {
+        if (!readOnly) {
+            config.setJournalMode(journalMode);
+        }
+        config.setSynchronous(synchronous);
+        config.setCacheSize(cacheSize);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        config.setBusyTimeout(busyTimeout);
+        config.setTempStore(tempStore);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tells if every commit is forced to the disk (synchronous FULL), so that it survives
+     * a power cut.
+     */
+    public boolean isDurable() {
+        return synchronous == SQLiteConfig.SynchronousMode.FULL;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (journal_mode=%s, synchronous=%s, cache_size=%d, mmap_size=%d, busy_timeout=%d"
+                + ", temp_store=%s)", name, journalMode, synchronous, cacheSize, mmapSize, busyTimeout, tempStore);
+    }
+}
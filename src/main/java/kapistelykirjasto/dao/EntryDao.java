@@ -0,0 +1,31 @@
+package kapistelykirjasto.dao;
+
+import java.util.ArrayList;
+
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+
+/**
+ * Lists books and videos together. Every method returns BookModels and VideoModels in
+ * one list, ordered by the given key and then by type and id.
+ */
+public interface EntryDao {
+
+    public enum Order {
+        TITLE, CREATED, READ
+    }
+
+    public ArrayList<Model> getEntries(Order order);
+
+    public ArrayList<Model> getReadEntries(Order order);
+
+    public ArrayList<Model> getNotReadEntries(Order order);
+
+    public ArrayList<Model> getCourseEntries(int courseId, Order order);
+
+    /**
+     * Returns at most limit entries whose title, author or comment contains words that
+     * start with the words of the query, best matches first.
+     */
+    public ArrayList<SearchResultModel> search(String query, int limit);
+}
@@ -0,0 +1,419 @@
+package kapistelykirjasto.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Stores the library as a log of changes instead of a database. Every change is checked
+ * against the current state, appended to a MutationLog and only then applied to a
+ * MemoryDao, which answers all reads. Appending a small record is much cheaper than
+ * rewriting the pages of a table, and the log also shows every change since the last
+ * snapshot in the order it was made.
+ *
+ * The library is saved as a Snapshot periodically and at close, with the sequence number
+ * of the last record as its change counter, and the segments that the snapshot covers
+ * are deleted. Opening the directory restores the snapshot and replays the log after it.
+ *
+ * Changes are applied one at a time in log order; reads never wait for them.
+ */
+public class LogDao implements BookDao, VideoDao, CourseDao, EntryDao {
+
+    static final String SNAPSHOT = "snapshot";
+
+    private final MemoryDao state = new MemoryDao();
+    private final Path directory;
+    private MutationLog log;
+    private ScheduledExecutorService snapshots;
+    private volatile long snapshotSequence;
+
+    private LogDao(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the log in the directory, creating it if needed. Without sync the changes
+     * survive a crash of the process but may be lost in a power cut, as with the
+     * "balanced" database profile; with sync every change is on the disk before the
+     * call returns.
+     */
+    public static LogDao open(Path directory, boolean sync) throws IOException {
+        return open(directory, sync, MutationLog.DEFAULT_SEGMENT_BYTES);
+    }
+
+    static LogDao open(Path directory, boolean sync, long segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+        LogDao dao = new LogDao(directory);
+        Snapshot snapshot = Snapshot.readLog(directory.resolve(SNAPSHOT));
+        if (snapshot != null) {
+            dao.state.restore(snapshot);
+            dao.snapshotSequence = snapshot.changes;
+        }
+        dao.log = MutationLog.open(directory, dao.snapshotSequence, dao::apply, segmentBytes, sync);
+        return dao;
+    }
+
+    /**
+     * Saves the library as a snapshot and deletes the segments of the log before it.
+     */
+    public void snapshot() throws IOException {
+        Snapshot snapshot;
+        synchronized (log) {
+            if (log.getLastSequence() == snapshotSequence && Files.exists(directory.resolve(SNAPSHOT))) {
+                return;
+            }
+            snapshot = state.capture(log.getLastSequence()).forLog();
+            log.roll();
+        }
+        snapshot.write(directory.resolve(SNAPSHOT));
+        snapshotSequence = snapshot.changes;
+        log.compact(snapshot.changes);
+    }
+
+    /**
+     * Saves a snapshot every intervalMillis and when the DAO is closed.
+     */
+    public synchronized void startSnapshots(long intervalMillis) {
+        snapshots = Executors.newSingleThreadScheduledExecutor(MemoryDao::daemon);
+        snapshots.scheduleWithFixedDelay(this::trySnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void trySnapshot() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The sequence number of the last change in the log.
+     */
+    public long getLastSequence() {
+        return log.getLastSequence();
+    }
+
+    /**
+     * Appends the change to the log and applies it, or returns false if it could not be
+     * written. The caller holds the monitor of the log from checking the change until
+     * here.
+     */
+    private boolean write(LogRecord record) {
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        apply(record);
+        return true;
+    }
+
+    private void apply(LogRecord record) {
+        if (record.kind == LogRecord.Kind.COURSE) {
+            state.putCourse(new CourseModel(record.id, record.fields[0], record.fields[1]));
+        } else if (record.kind == LogRecord.Kind.BOOK) {
+            String[] fields = record.fields;
+            BookModel book = fields.length == 0 ? null : new BookModel(record.id, fields[0], fields[1], fields[2],
+                    fields[3]);
+            apply(state.bookTable(), record, book);
+        } else {
+            String[] fields = record.fields;
+            VideoModel video = fields.length == 0 ? null : new VideoModel(record.id, fields[0], fields[1], fields[2],
+                    fields[3]);
+            apply(state.videoTable(), record, video);
+        }
+    }
+
+    private static <M extends Model> void apply(MemoryTable<M> table, LogRecord record, M model) {
+        switch (record.action) {
+            case CREATE:
+                create(table, record, model);
+                break;
+            case EDIT:
+                table.replace(model, false);
+                break;
+            case DELETE:
+                table.remove(record.id);
+                break;
+            case READ:
+                table.markRead(record.id, record.time);
+                break;
+            default:
+                table.link(record.courseId, record.id);
+        }
+    }
+
+    private static <M extends Model> void create(MemoryTable<M> table, LogRecord record, M model) {
+        table.put(model, record.time, 0);
+        for (int courseId : record.courseIds) {
+            table.link(courseId, record.id);
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN) {
+        return createBook(title, comment, author, ISBN, new int[0]);
+    }
+
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN,
+            int[] courseIds) {
+        synchronized (log) {
+            return create(state.bookTable(), LogRecord.Kind.BOOK, new String[] {title, comment, author, ISBN},
+                    courseIds);
+        }
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration) {
+        return createVideo(title, comment, url, duration, new int[0]);
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration,
+            int[] courseIds) {
+        synchronized (log) {
+            return create(state.videoTable(), LogRecord.Kind.VIDEO, new String[] {title, comment, url, duration},
+                    courseIds);
+        }
+    }
+
+    private Result<String, Integer> create(MemoryTable<?> table, LogRecord.Kind kind, String[] fields,
+            int[] courseIds) {
+        for (int courseId : courseIds) {
+            if (!state.hasCourse(courseId)) {
+                return Result.error("kurssia ei löydy: " + courseId);
+            }
+        }
+        if (table.isTitleTaken(fields[0], 0)) {
+            return Result.error("otsikko on jo käytössä: " + fields[0]);
+        }
+        int id = table.nextId();
+        if (!write(LogRecord.create(kind, id, now(), fields, courseIds))) {
+            return Result.error("muutosta ei voitu kirjoittaa lokiin");
+        }
+        return Result.value(id);
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+        ArrayList<Result<String, Integer>> results = new ArrayList<>();
+        synchronized (log) {
+            for (BookModel book : books) {
+                String[] fields = {book.getTitle(), book.getComment(), book.getAuthor(), book.getISBN()};
+                results.add(create(state.bookTable(), LogRecord.Kind.BOOK, fields, new int[0]));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+        ArrayList<Result<String, Integer>> results = new ArrayList<>();
+        synchronized (log) {
+            for (VideoModel video : videos) {
+                String[] fields = {video.getTitle(), video.getComment(), video.getUrl(), video.getDuration()};
+                results.add(create(state.videoTable(), LogRecord.Kind.VIDEO, fields, new int[0]));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean editBook(int id, String title, String comment, String author, String ISBN) {
+        return edit(state.bookTable(), LogRecord.Kind.BOOK, id, new String[] {title, comment, author, ISBN});
+    }
+
+    @Override
+    public boolean editVideo(int id, String title, String comment, String url, String duration) {
+        return edit(state.videoTable(), LogRecord.Kind.VIDEO, id, new String[] {title, comment, url, duration});
+    }
+
+    private boolean edit(MemoryTable<?> table, LogRecord.Kind kind, int id, String[] fields) {
+        synchronized (log) {
+            return table.contains(id) && !table.isTitleTaken(fields[0], id)
+                    && write(LogRecord.edit(kind, id, fields));
+        }
+    }
+
+    @Override
+    public boolean deleteBook(int id) {
+        return change(state.bookTable(), id, LogRecord.delete(LogRecord.Kind.BOOK, id));
+    }
+
+    @Override
+    public boolean deleteVideo(int id) {
+        return change(state.videoTable(), id, LogRecord.delete(LogRecord.Kind.VIDEO, id));
+    }
+
+    @Override
+    public boolean markBookAsRead(int id) {
+        return change(state.bookTable(), id, LogRecord.read(LogRecord.Kind.BOOK, id, now()));
+    }
+
+    @Override
+    public boolean markVideoAsRead(int id) {
+        return change(state.videoTable(), id, LogRecord.read(LogRecord.Kind.VIDEO, id, now()));
+    }
+
+    @Override
+    public boolean addBookCourseRelation(int courseId, int bookId) {
+        return state.hasCourse(courseId)
+                && change(state.bookTable(), bookId, LogRecord.link(LogRecord.Kind.BOOK, courseId, bookId));
+    }
+
+    @Override
+    public boolean addVideoCourseRelation(int courseId, int videoId) {
+        return state.hasCourse(courseId)
+                && change(state.videoTable(), videoId, LogRecord.link(LogRecord.Kind.VIDEO, courseId, videoId));
+    }
+
+    private boolean change(MemoryTable<?> table, int id, LogRecord record) {
+        synchronized (log) {
+            return table.contains(id) && write(record);
+        }
+    }
+
+    @Override
+    public boolean createCourse(String courseCode, String name) {
+        return insertCourse(courseCode, name).isValue();
+    }
+
+    @Override
+    public Result<String, Integer> insertCourse(String courseCode, String name) {
+        synchronized (log) {
+            int id = state.getCourses().size() + 1;
+            if (!write(LogRecord.create(LogRecord.Kind.COURSE, id, now(), new String[] {courseCode, name},
+                    new int[0]))) {
+                return Result.error("muutosta ei voitu kirjoittaa lokiin");
+            }
+            return Result.value(id);
+        }
+    }
+
+    @Override
+    public ArrayList<BookModel> getBooks() {
+        return state.getBooks();
+    }
+
+    @Override
+    public ArrayList<VideoModel> getVideos() {
+        return state.getVideos();
+    }
+
+    @Override
+    public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize) {
+        return state.getBooks(sort, token, pageSize);
+    }
+
+    @Override
+    public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize) {
+        return state.getVideos(sort, token, pageSize);
+    }
+
+    @Override
+    public Stream<BookModel> streamBooks(int fetchSize) {
+        return state.streamBooks(fetchSize);
+    }
+
+    @Override
+    public Stream<VideoModel> streamVideos(int fetchSize) {
+        return state.streamVideos(fetchSize);
+    }
+
+    @Override
+    public ArrayList<BookModel> getReadBooks() {
+        return state.getReadBooks();
+    }
+
+    @Override
+    public ArrayList<VideoModel> getReadVideos() {
+        return state.getReadVideos();
+    }
+
+    @Override
+    public ArrayList<BookModel> getNotReadBooks() {
+        return state.getNotReadBooks();
+    }
+
+    @Override
+    public ArrayList<VideoModel> getNotReadVideos() {
+        return state.getNotReadVideos();
+    }
+
+    @Override
+    public ArrayList<BookModel> getCourseBooks(int courseId) {
+        return state.getCourseBooks(courseId);
+    }
+
+    @Override
+    public ArrayList<VideoModel> getCourseVideos(int courseId) {
+        return state.getCourseVideos(courseId);
+    }
+
+    @Override
+    public List<CourseModel> getCourses() {
+        return state.getCourses();
+    }
+
+    @Override
+    public ArrayList<Model> getEntries(Order order) {
+        return state.getEntries(order);
+    }
+
+    @Override
+    public ArrayList<Model> getReadEntries(Order order) {
+        return state.getReadEntries(order);
+    }
+
+    @Override
+    public ArrayList<Model> getNotReadEntries(Order order) {
+        return state.getNotReadEntries(order);
+    }
+
+    @Override
+    public ArrayList<Model> getCourseEntries(int courseId, Order order) {
+        return state.getCourseEntries(courseId, order);
+    }
+
+    @Override
+    public ArrayList<SearchResultModel> search(String query, int limit) {
+        return state.search(query, limit);
+    }
+
+    /**
+     * Stops the periodic snapshots, saves the last one and closes the log.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (snapshots != null) {
+                snapshots.shutdown();
+                snapshot();
+                snapshots = null;
+            }
+            log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
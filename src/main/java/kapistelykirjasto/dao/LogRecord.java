@@ -0,0 +1,144 @@
+package kapistelykirjasto.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One change of the library in a MutationLog. A record holds the outcome of the change,
+ * not the request: a created row has the id and creation time it was given and a read
+ * row the time it was read, so replaying the records gives back exactly the same rows.
+ *
+ * A record is a type byte (the kind in the high four bits and the action in the low
+ * four), the id of the row and then only what the action needs:
+ * <pre>
+ * CREATE  time (long), the fields, the course ids (int count and ints)
+ * EDIT    the fields
+ * DELETE  nothing
+ * READ    time (long)
+ * LINK    course id (int)
+ * </pre>
+ * The fields are a byte count and the strings, each an int UTF-8 length (-1 for null)
+ * and the bytes. Books and videos have four fields (as in Snapshot) and courses two,
+ * the code and the name.
+ */
+class LogRecord {
+
+    enum Kind {
+        BOOK, VIDEO, COURSE
+    }
+
+    enum Action {
+        CREATE, EDIT, DELETE, READ, LINK
+    }
+
+    final Kind kind;
+    final Action action;
+    final int id;
+    final long time;
+    final int courseId;
+    final String[] fields;
+    final int[] courseIds;
+
+    private LogRecord(Kind kind, Action action, int id, long time, int courseId, String[] fields, int[] courseIds) {
+        this.kind = kind;
+        this.action = action;
+        this.id = id;
+        this.time = time;
+        this.courseId = courseId;
+        this.fields = fields;
+        this.courseIds = courseIds;
+    }
+
+    static LogRecord create(Kind kind, int id, long time, String[] fields, int[] courseIds) {
+        return new LogRecord(kind, Action.CREATE, id, time, 0, fields, courseIds);
+    }
+
+    static LogRecord edit(Kind kind, int id, String[] fields) {
+        return new LogRecord(kind, Action.EDIT, id, 0, 0, fields, new int[0]);
+    }
+
+    static LogRecord delete(Kind kind, int id) {
+        return new LogRecord(kind, Action.DELETE, id, 0, 0, new String[0], new int[0]);
+    }
+
+    static LogRecord read(Kind kind, int id, long time) {
+        return new LogRecord(kind, Action.READ, id, time, 0, new String[0], new int[0]);
+    }
+
+    static LogRecord link(Kind kind, int courseId, int id) {
+        return new LogRecord(kind, Action.LINK, id, 0, courseId, new String[0], new int[0]);
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind.ordinal() << 4 | action.ordinal());
+        out.writeInt(id);
+        if (action == Action.CREATE || action == Action.READ) {
+            out.writeLong(time);
+        }
+        if (action == Action.LINK) {
+            out.writeInt(courseId);
+        }
+        if (action == Action.CREATE || action == Action.EDIT) {
+            writeFields(out);
+        }
+        if (action == Action.CREATE) {
+            writeCourseIds(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeCourseIds(DataOutputStream out) throws IOException {
+        out.writeInt(courseIds.length);
+        for (int courseId : courseIds) {
+            out.writeInt(courseId);
+        }
+    }
+
+    private void writeFields(DataOutputStream out) throws IOException {
+        out.writeByte(fields.length);
+        for (String field : fields) {
+            byte[] encoded = field == null ? null : field.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded == null ? -1 : encoded.length);
+            if (encoded != null) {
+                out.write(encoded);
+            }
+        }
+    }
+
+    /**
+     * Reads a record from the buffer, which holds nothing else.
+     */
+    static LogRecord decode(ByteBuffer buffer) {
+        int type = buffer.get();
+        Kind kind = Kind.values()[type >> 4];
+        Action action = Action.values()[type & 0xF];
+        int id = buffer.getInt();
+        long time = action == Action.CREATE || action == Action.READ ? buffer.getLong() : 0;
+        int courseId = action == Action.LINK ? buffer.getInt() : 0;
+        boolean hasFields = action == Action.CREATE || action == Action.EDIT;
+        String[] fields = hasFields ? readFields(buffer) : new String[0];
+        int[] courseIds = new int[action == Action.CREATE ? buffer.getInt() : 0];
+        for (int i = 0; i < courseIds.length; i++) {
+            courseIds[i] = buffer.getInt();
+        }
+        return new LogRecord(kind, action, id, time, courseId, fields, courseIds);
+    }
+
+    private static String[] readFields(ByteBuffer buffer) {
+        String[] fields = new String[buffer.get()];
+        for (int i = 0; i < fields.length; i++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,566 @@
+package kapistelykirjasto.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Serves all DAO interfaces from memory, with the books and videos in MemoryTables and
+ * the courses in a copy-on-write list. Reads never touch SQLite and never wait for
+ * writes.
+ *
+ * A MemoryDao made with load() writes every change through to SQLite first and applies
+ * it in memory only if SQLite accepted it, so the database stays the durable copy and
+ * decides the ids and the unique titles. The changes of one row are applied in the same
+ * order as in SQLite (see MemoryTable.stripe); changes of different rows still run
+ * concurrently and share commits in the write queue. Search is left to the FTS5 index
+ * of SQLite. The database must not be changed by anyone else while it is loaded.
+ *
+ * A loaded MemoryDao can also save itself as a Snapshot, periodically and when it is
+ * closed, and start from the snapshot instead of SQLite the next time if the database
+ * has not changed since (see SchemaMigrations.changeCount). Writes are held back while
+ * the rows are copied for a snapshot, so that the copy matches the change counter.
+ *
+ * A MemoryDao made with the constructor keeps everything only in memory.
+ */
+public class MemoryDao implements BookDao, VideoDao, CourseDao, EntryDao {
+
+    private final MemoryTable<BookModel> books = new MemoryTable<>("book");
+    private final MemoryTable<VideoModel> videos = new MemoryTable<>("video");
+    private final CopyOnWriteArrayList<CourseModel> courses = new CopyOnWriteArrayList<>();
+    private final SQLiteBookDao bookStore;
+    private final SQLiteVideoDao videoStore;
+    private final SQLiteCourseDao courseStore;
+    private final SQLiteEntryDao entryStore;
+    private final ConnectionProvider connections;
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+    private ScheduledExecutorService snapshots;
+    private Path snapshotFile;
+    private volatile long snapshotChanges = -1;
+
+    public MemoryDao() {
+        this.bookStore = null;
+        this.videoStore = null;
+        this.courseStore = null;
+        this.entryStore = null;
+        this.connections = null;
+    }
+
+    private MemoryDao(ConnectionProvider connections) {
+        this.connections = connections;
+        this.bookStore = new SQLiteBookDao(connections);
+        this.videoStore = new SQLiteVideoDao(connections);
+        this.courseStore = new SQLiteCourseDao(connections);
+        this.entryStore = new SQLiteEntryDao(connections);
+    }
+
+    /**
+     * Reads the whole database into memory and returns a MemoryDao that writes through
+     * to it.
+     */
+    public static MemoryDao load(ConnectionProvider connections) throws SQLException {
+        MemoryDao dao = new MemoryDao(connections);
+        connections.read(dao::load);
+        return dao;
+    }
+
+    /**
+     * Like load, but starts from the snapshot file if it is up to date with the database.
+     */
+    public static MemoryDao load(ConnectionProvider connections, Path snapshot) throws SQLException {
+        MemoryDao dao = new MemoryDao(connections);
+        long changes = connections.read(SchemaMigrations::changeCount);
+        Snapshot image = null;
+        try {
+            image = Snapshot.read(snapshot, changes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (image == null) {
+            connections.read(dao::load);
+            return dao;
+        }
+        dao.restore(image);
+        dao.snapshotChanges = changes;
+        return dao;
+    }
+
+    /**
+     * Replaces everything in memory with the snapshot.
+     */
+    void restore(Snapshot snapshot) {
+        courses.clear();
+        courses.addAll(snapshot.courses);
+        books.restore(snapshot.books);
+        videos.restore(snapshot.videos);
+    }
+
+    /**
+     * A copy of everything in memory, to be saved with the given change counter. The
+     * caller keeps writers out while the copy is made.
+     */
+    Snapshot capture(long changes) {
+        return new Snapshot(changes, new ArrayList<>(courses), books.capture(), videos.capture());
+    }
+
+    MemoryTable<BookModel> bookTable() {
+        return books;
+    }
+
+    MemoryTable<VideoModel> videoTable() {
+        return videos;
+    }
+
+    /**
+     * Adds a course with an id that someone else has handed out.
+     */
+    void putCourse(CourseModel course) {
+        courses.add(course);
+    }
+
+    private Void load(Connection connection) throws SQLException {
+        Util.query(connection, "SELECT * FROM book;", res -> load(books, SQLiteBookDao.toModel(res), res));
+        Util.query(connection, "SELECT * FROM video;", res -> load(videos, SQLiteVideoDao.toModel(res), res));
+        courses.addAll(Util.query(connection, "SELECT * FROM course ORDER BY id;", SQLiteCourseDao::toModel));
+        Util.query(connection, "SELECT courseId, bookId FROM courseBook;", res -> books.link(res.getInt(1),
+                res.getInt(2)));
+        Util.query(connection, "SELECT courseId, videoId FROM courseVideo;", res -> videos.link(res.getInt(1),
+                res.getInt(2)));
+        return null;
+    }
+
+    private static <M extends Model> Integer load(MemoryTable<M> table, M model, ResultSet res) throws SQLException {
+        table.put(model, res.getLong("created"), res.getLong("read"));
+        return model.getId();
+    }
+
+    /**
+     * Writes the library to the snapshot file, unless the file is already up to date.
+     */
+    public void snapshot(Path file) throws IOException, SQLException {
+        if (connections == null) {
+            throw new IllegalStateException("kirjasto ei ole tietokannassa");
+        }
+        Snapshot snapshot;
+        gate.writeLock().lock();
+        try {
+            long changes = connections.read(SchemaMigrations::changeCount);
+            if (changes == snapshotChanges && Files.exists(file)) {
+                return;
+            }
+            snapshot = capture(changes);
+        } finally {
+            gate.writeLock().unlock();
+        }
+        snapshot.write(file);
+        snapshotChanges = snapshot.changes;
+    }
+
+    /**
+     * Writes a snapshot every intervalMillis and when the DAO is closed.
+     */
+    public synchronized void startSnapshots(Path file, long intervalMillis) {
+        snapshotFile = file;
+        snapshots = Executors.newSingleThreadScheduledExecutor(MemoryDao::daemon);
+        snapshots.scheduleWithFixedDelay(this::snapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static Thread daemon(Runnable task) {
+        Thread thread = new Thread(task, "snapshot");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void snapshot() {
+        try {
+            snapshot(snapshotFile);
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs a change of the backing store and memory so that a snapshot never sees it
+     * half done.
+     */
+    private <T> T write(Supplier<T> change) {
+        if (connections == null) {
+            return change.get();
+        }
+        gate.readLock().lock();
+        try {
+            return change.get();
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * The number of books and videos in memory.
+     */
+    public int size() {
+        return books.size() + videos.size();
+    }
+
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN) {
+        return createBook(title, comment, author, ISBN, new int[0]);
+    }
+
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN,
+            int[] courseIds) {
+        IntFunction<BookModel> book = id -> new BookModel(id, title, comment, author, ISBN);
+        Supplier<Result<String, Integer>> store = () -> bookStore.createBook(title, comment, author, ISBN, courseIds);
+        return create(books, title, courseIds, store, book);
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration) {
+        return createVideo(title, comment, url, duration, new int[0]);
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration,
+            int[] courseIds) {
+        IntFunction<VideoModel> video = id -> new VideoModel(id, title, comment, url, duration);
+        Supplier<Result<String, Integer>> store = () -> videoStore.createVideo(title, comment, url, duration,
+                courseIds);
+        return create(videos, title, courseIds, store, video);
+    }
+
+    private <M extends Model> Result<String, Integer> create(MemoryTable<M> table, String title, int[] courseIds,
+            Supplier<Result<String, Integer>> store, IntFunction<M> model) {
+        for (int courseId : courseIds) {
+            if (!hasCourse(courseId)) {
+                return Result.error("kurssia ei löydy: " + courseId);
+            }
+        }
+        if (entryStore == null) {
+            Result<String, Integer> result = table.insert(title, model, now());
+            if (result.isValue()) {
+                link(table, courseIds, result.getValue());
+            }
+            return result;
+        }
+        return write(() -> created(table, store.get(), courseIds, model));
+    }
+
+    private static <M extends Model> Result<String, Integer> created(MemoryTable<M> table,
+            Result<String, Integer> result, int[] courseIds, IntFunction<M> model) {
+        if (result.isValue()) {
+            table.put(model.apply(result.getValue()), now(), 0);
+            link(table, courseIds, result.getValue());
+        }
+        return result;
+    }
+
+    private static void link(MemoryTable<?> table, int[] courseIds, int id) {
+        for (int courseId : courseIds) {
+            table.link(courseId, id);
+        }
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+        WithId<BookModel> withId = (model, id) -> new BookModel(id, model.getTitle(), model.getComment(),
+                model.getAuthor(), model.getISBN());
+        return write(() -> createAll(this.books, books, entryStore == null ? null : bookStore.createBooks(books),
+                withId));
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+        WithId<VideoModel> withId = (model, id) -> new VideoModel(id, model.getTitle(), model.getComment(),
+                model.getUrl(), model.getDuration());
+        return write(() -> createAll(this.videos, videos, entryStore == null ? null : videoStore.createVideos(videos),
+                withId));
+    }
+
+    /**
+     * Applies the results of the backing store to memory, or inserts the models one by
+     * one if there is no backing store (stored is null).
+     */
+    private static <M extends Model> ArrayList<Result<String, Integer>> createAll(MemoryTable<M> table,
+            List<M> models, ArrayList<Result<String, Integer>> stored, WithId<M> withId) {
+        long now = now();
+        ArrayList<Result<String, Integer>> results = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            M model = models.get(i);
+            if (stored == null) {
+                results.add(table.insert(model.getTitle(), id -> withId.apply(model, id), now));
+            } else if (stored.get(i).isValue()) {
+                table.put(withId.apply(model, stored.get(i).getValue()), now, 0);
+            }
+        }
+        return stored == null ? results : stored;
+    }
+
+    @Override
+    public ArrayList<BookModel> getBooks() {
+        return books.list(MemoryTable.Filter.ALL, 0);
+    }
+
+    @Override
+    public ArrayList<VideoModel> getVideos() {
+        return videos.list(MemoryTable.Filter.ALL, 0);
+    }
+
+    @Override
+    public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize) {
+        return books.page(sort, token, pageSize);
+    }
+
+    @Override
+    public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize) {
+        return videos.page(sort, token, pageSize);
+    }
+
+    /**
+     * The books as they are when the stream is created; fetchSize is not needed.
+     */
+    @Override
+    public Stream<BookModel> streamBooks(int fetchSize) {
+        return getBooks().stream();
+    }
+
+    @Override
+    public Stream<VideoModel> streamVideos(int fetchSize) {
+        return getVideos().stream();
+    }
+
+    @Override
+    public boolean deleteBook(int id) {
+        return change(books, id, () -> bookStore.deleteBook(id), () -> books.remove(id));
+    }
+
+    @Override
+    public boolean deleteVideo(int id) {
+        return change(videos, id, () -> videoStore.deleteVideo(id), () -> videos.remove(id));
+    }
+
+    @Override
+    public boolean editBook(int id, String title, String comment, String author, String ISBN) {
+        BookModel book = new BookModel(id, title, comment, author, ISBN);
+        Supplier<Boolean> store = () -> bookStore.editBook(id, title, comment, author, ISBN);
+        return change(books, id, store, () -> books.replace(book, entryStore == null));
+    }
+
+    @Override
+    public boolean editVideo(int id, String title, String comment, String url, String duration) {
+        VideoModel video = new VideoModel(id, title, comment, url, duration);
+        Supplier<Boolean> store = () -> videoStore.editVideo(id, title, comment, url, duration);
+        return change(videos, id, store, () -> videos.replace(video, entryStore == null));
+    }
+
+    @Override
+    public boolean markBookAsRead(int id) {
+        return change(books, id, () -> bookStore.markBookAsRead(id), () -> books.markRead(id, now()));
+    }
+
+    @Override
+    public boolean markVideoAsRead(int id) {
+        return change(videos, id, () -> videoStore.markVideoAsRead(id), () -> videos.markRead(id, now()));
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Changes an existing row: first in the backing store, if there is one, and then in
+     * memory, holding the stripe of the row throughout.
+     */
+    private boolean change(MemoryTable<?> table, int id, Supplier<Boolean> store, Supplier<Boolean> apply) {
+        if (!table.contains(id)) {
+            return false;
+        } else if (entryStore == null) {
+            return apply.get();
+        }
+        return write(() -> {
+            synchronized (table.stripe(id)) {
+                return store.get() && apply.get();
+            }
+        });
+    }
+
+    @Override
+    public ArrayList<BookModel> getReadBooks() {
+        return books.list(MemoryTable.Filter.READ, 0);
+    }
+
+    @Override
+    public ArrayList<VideoModel> getReadVideos() {
+        return videos.list(MemoryTable.Filter.READ, 0);
+    }
+
+    @Override
+    public ArrayList<BookModel> getNotReadBooks() {
+        return books.list(MemoryTable.Filter.NOT_READ, 0);
+    }
+
+    @Override
+    public ArrayList<VideoModel> getNotReadVideos() {
+        return videos.list(MemoryTable.Filter.NOT_READ, 0);
+    }
+
+    @Override
+    public ArrayList<BookModel> getCourseBooks(int courseId) {
+        return books.list(MemoryTable.Filter.COURSE, courseId);
+    }
+
+    @Override
+    public ArrayList<VideoModel> getCourseVideos(int courseId) {
+        return videos.list(MemoryTable.Filter.COURSE, courseId);
+    }
+
+    @Override
+    public boolean createCourse(String courseCode, String name) {
+        return insertCourse(courseCode, name).isValue();
+    }
+
+    @Override
+    public Result<String, Integer> insertCourse(String courseCode, String name) {
+        return write(() -> addCourse(courseCode, name));
+    }
+
+    private Result<String, Integer> addCourse(String courseCode, String name) {
+        synchronized (courses) {
+            Result<String, Integer> created = entryStore == null ? Result.value(courses.size() + 1)
+                    : courseStore.insertCourse(courseCode, name);
+            if (created.isValue()) {
+                courses.add(new CourseModel(created.getValue(), courseCode, name));
+            }
+            return created;
+        }
+    }
+
+    boolean hasCourse(int courseId) {
+        for (CourseModel course : courses) {
+            if (course.getId() == courseId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean addBookCourseRelation(int courseId, int bookId) {
+        return addCourseRelation(books, courseId, bookId, () -> courseStore.addBookCourseRelation(courseId, bookId));
+    }
+
+    @Override
+    public boolean addVideoCourseRelation(int courseId, int videoId) {
+        Supplier<Boolean> store = () -> courseStore.addVideoCourseRelation(courseId, videoId);
+        return addCourseRelation(videos, courseId, videoId, store);
+    }
+
+    private boolean addCourseRelation(MemoryTable<?> table, int courseId, int id, Supplier<Boolean> store) {
+        if (!hasCourse(courseId)) {
+            return false;
+        }
+        return change(table, id, store, () -> table.link(courseId, id));
+    }
+
+    @Override
+    public List<CourseModel> getCourses() {
+        return new ArrayList<>(courses);
+    }
+
+    @Override
+    public ArrayList<Model> getEntries(Order order) {
+        return entries(order, MemoryTable.Filter.ALL, 0);
+    }
+
+    @Override
+    public ArrayList<Model> getReadEntries(Order order) {
+        return entries(order, MemoryTable.Filter.READ, 0);
+    }
+
+    @Override
+    public ArrayList<Model> getNotReadEntries(Order order) {
+        return entries(order, MemoryTable.Filter.NOT_READ, 0);
+    }
+
+    @Override
+    public ArrayList<Model> getCourseEntries(int courseId, Order order) {
+        return entries(order, MemoryTable.Filter.COURSE, courseId);
+    }
+
+    /**
+     * Books and videos in the same order as SQLiteEntryDao lists them.
+     */
+    private ArrayList<Model> entries(Order order, MemoryTable.Filter filter, int courseId) {
+        ArrayList<MemoryTable.Row> rows = books.rows(filter, courseId);
+        rows.addAll(videos.rows(filter, courseId));
+        rows.sort(comparator(order).thenComparing(row -> row.type).thenComparingInt(row -> row.model.getId()));
+        ArrayList<Model> entries = new ArrayList<>(rows.size());
+        for (MemoryTable.Row row : rows) {
+            entries.add(row.model);
+        }
+        return entries;
+    }
+
+    private static Comparator<MemoryTable.Row> comparator(Order order) {
+        switch (order) {
+            case CREATED:
+                return Comparator.comparingLong(row -> row.created);
+            case READ:
+                return Comparator.comparing((MemoryTable.Row row) -> row.read == 0)
+                        .thenComparingLong(row -> row.read);
+            default:
+                return Comparator.comparing(row -> row.model.getTitle(),
+                        Comparator.nullsFirst(Comparator.naturalOrder()));
+        }
+    }
+
+    @Override
+    public ArrayList<SearchResultModel> search(String query, int limit) {
+        if (entryStore != null) {
+            return entryStore.search(query, limit);
+        }
+        ArrayList<Model> entries = new ArrayList<>(getBooks());
+        entries.addAll(getVideos());
+        return MemorySearch.search(entries, query, limit);
+    }
+
+    /**
+     * Stops the periodic snapshots and writes the last one. The connections of a loaded
+     * MemoryDao belong to the caller and stay open.
+     */
+    @Override
+    public synchronized void close() {
+        if (snapshots != null) {
+            snapshots.shutdown();
+            snapshot();
+            snapshots = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface WithId<M> {
+        M apply(M model, int id);
+    }
+}
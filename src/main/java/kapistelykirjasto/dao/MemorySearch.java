@@ -0,0 +1,125 @@
+package kapistelykirjasto.dao;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+
+/**
+ * Full text search over entries in memory, for a MemoryDao that has no SQLite database
+ * and so no FTS5 index behind it. Matches like SQLiteEntryDao: every word of the query
+ * must start a word of the title, author or comment, ignoring case and diacritics.
+ * Entries with more of the query words in the title come first. The snippet is up to
+ * SNIPPET_WORDS words of the first field that matched, with the matching words in
+ * brackets as in the FTS5 snippets.
+ */
+class MemorySearch {
+
+    private static final int SNIPPET_WORDS = 12;
+
+    static ArrayList<SearchResultModel> search(List<Model> entries, String query, int limit) {
+        String[] words = words(query);
+        ArrayList<Hit> hits = new ArrayList<>();
+        for (Model entry : entries) {
+            Hit hit = words.length == 0 ? null : match(entry, words);
+            if (hit != null) {
+                hits.add(hit);
+            }
+        }
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.titleMatches).reversed());
+        ArrayList<SearchResultModel> results = new ArrayList<>();
+        for (Hit hit : hits.subList(0, Math.min(limit, hits.size()))) {
+            results.add(new SearchResultModel(hit.entry, hit.snippet));
+        }
+        return results;
+    }
+
+    private static Hit match(Model entry, String[] query) {
+        String author = entry instanceof BookModel ? ((BookModel) entry).getAuthor() : null;
+        String[] fields = {entry.getTitle(), author, entry.getComment()};
+        int titleMatches = 0;
+        for (String word : query) {
+            if (matches(fields[0], word)) {
+                titleMatches++;
+            } else if (!matches(fields[1], word) && !matches(fields[2], word)) {
+                return null;
+            }
+        }
+        for (String field : fields) {
+            if (matchesAny(field, query)) {
+                return new Hit(entry, titleMatches, snippet(field, query));
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesAny(String field, String[] query) {
+        for (String word : query) {
+            if (matches(field, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String field, String prefix) {
+        for (String word : words(field)) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The words of the text in lower case and without diacritics, as the unicode61
+     * tokenizer of the FTS5 index splits them.
+     */
+    static String[] words(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String plain = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        ArrayList<String> words = new ArrayList<>();
+        for (String word : plain.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static String snippet(String field, String[] query) {
+        String[] tokens = field.trim().split("\\s+");
+        int first = 0;
+        while (first < tokens.length - 1 && !matchesAny(tokens[first], query)) {
+            first++;
+        }
+        int start = Math.max(0, Math.min(first - 2, tokens.length - SNIPPET_WORDS));
+        int end = Math.min(tokens.length, start + SNIPPET_WORDS);
+        StringBuilder snippet = new StringBuilder(start > 0 ? "..." : "");
+        for (int i = start; i < end; i++) {
+            String token = tokens[i];
+            snippet.append(i > start ? " " : "").append(matchesAny(token, query) ? "[" + token + "]" : token);
+        }
+        return snippet.append(end < tokens.length ? "..." : "").toString();
+    }
+
+    private static class Hit {
+
+        private final Model entry;
+        private final int titleMatches;
+        private final String snippet;
+
+        Hit(Model entry, int titleMatches, String snippet) {
+            this.entry = entry;
+            this.titleMatches = titleMatches;
+            this.snippet = snippet;
+        }
+    }
+}
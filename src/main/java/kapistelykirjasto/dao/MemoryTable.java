@@ -0,0 +1,438 @@
+package kapistelykirjasto.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.PageToken;
+import kapistelykirjasto.util.Result;
+
+/**
+ * The rows of one entry table (book or video) in memory. Ids are handed out in order
+ * from 1, like SQLite does, so the rows and their creation and read times are kept in
+ * arrays indexed by id. The ids in use, the read ids and the ids linked to each course
+ * are bit sets, so every listing is a walk over a bit set in id order. A TreeMap from
+ * title to id keeps the titles unique and gives the title order for paging.
+ *
+ * Listings first read under an optimistic stamp of the StampedLock and take the read
+ * lock only if a writer got in between, so readers never block each other or the
+ * writers. A reader that races with a writer may see half-updated arrays or even throw;
+ * its result is then thrown away and the read repeated under the lock. Title paging
+ * walks the TreeMap, which is not safe to walk during a write, so it always takes the
+ * read lock.
+ */
+class MemoryTable<M extends Model> {
+
+    /**
+     * Which rows a listing walks.
+     */
+    enum Filter {
+        ALL, READ, NOT_READ, COURSE
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int STRIPES = 64;
+
+    private final String type;
+    private final StampedLock lock = new StampedLock();
+    private final Object[] stripes = new Object[STRIPES];
+    private Model[] rows = new Model[INITIAL_CAPACITY];
+    private long[] created = new long[INITIAL_CAPACITY];
+    private long[] read = new long[INITIAL_CAPACITY];
+    private final BitSet live = new BitSet();
+    private final BitSet readIds = new BitSet();
+    private BitSet[] courses = new BitSet[0];
+    private final TreeMap<String, Integer> titles = new TreeMap<>();
+    private int lastId = 0;
+
+    MemoryTable(String type) {
+        this.type = type;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    String getType() {
+        return type;
+    }
+
+    /**
+     * The monitor that a caller holds while it changes the row in a backing store and
+     * then here, so that the changes of one row are applied in the same order as in the
+     * store. Changes of different rows do not wait for each other.
+     */
+    Object stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    /**
+     * Adds a row with the next id, unless the title is in use.
+     */
+    Result<String, Integer> insert(String title, IntFunction<M> model, long createdMillis) {
+        long stamp = lock.writeLock();
+        try {
+            if (title != null && titles.containsKey(title)) {
+                return Result.error("otsikko on jo käytössä: " + title);
+            }
+            int id = lastId + 1;
+            set(model.apply(id), createdMillis, 0);
+            return Result.value(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds or replaces the row with the id of the model. The backing store has already
+     * accepted the row, so the title takes over from any row that had it.
+     */
+    void put(M model, long createdMillis, long readMillis) {
+        long stamp = lock.writeLock();
+        try {
+            set(model, createdMillis, readMillis);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void set(Model model, long createdMillis, long readMillis) {
+        int id = model.getId();
+        ensureCapacity(id);
+        unindex(id);
+        rows[id] = model;
+        created[id] = createdMillis;
+        read[id] = readMillis;
+        readIds.set(id, readMillis != 0);
+        live.set(id);
+        if (model.getTitle() != null) {
+            titles.put(model.getTitle(), id);
+        }
+        lastId = Math.max(lastId, id);
+    }
+
+    /**
+     * Drops the title of the row from the index, unless a newer row has taken it over.
+     * Rows without a title are not in the index, like NULL is never a duplicate in SQLite.
+     */
+    private void unindex(int id) {
+        if (rows[id] != null && rows[id].getTitle() != null) {
+            titles.remove(rows[id].getTitle(), id);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= rows.length) {
+            int capacity = Math.max(rows.length * 2, id + 1);
+            rows = Arrays.copyOf(rows, capacity);
+            created = Arrays.copyOf(created, capacity);
+            read = Arrays.copyOf(read, capacity);
+        }
+    }
+
+    /**
+     * Replaces an existing row, keeping its creation and read times. If checkTitle is
+     * set, fails when another row has the new title.
+     */
+    boolean replace(M model, boolean checkTitle) {
+        long stamp = lock.writeLock();
+        try {
+            int id = model.getId();
+            Integer owner = model.getTitle() == null ? null : titles.get(model.getTitle());
+            if (!has(id) || checkTitle && owner != null && owner != id) {
+                return false;
+            }
+            set(model, created[id], read[id]);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            if (!has(id)) {
+                return false;
+            }
+            unindex(id);
+            rows[id] = null;
+            live.clear(id);
+            readIds.clear(id);
+            for (BitSet course : courses) {
+                if (course != null) {
+                    course.clear(id);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean markRead(int id, long readMillis) {
+        long stamp = lock.writeLock();
+        try {
+            if (!has(id)) {
+                return false;
+            }
+            read[id] = readMillis;
+            readIds.set(id);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Links the row to the course. Fails if there is no such row.
+     */
+    boolean link(int courseId, int id) {
+        long stamp = lock.writeLock();
+        try {
+            if (!has(id) || courseId < 0) {
+                return false;
+            }
+            addLink(courseId, id);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addLink(int courseId, int id) {
+        if (courseId >= courses.length) {
+            courses = Arrays.copyOf(courses, Math.max(courses.length * 2, courseId + 1));
+        }
+        if (courses[courseId] == null) {
+            courses[courseId] = new BitSet();
+        }
+        courses[courseId].set(id);
+    }
+
+    /**
+     * The id that insert would give the next row.
+     */
+    int nextId() {
+        return optimistic(() -> lastId + 1);
+    }
+
+    /**
+     * Tells if a row other than id has the title.
+     */
+    boolean isTitleTaken(String title, int id) {
+        Integer owner = title == null ? null : locked(() -> titles.get(title));
+        return owner != null && owner != id;
+    }
+
+    boolean contains(int id) {
+        return optimistic(() -> has(id));
+    }
+
+    private boolean has(int id) {
+        return id >= 0 && live.get(id);
+    }
+
+    int size() {
+        return optimistic(live::cardinality);
+    }
+
+    /**
+     * The rows that pass the filter in id order. The courseId is only used by COURSE.
+     */
+    ArrayList<M> list(Filter filter, int courseId) {
+        return optimistic(() -> collect(filter, courseId, this::row));
+    }
+
+    /**
+     * Like list, but with the creation and read times for ordering entries.
+     */
+    ArrayList<Row> rows(Filter filter, int courseId) {
+        return optimistic(() -> collect(filter, courseId, id -> new Row(rows[id], type, created[id], read[id])));
+    }
+
+    @SuppressWarnings("unchecked")
+    private M row(int id) {
+        return (M) rows[id];
+    }
+
+    private <T> ArrayList<T> collect(Filter filter, int courseId, IntFunction<T> mapper) {
+        BitSet ids = ids(filter, courseId);
+        ArrayList<T> result = new ArrayList<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            if (filter != Filter.NOT_READ || !readIds.get(id)) {
+                result.add(mapper.apply(id));
+            }
+        }
+        return result;
+    }
+
+    private BitSet ids(Filter filter, int courseId) {
+        switch (filter) {
+            case READ:
+                return readIds;
+            case COURSE:
+                BitSet[] linked = courses;
+                return courseId >= 0 && courseId < linked.length && linked[courseId] != null ? linked[courseId]
+                        : new BitSet();
+            default:
+                return live;
+        }
+    }
+
+    /**
+     * One page in the same order and with the same tokens as Util.queryPage.
+     */
+    Page<M> page(Page.Sort sort, String token, int pageSize) {
+        Util.checkPageSize(pageSize);
+        PageToken after = token == null ? null : PageToken.decode(token, sort);
+        ArrayList<M> page = sort == Page.Sort.ID ? optimistic(() -> pageById(after, pageSize + 1))
+                : locked(() -> pageByTitle(after, pageSize + 1));
+        return Util.toPage(page, type, sort, pageSize);
+    }
+
+    private ArrayList<M> pageById(PageToken after, int limit) {
+        int first = 1;
+        if (after != null) {
+            int key = (Integer) after.getKey();
+            first = key > after.getIdBound(type) ? key : key + 1;
+        }
+        ArrayList<M> page = new ArrayList<>();
+        for (int id = live.nextSetBit(Math.max(first, 0)); id >= 0 && page.size() < limit;
+                id = live.nextSetBit(id + 1)) {
+            page.add(row(id));
+        }
+        return page;
+    }
+
+    private ArrayList<M> pageByTitle(PageToken after, int limit) {
+        Map<String, Integer> rest = after == null ? titles : titles.tailMap((String) after.getKey(), true);
+        ArrayList<M> page = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : rest.entrySet()) {
+            if (page.size() == limit) {
+                break;
+            } else if (after == null || !entry.getKey().equals(after.getKey())
+                    || entry.getValue() > after.getIdBound(type)) {
+                page.add(row(entry.getValue()));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * A copy of the rows and links, for a snapshot.
+     */
+    Image capture() {
+        return locked(this::copy);
+    }
+
+    private Image copy() {
+        ArrayList<Row> copied = collect(Filter.ALL, 0, id -> new Row(rows[id], type, created[id], read[id]));
+        ArrayList<int[]> links = new ArrayList<>();
+        for (int courseId = 0; courseId < courses.length; courseId++) {
+            BitSet ids = courses[courseId] == null ? new BitSet() : courses[courseId];
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                links.add(new int[] {courseId, id});
+            }
+        }
+        return new Image(copied, links, lastId);
+    }
+
+    /**
+     * Replaces everything in the table with the rows and links of the image. The next id
+     * follows the last id of the image, even if that row has been deleted.
+     */
+    void restore(Image image) {
+        long stamp = lock.writeLock();
+        try {
+            clear(image.rows.isEmpty() ? 0 : image.rows.get(image.rows.size() - 1).model.getId());
+            for (Row row : image.rows) {
+                set(row.model, row.created, row.read);
+            }
+            for (int[] link : image.links) {
+                addLink(link[0], link[1]);
+            }
+            lastId = Math.max(lastId, image.lastId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void clear(int lastRowId) {
+        rows = new Model[Math.max(INITIAL_CAPACITY, lastRowId + 1)];
+        created = new long[rows.length];
+        read = new long[rows.length];
+        titles.clear();
+        live.clear();
+        readIds.clear();
+        courses = new BitSet[0];
+        lastId = 0;
+    }
+
+    private <T> T optimistic(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // a writer changed the arrays under the reader; read again under the lock
+            }
+        }
+        return locked(reader);
+    }
+
+    private <T> T locked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The rows of a table in id order, its links to courses as {courseId, id} pairs and
+     * the last id it has given out.
+     */
+    static class Image {
+
+        final List<Row> rows;
+        final List<int[]> links;
+        final int lastId;
+
+        Image(List<Row> rows, List<int[]> links, int lastId) {
+            this.rows = rows;
+            this.links = links;
+            this.lastId = lastId;
+        }
+    }
+
+    /**
+     * A row with the times it was created and read (0 if it is not read), in
+     * milliseconds.
+     */
+    static class Row {
+
+        final Model model;
+        final String type;
+        final long created;
+        final long read;
+
+        Row(Model model, String type, long created, long read) {
+            this.model = model;
+            this.type = type;
+            this.created = created;
+            this.read = read;
+        }
+    }
+}
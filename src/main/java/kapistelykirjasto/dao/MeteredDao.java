@@ -0,0 +1,64 @@
+package kapistelykirjasto.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import kapistelykirjasto.util.MetricsRegistry;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Times every call of a DAO interface into a MetricsRegistry under the name
+ * "Interface.method". A call counts as an error if it throws, returns null (how the
+ * SQLite DAOs report a failed query) or returns an error Result. The timers are looked
+ * up when the proxy is made, so a call only costs a map lookup by Method.
+ */
+public class MeteredDao implements InvocationHandler {
+
+    private final Object dao;
+    private final Map<Method, MetricsRegistry.Timer> timers;
+
+    private MeteredDao(Object dao, Class<?> type, MetricsRegistry metrics) {
+        this.dao = dao;
+        HashMap<Method, MetricsRegistry.Timer> timers = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            timers.put(method, metrics.timer(type.getSimpleName() + "." + method.getName()));
+        }
+        this.timers = timers;
+    }
+
+    /**
+     * Returns a BookDao, VideoDao or CourseDao that records the calls to the given DAO.
+     */
+    public static <T> T wrap(Class<T> type, T dao, MetricsRegistry metrics) {
+        return type.cast(Proxy.newProxyInstance(MeteredDao.class.getClassLoader(), new Class<?>[] {type},
+                new MeteredDao(dao, type, metrics)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(dao, args);
+        }
+        MetricsRegistry.Timer timer = timers.get(method);
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(dao, args);
+            timer.record(System.nanoTime() - start, isError(method, result));
+            return result;
+        } catch (InvocationTargetException e) {
+            timer.record(System.nanoTime() - start, true);
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isError(Method method, Object result) {
+        if (result == null) {
+            return method.getReturnType() != void.class;
+        }
+        return result instanceof Result && ((Result<?, ?>) result).isError();
+    }
+}
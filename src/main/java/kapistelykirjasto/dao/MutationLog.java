@@ -0,0 +1,250 @@
+package kapistelykirjasto.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of LogRecords, split into segment files in one directory. Every
+ * record gets the next sequence number, and a segment is named after the sequence
+ * number of its first record, so the names sort in log order. A new segment is started
+ * when the current one grows past segmentBytes, and on roll().
+ *
+ * Each record is framed as
+ * <pre>
+ * length    int, the bytes of the sequence number and the record
+ * checksum  int, CRC-32 of the same bytes
+ * sequence  long
+ * record    see LogRecord
+ * </pre>
+ * Opening the log replays the records and checks that the sequence numbers have no
+ * gaps. A crash in the middle of an append leaves a torn record at the end of the last
+ * segment; it fails the length or checksum check and is cut off. A bad record anywhere
+ * else is not a torn write, and the log refuses to open.
+ *
+ * Records are written straight to the file, so they survive a crash of the process.
+ * With sync they are also forced to the disk before append() returns, so they survive a
+ * power cut too.
+ */
+class MutationLog {
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean sync;
+    private FileChannel segment;
+    private long segmentSize;
+    private long lastSequence;
+    private IOException failure;
+
+    private MutationLog(Path directory, long segmentBytes, boolean sync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.sync = sync;
+    }
+
+    /**
+     * Opens the log in the directory, passing the records after the sequence number
+     * after to apply in order.
+     */
+    static MutationLog open(Path directory, long after, Consumer<LogRecord> apply, long segmentBytes, boolean sync)
+            throws IOException {
+        MutationLog log = new MutationLog(directory, segmentBytes, sync);
+        log.lastSequence = after;
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            long end = log.replay(segments.get(i), after, apply);
+            if (end < Files.size(segments.get(i)) && i < segments.size() - 1) {
+                throw new IOException("loki on rikki: " + segments.get(i));
+            } else if (i == segments.size() - 1) {
+                log.segment = FileChannel.open(segments.get(i), StandardOpenOption.WRITE);
+                log.segment.truncate(end).position(end);
+                log.segmentSize = end;
+            }
+        }
+        if (log.segment == null) {
+            log.roll();
+        }
+        return log;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        ArrayList<Path> segments = new ArrayList<>();
+        Stream<Path> files = Files.list(directory);
+        try {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(segments::add);
+        } finally {
+            files.close();
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Replays one segment and returns the offset where its valid records end.
+     */
+    private long replay(Path file, long after, Consumer<LogRecord> apply) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (isWhole(buffer)) {
+                buffer.position(buffer.position() + FRAME_HEADER_BYTES);
+                int end = buffer.position() + buffer.getInt(buffer.position() - FRAME_HEADER_BYTES);
+                long sequence = buffer.getLong();
+                ByteBuffer record = buffer.slice();
+                record.limit(end - buffer.position());
+                buffer.position(end);
+                replay(sequence, LogRecord.decode(record), after, apply);
+            }
+            return buffer.position();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void replay(long sequence, LogRecord record, long after, Consumer<LogRecord> apply) throws IOException {
+        if (sequence > lastSequence + 1 || sequence <= after && lastSequence > after) {
+            throw new IOException("lokista puuttuu muutoksia ennen muutosta " + sequence);
+        } else if (sequence > after) {
+            apply.accept(record);
+            lastSequence = sequence;
+        }
+    }
+
+    /**
+     * Tells if a whole record with a matching checksum starts at the position of the
+     * buffer.
+     */
+    private static boolean isWhole(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < FRAME_HEADER_BYTES) {
+            return false;
+        }
+        int length = buffer.getInt(start);
+        if (length < Long.BYTES || length > buffer.remaining() - FRAME_HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer contents = buffer.duplicate();
+        contents.position(start + FRAME_HEADER_BYTES).limit(start + FRAME_HEADER_BYTES + length);
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return (int) crc.getValue() == buffer.getInt(start + 4);
+    }
+
+    /**
+     * Writes the record with the next sequence number, forces it to the disk if the log
+     * was opened with sync, and returns the number. If the record cannot be written or
+     * forced, it is cut off again and gets no number, so that later records never follow
+     * a torn one; replaying would stop at it and drop them.
+     */
+    synchronized long append(LogRecord record) throws IOException {
+        if (failure != null) {
+            throw new IOException("lokiin ei voi enää kirjoittaa", failure);
+        }
+        if (segmentSize >= segmentBytes) {
+            roll();
+        }
+        ByteBuffer frame = frame(record, lastSequence + 1);
+        try {
+            write(frame);
+        } catch (IOException e) {
+            undo();
+            throw e;
+        }
+        segmentSize += frame.capacity();
+        return ++lastSequence;
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            segment.write(frame);
+        }
+        if (sync) {
+            segment.force(false);
+        }
+    }
+
+    private static ByteBuffer frame(LogRecord record, long sequence) throws IOException {
+        byte[] encoded = record.encode();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + Long.BYTES + encoded.length);
+        frame.putInt(Long.BYTES + encoded.length).putInt(0).putLong(sequence).put(encoded);
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_BYTES, frame.capacity() - FRAME_HEADER_BYTES);
+        frame.putInt(4, (int) crc.getValue());
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Cuts the segment back to its last whole record. If even that fails, the log
+     * refuses further appends instead of writing after a torn record.
+     */
+    private void undo() {
+        try {
+            segment.truncate(segmentSize);
+            segment.position(segmentSize);
+            if (sync) {
+                segment.force(false);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Starts a new segment for the records after the last one.
+     */
+    synchronized void roll() throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        Path file = directory.resolve(String.format("%020d%s", lastSequence + 1, SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentSize = segment.size();
+    }
+
+    /**
+     * Deletes the segments that hold nothing after the sequence number upTo, that is,
+     * nothing that a snapshot up to it does not already have. The current segment is
+     * kept.
+     */
+    synchronized void compact(long upTo) throws IOException {
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (firstSequence(segments.get(i + 1)) <= upTo + 1) {
+                Files.delete(segments.get(i));
+            }
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    synchronized void close() throws IOException {
+        if (segment.isOpen()) {
+            segment.force(false);
+            segment.close();
+        }
+    }
+}
@@ -2,125 +2,146 @@ package kapistelykirjasto.dao;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 import kapistelykirjasto.dao.models.BookModel;
 import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
 import kapistelykirjasto.util.Result;
 
 public class SQLiteBookDao implements BookDao {
 
-    private Connection connection;
+    private ConnectionProvider connections;
+    private boolean ownsConnections;
+
+    public SQLiteBookDao(ConnectionProvider connections) {
+        this(connections, false);
+    }
 
     public SQLiteBookDao(String fileName) {
-        try {
-            this.connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+        this(new ConnectionProvider(fileName), true);
+    }
+
+    public SQLiteBookDao() throws SQLException {
+        this("production.db");
+    }
 
-            Statement statement = this.connection.createStatement();
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS book (id INTEGER PRIMARY KEY AUTOINCREMENT"
-                    + ", title TEXT UNIQUE, comment TEXT, author TEXT, ISBN TEXT, read TIMESTAMP DEFAULT NULL);");
+    private SQLiteBookDao(ConnectionProvider connections, boolean ownsConnections) {
+        this.connections = connections;
+        this.ownsConnections = ownsConnections;
+        try {
+            this.connections.migrate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public SQLiteBookDao() throws SQLException {
-        this("production.db");
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN) {
+        return createBook(title, comment, author, ISBN, new int[0]);
     }
 
     @Override
-    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN) {
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN,
+            int[] courseIds) {
         try {
-            PreparedStatement statement = this.connection.prepareStatement(
-                    "INSERT INTO book(title, comment, author, isbn) VALUES(?,?,?,?);",
-                    Statement.RETURN_GENERATED_KEYS);
-
-            Util.setObjects(statement, title, comment, author, ISBN);
-            statement.executeUpdate();
+            return this.connections.transaction(connection -> {
+                Result<String, Integer> res = Util.insert(connection,
+                        "INSERT INTO book(title, comment, author, isbn, created) VALUES(?,?,?,?,"
+                        + Util.NOW_MILLIS + ");",
+                        title, comment, author, ISBN);
+                if (res.isValue()) {
+                    Util.insertCourseRelations(connection, "courseBook", "bookId", res.getValue(), courseIds);
+                }
+                return res;
+            });
+        } catch (SQLException e) {
+            return Result.error(Util.isConstraintFailure(e, "FOREIGN KEY") ? Util.COURSE_LINK_FAILED
+                    : "Tietokantavirhe (book): " + e.getErrorCode());
+        }
+    }
 
-            return Util.getGeneratedKeyFromStatement(statement);
+    @Override
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (BookModel book : books) {
+            rows.add(new Object[] {book.getTitle(), book.getComment(), book.getAuthor(), book.getISBN()});
+        }
+        try {
+            return this.connections.transaction(connection -> Util.insertBatch(connection,
+                    "INSERT INTO book(title, comment, author, isbn, created) VALUES(?,?,?,?,"
+                        + Util.NOW_MILLIS + ");",
+                    "Tietokantavirhe (book): ", rows));
         } catch (SQLException e) {
-            return Result.error("Tietokantavirhe (book): " + e.getErrorCode());
+            return Util.errors(rows.size(), "Tietokantavirhe (book): " + e.getErrorCode());
         }
     }
 
     @Override
     public ArrayList<BookModel> getBooks() {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM book");
-            ResultSet res = statement.executeQuery();
-            ArrayList<BookModel> books = new ArrayList<>();
-            while (res.next()) {
-                books.add(
-                        new BookModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("author"), res.getString("ISBN"))
-                );
-            }
-            statement.close();
-            return books;
+        return queryBooks("SELECT * FROM book");
+    }
 
+    @Override
+    public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize) {
+        try {
+            return this.connections.read(connection -> Util.queryPage(connection, "book", sort, token, pageSize,
+                    SQLiteBookDao::toModel));
         } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
+            printSQLException(e);
         }
         return null;
     }
 
-    private boolean bookExists(int id) {
+    @Override
+    public Stream<BookModel> streamBooks(int fetchSize) {
+        return Cursor.stream(this.connections, "SELECT * FROM book ORDER BY id", fetchSize, SQLiteBookDao::toModel);
+    }
+
+    private ArrayList<BookModel> queryBooks(String sql, Object... params) {
         try {
-            PreparedStatement statement = this.connection.prepareStatement(
-                    "SELECT * FROM book WHERE id=?;"
-            );
-            statement.setInt(1, id);
-            ResultSet res = statement.executeQuery();
-            boolean exists = res.next(); // If there is an element available in the result set, next() returns true.
-            statement.close();
-            return exists;
+            return this.connections.read(connection -> Util.query(connection, sql, SQLiteBookDao::toModel, params));
         } catch (SQLException e) {
             e.getErrorCode();
             e.printStackTrace();
-            return false;
         }
+        return null;
+    }
+
+    static BookModel toModel(ResultSet res) throws SQLException {
+        return new BookModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
+                res.getString("author"), res.getString("ISBN"));
+    }
+
+    private boolean bookExists(Connection connection, int id) throws SQLException {
+        return Util.exists(connection, "SELECT * FROM book WHERE id=?;", id);
     }
 
     @Override
     public boolean deleteBook(int id) {
-        try {
-            if (!bookExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement("DELETE FROM book WHERE id = ?");
-            statement.setInt(1, id);
-            statement.executeUpdate();
-            statement.close();
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-            return false;
-        }
-        return true;
+        return updateIfExists(id, "DELETE FROM book WHERE id = ?", id);
     }
 
     @Override
     public boolean editBook(int id, String title, String comment, String author, String ISBN) {
+        return updateIfExists(id, "UPDATE book SET title=?, comment=?, author=?, isbn=? " + "WHERE id=?",
+                title, comment, author, ISBN, String.valueOf(id));
+    }
+
+    private boolean updateIfExists(int id, String sql, Object... params) {
         try {
-            if (!bookExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement(
-                    "UPDATE book SET title=?, comment=?, author=?, isbn=? " + "WHERE id=?");
-            statement.setString(1, title);
-            statement.setString(2, comment);
-            statement.setString(3, author);
-            statement.setString(4, ISBN);
-            statement.setString(5, String.valueOf(id));
-            statement.executeUpdate();
-            statement.close();
+            return this.connections.write(connection -> {
+                if (!bookExists(connection, id)) {
+                    return false;
+                }
+                Util.update(connection, sql, params);
+                return true;
+            });
         } catch (SQLException e) {
             printSQLException(e);
             return false;
         }
-        return true;
     }
 
     public void printSQLException(SQLException exception) {
@@ -134,93 +155,29 @@ public class SQLiteBookDao implements BookDao {
 
         Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         String setTime = String.valueOf(timestamp.getTime());
-        try {
-            if (!bookExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement("UPDATE book SET read=? " + "WHERE id=?");
-            statement.setString(1, setTime);
-            statement.setString(2, String.valueOf(id));
-            statement.executeUpdate();
-            statement.close();
-        } catch (SQLException e) {
-            printSQLException(e);
-            return false;
-        }
-        return true;
+        return updateIfExists(id, "UPDATE book SET read=? " + "WHERE id=?", setTime, String.valueOf(id));
     }
 
     @Override
     public ArrayList<BookModel> getReadBooks() {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM book WHERE read IS NOT NULL;");
-            ResultSet res = statement.executeQuery();
-            ArrayList<BookModel> books = new ArrayList<>();
-            while (res.next()) {
-                books.add(
-                        new BookModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("author"), res.getString("ISBN"))
-                );
-            }
-            statement.close();
-            return books;
-
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryBooks("SELECT * FROM book WHERE read IS NOT NULL;");
     }
 
     @Override
     public ArrayList<BookModel> getNotReadBooks() {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM book WHERE read IS NULL;");
-            ResultSet res = statement.executeQuery();
-            ArrayList<BookModel> books = new ArrayList<>();
-            while (res.next()) {
-                books.add(
-                        new BookModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("author"), res.getString("ISBN"))
-                );
-            }
-            statement.close();
-            return books;
-
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryBooks("SELECT * FROM book WHERE read IS NULL;");
     }
 
     @Override
     public ArrayList<BookModel> getCourseBooks(int courseId) {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT b.title AS title, b.id AS id, b.comment AS comment, b.author AS author, b.ISBN AS ISBN FROM book b, courseBook c WHERE b.id=c.bookId and c.courseId=?;");
-            statement.setInt(1, courseId);
-            ResultSet res = statement.executeQuery();
-            ArrayList<BookModel> books = new ArrayList<>();
-            while (res.next()) {
-                books.add(
-                        new BookModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("author"), res.getString("ISBN"))
-                );
-            }
-            return books;
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryBooks("SELECT b.title AS title, b.id AS id, b.comment AS comment, b.author AS author, b.ISBN AS ISBN FROM book b, courseBook c WHERE b.id=c.bookId and c.courseId=?;",
+                courseId);
     }
 
     @Override
     public void close() {
-        try {
-            this.connection.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (this.ownsConnections) {
+            this.connections.close();
         }
     }
 }
@@ -1,68 +1,71 @@
 package kapistelykirjasto.dao;
 
 import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.util.Result;
 
 import java.sql.*;
 import java.util.*;
 
 public class SQLiteCourseDao implements CourseDao {
 
-    private Connection connection;
+    private ConnectionProvider connections;
+    private boolean ownsConnections;
+
+    public SQLiteCourseDao(ConnectionProvider connections) {
+        this(connections, false);
+    }
 
     public SQLiteCourseDao(String fileName) {
-        try {
-            this.connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+        this(new ConnectionProvider(fileName), true);
+    }
 
-            Statement statement = this.connection.createStatement();
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS course (id INTEGER PRIMARY KEY AUTOINCREMENT"
-                            + ", coursecode TEXT, name TEXT);");
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS courseBook (courseId INTEGER, bookId INTEGER);");
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS courseVideo (courseId INTEGER, videoId INTEGER);");
+    public SQLiteCourseDao() throws SQLException {
+        this("production.db");
+    }
 
+    private SQLiteCourseDao(ConnectionProvider connections, boolean ownsConnections) {
+        this.connections = connections;
+        this.ownsConnections = ownsConnections;
+        try {
+            this.connections.migrate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public SQLiteCourseDao() throws SQLException {
-        this("production.db");
+    @Override
+    public boolean createCourse(String courseCode, String name) {
+        return insertCourse(courseCode, name).isValue();
     }
 
     @Override
-    public boolean createCourse(String courseCode, String name) {
-        return executeSQLUpdate("INSERT INTO course(courseCode, name) VALUES(?,?);",
-                courseCode, name);
+    public Result<String, Integer> insertCourse(String courseCode, String name) {
+        try {
+            return this.connections.write(connection -> Util.insert(connection,
+                    "INSERT INTO course(courseCode, name) VALUES(?,?);", courseCode, name));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Result.error("Tietokantavirhe (course): " + e.getErrorCode());
+        }
     }
 
     @Override
     public boolean addBookCourseRelation(int courseId, int bookId) {
-        return executeSQLUpdate("INSERT INTO courseBook(courseid, bookId) VALUES(?,?);",
+        return executeSQLUpdate("INSERT OR IGNORE INTO courseBook(courseid, bookId) VALUES(?,?);",
                 courseId + "", bookId + "");
     }
 
     @Override
     public boolean addVideoCourseRelation(int courseId, int videoId) {
-        return executeSQLUpdate("INSERT INTO courseVideo(courseid, videoId) VALUES(?,?);",
+        return executeSQLUpdate("INSERT OR IGNORE INTO courseVideo(courseid, videoId) VALUES(?,?);",
                 courseId + "", videoId + "");
     }
 
     @Override
     public List<CourseModel> getCourses() {
         try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM course;");
-            ResultSet res = statement.executeQuery();
-            ArrayList<CourseModel> courses = new ArrayList<>();
-            while (res.next()) {
-                courses.add(
-                        new CourseModel(res.getInt("id"), res.getString("coursecode"), res.getString("name"))
-                );
-            }
-            statement.close();
-            return courses;
-
+            return this.connections.read(connection -> Util.query(connection, "SELECT * FROM course;",
+                    SQLiteCourseDao::toModel));
         } catch (SQLException e) {
             e.getErrorCode();
             e.printStackTrace();
@@ -70,16 +73,13 @@ public class SQLiteCourseDao implements CourseDao {
         return null;
     }
 
+    static CourseModel toModel(ResultSet res) throws SQLException {
+        return new CourseModel(res.getInt("id"), res.getString("coursecode"), res.getString("name"));
+    }
+
     private boolean executeSQLUpdate(String SQLstatement, String... params) {
         try {
-            PreparedStatement statement = this.connection.prepareStatement(SQLstatement);
-            int i = 1;
-            for (String param: params) {
-                statement.setString(i, param);
-                i++;
-            }
-            statement.executeUpdate();
-            statement.close();
+            this.connections.write(connection -> Util.update(connection, SQLstatement, (Object[]) params));
         } catch (SQLException e) {
             e.getErrorCode();
             e.printStackTrace();
@@ -90,10 +90,8 @@ public class SQLiteCourseDao implements CourseDao {
 
     @Override
     public void close() {
-        try {
-            this.connection.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (this.ownsConnections) {
+            this.connections.close();
         }
     }
 }
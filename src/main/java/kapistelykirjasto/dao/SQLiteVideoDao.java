@@ -1,46 +1,65 @@
 package kapistelykirjasto.dao;
 
 import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
 import kapistelykirjasto.util.Result;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class SQLiteVideoDao implements VideoDao {
 
-    private Connection connection;
+    private ConnectionProvider connections;
+    private boolean ownsConnections;
+
+    public SQLiteVideoDao(ConnectionProvider connections) {
+        this(connections, false);
+    }
 
     public SQLiteVideoDao(String fileName) {
-        try {
-            this.connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+        this(new ConnectionProvider(fileName), true);
+    }
+
+    public SQLiteVideoDao() throws SQLException {
+        this("production.db");
+    }
 
-            Statement statement = this.connection.createStatement();
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS video (id INTEGER PRIMARY KEY AUTOINCREMENT"
-                            + ", title TEXT UNIQUE, comment TEXT, url TEXT, duration TEXT, read TIMESTAMP DEFAULT NULL);");
+    private SQLiteVideoDao(ConnectionProvider connections, boolean ownsConnections) {
+        this.connections = connections;
+        this.ownsConnections = ownsConnections;
+        try {
+            this.connections.migrate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public SQLiteVideoDao() throws SQLException {
-        this("production.db");
+    @Override
+    public ArrayList<VideoModel> getVideos() {
+        return queryVideos("SELECT * FROM video");
     }
 
     @Override
-    public ArrayList<VideoModel> getVideos() {
+    public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize) {
         try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM video");
-            ResultSet res = statement.executeQuery();
-            ArrayList<VideoModel> videos = new ArrayList<>();
-            while (res.next()) {
-                videos.add(
-                        new VideoModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("url"), res.getString("duration")));
-            }
-            statement.close();
-            return videos;
+            return this.connections.read(connection -> Util.queryPage(connection, "video", sort, token, pageSize,
+                    SQLiteVideoDao::toModel));
+        } catch (SQLException e) {
+            printSQLException(e);
+        }
+        return null;
+    }
 
+    @Override
+    public Stream<VideoModel> streamVideos(int fetchSize) {
+        return Cursor.stream(this.connections, "SELECT * FROM video ORDER BY id", fetchSize, SQLiteVideoDao::toModel);
+    }
+
+    private ArrayList<VideoModel> queryVideos(String sql, Object... params) {
+        try {
+            return this.connections.read(connection -> Util.query(connection, sql, SQLiteVideoDao::toModel, params));
         } catch (SQLException e) {
             e.getErrorCode();
             e.printStackTrace();
@@ -48,160 +67,103 @@ public class SQLiteVideoDao implements VideoDao {
         return null;
     }
 
+    static VideoModel toModel(ResultSet res) throws SQLException {
+        return new VideoModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
+                res.getString("url"), res.getString("duration"));
+    }
+
     @Override
     public Result<String, Integer> createVideo(String title, String comment, String url, String duration) {
+        return createVideo(title, comment, url, duration, new int[0]);
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration,
+            int[] courseIds) {
         try {
-            PreparedStatement statement = this.connection.prepareStatement(
-            		"INSERT INTO video(title, comment, url, duration) VALUES(?,?,?,?);",
-            		Statement.RETURN_GENERATED_KEYS);
-            
-            Util.setObjects(statement, title, comment, url, duration);
-            statement.executeUpdate();
-            
-            return Util.getGeneratedKeyFromStatement(statement);
+            return this.connections.transaction(connection -> {
+                Result<String, Integer> res = Util.insert(connection,
+                        "INSERT INTO video(title, comment, url, duration, created) VALUES(?,?,?,?,"
+                        + Util.NOW_MILLIS + ");",
+                        title, comment, url, duration);
+                if (res.isValue()) {
+                    Util.insertCourseRelations(connection, "courseVideo", "videoId", res.getValue(), courseIds);
+                }
+                return res;
+            });
         } catch (SQLException e) {
-            return Result.error("Tietokantavirhe (video), " + e.getErrorCode());        
+            return Result.error(Util.isConstraintFailure(e, "FOREIGN KEY") ? Util.COURSE_LINK_FAILED
+                    : "Tietokantavirhe (video), " + e.getErrorCode());
         }
     }
 
     @Override
-    public boolean deleteVideo(int id) {
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (VideoModel video : videos) {
+            rows.add(new Object[] {video.getTitle(), video.getComment(), video.getUrl(), video.getDuration()});
+        }
         try {
-            if (!videoExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement("DELETE FROM video WHERE id = ?");
-            statement.setInt(1, id);
-            statement.executeUpdate();
-            statement.close();
+            return this.connections.transaction(connection -> Util.insertBatch(connection,
+                    "INSERT INTO video(title, comment, url, duration, created) VALUES(?,?,?,?,"
+                        + Util.NOW_MILLIS + ");",
+                    "Tietokantavirhe (video), ", rows));
         } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-            return false;
+            return Util.errors(rows.size(), "Tietokantavirhe (video), " + e.getErrorCode());
         }
-        return true;
+    }
+
+    @Override
+    public boolean deleteVideo(int id) {
+        return updateIfExists(id, "DELETE FROM video WHERE id = ?", id);
     }
 
     @Override
     public boolean editVideo(int id, String title, String comment, String url, String duration) {
+        return updateIfExists(id, "UPDATE video SET title=?, comment=?, url=?, duration=? " + "WHERE id=?",
+                title, comment, url, duration, String.valueOf(id));
+    }
+
+    private boolean updateIfExists(int id, String sql, Object... params) {
         try {
-            if (!videoExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement(
-                    "UPDATE video SET title=?, comment=?, url=?, duration=? " + "WHERE id=?");
-            statement.setString(1, title);
-            statement.setString(2, comment);
-            statement.setString(3, url);
-            statement.setString(4, duration);
-            statement.setString(5, String.valueOf(id));
-            statement.executeUpdate();
-            statement.close();
+            return this.connections.write(connection -> {
+                if (!videoExists(connection, id)) {
+                    return false;
+                }
+                Util.update(connection, sql, params);
+                return true;
+            });
         } catch (SQLException e) {
             printSQLException(e);
             return false;
         }
-        return true;
     }
 
-    private boolean videoExists(int id) {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(
-                    "SELECT * FROM video WHERE id=?;"
-            );
-            statement.setInt(1, id);
-            ResultSet res = statement.executeQuery();
-            boolean exists = res.next(); // If there is an element available in the result set, next() returns true.
-            statement.close();
-            return exists;
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-            return false;
-        }
+    private boolean videoExists(Connection connection, int id) throws SQLException {
+        return Util.exists(connection, "SELECT * FROM video WHERE id=?;", id);
     }
 
     @Override
     public boolean markVideoAsRead(int id) {
         Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         String setTime = String.valueOf(timestamp.getTime());
-        try {
-            if (!videoExists(id)) {
-                return false;
-            }
-            PreparedStatement statement = this.connection.prepareStatement("UPDATE video SET read=? " + "WHERE id=?");
-            statement.setString(1, setTime);
-            statement.setString(2, String.valueOf(id));
-            statement.executeUpdate();
-            statement.close();
-        } catch (SQLException e) {
-            printSQLException(e);
-            return false;
-        }
-        return true;
+        return updateIfExists(id, "UPDATE video SET read=? " + "WHERE id=?", setTime, String.valueOf(id));
     }
 
     @Override
     public ArrayList<VideoModel> getReadVideos() {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM video WHERE read IS NOT NULL");
-            ResultSet res = statement.executeQuery();
-            ArrayList<VideoModel> videos = new ArrayList<>();
-            while (res.next()) {
-                videos.add(
-                        new VideoModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("url"), res.getString("duration")));
-            }
-            statement.close();
-            return videos;
-
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryVideos("SELECT * FROM video WHERE read IS NOT NULL");
     }
 
     @Override
     public ArrayList<VideoModel> getNotReadVideos() {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT * FROM video WHERE read IS NULL");
-            ResultSet res = statement.executeQuery();
-            ArrayList<VideoModel> videos = new ArrayList<>();
-            while (res.next()) {
-                videos.add(
-                        new VideoModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("url"), res.getString("duration")));
-            }
-            statement.close();
-            return videos;
-
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryVideos("SELECT * FROM video WHERE read IS NULL");
     }
-    
+
     @Override
     public ArrayList<VideoModel> getCourseVideos(int courseId) {
-        try {
-            PreparedStatement statement = this.connection.prepareStatement("SELECT v.title AS title, v.id AS id, v.comment AS comment, v.url AS url, v.duration AS duration FROM video v, courseVideo c WHERE v.id=c.videoId and c.courseId=?;");
-            statement.setInt(1, courseId);
-            ResultSet res = statement.executeQuery();
-            ArrayList<VideoModel> videos = new ArrayList<>();
-            while (res.next()) {
-                videos.add(
-                        new VideoModel(res.getInt("id"), res.getString("title"), res.getString("comment"),
-                                res.getString("url"), res.getString("duration"))
-                );
-            }
-            return videos;
-        } catch (SQLException e) {
-            e.getErrorCode();
-            e.printStackTrace();
-        }
-        return null;
+        return queryVideos("SELECT v.title AS title, v.id AS id, v.comment AS comment, v.url AS url, v.duration AS duration FROM video v, courseVideo c WHERE v.id=c.videoId and c.courseId=?;",
+                courseId);
     }
 
     public void printSQLException(SQLException exception) {
@@ -211,10 +173,8 @@ public class SQLiteVideoDao implements VideoDao {
 
     @Override
     public void close() {
-        try {
-            this.connection.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (this.ownsConnections) {
+            this.connections.close();
         }
     }
 }
@@ -0,0 +1,154 @@
+package kapistelykirjasto.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The database schema as an ordered list of migrations. The version of the newest
+ * applied migration is kept in the schema_version table, and every migration that is
+ * newer than that is applied in its own transaction. Existing migrations must never be
+ * edited; change the schema by appending a new one.
+ */
+public class SchemaMigrations {
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "kirja-, video- ja kurssitaulut",
+                    "CREATE TABLE IF NOT EXISTS book (id INTEGER PRIMARY KEY AUTOINCREMENT"
+                    + ", title TEXT UNIQUE, comment TEXT, author TEXT, ISBN TEXT, read TIMESTAMP DEFAULT NULL);",
+                    "CREATE TABLE IF NOT EXISTS video (id INTEGER PRIMARY KEY AUTOINCREMENT"
+                    + ", title TEXT UNIQUE, comment TEXT, url TEXT, duration TEXT, read TIMESTAMP DEFAULT NULL);",
+                    "CREATE TABLE IF NOT EXISTS course (id INTEGER PRIMARY KEY AUTOINCREMENT"
+                    + ", coursecode TEXT, name TEXT);",
+                    "CREATE TABLE IF NOT EXISTS courseBook (courseId INTEGER, bookId INTEGER);",
+                    "CREATE TABLE IF NOT EXISTS courseVideo (courseId INTEGER, videoId INTEGER);"),
+            new Migration(2, "courseBook: pääavain, viiteavaimet ja käänteinen indeksi",
+                    "CREATE TABLE courseBook_new (courseId INTEGER NOT NULL REFERENCES course(id) ON DELETE CASCADE"
+                    + ", bookId INTEGER NOT NULL REFERENCES book(id) ON DELETE CASCADE"
+                    + ", PRIMARY KEY (courseId, bookId)) WITHOUT ROWID;",
+                    "INSERT OR IGNORE INTO courseBook_new SELECT courseId, bookId FROM courseBook"
+                    + " WHERE courseId IN (SELECT id FROM course) AND bookId IN (SELECT id FROM book);",
+                    "DROP TABLE courseBook;",
+                    "ALTER TABLE courseBook_new RENAME TO courseBook;",
+                    "CREATE INDEX courseBook_bookId ON courseBook(bookId, courseId);"),
+            new Migration(3, "courseVideo: pääavain, viiteavaimet ja käänteinen indeksi",
+                    "CREATE TABLE courseVideo_new (courseId INTEGER NOT NULL REFERENCES course(id) ON DELETE CASCADE"
+                    + ", videoId INTEGER NOT NULL REFERENCES video(id) ON DELETE CASCADE"
+                    + ", PRIMARY KEY (courseId, videoId)) WITHOUT ROWID;",
+                    "INSERT OR IGNORE INTO courseVideo_new SELECT courseId, videoId FROM courseVideo"
+                    + " WHERE courseId IN (SELECT id FROM course) AND videoId IN (SELECT id FROM video);",
+                    "DROP TABLE courseVideo;",
+                    "ALTER TABLE courseVideo_new RENAME TO courseVideo;",
+                    "CREATE INDEX courseVideo_videoId ON courseVideo(videoId, courseId);"),
+            new Migration(4, "luontiaika sekä luonti- ja lukuaikojen indeksit",
+                    "ALTER TABLE book ADD COLUMN created TIMESTAMP DEFAULT NULL;",
+                    "ALTER TABLE video ADD COLUMN created TIMESTAMP DEFAULT NULL;",
+                    "UPDATE book SET created = " + Util.NOW_MILLIS + ";",
+                    "UPDATE video SET created = " + Util.NOW_MILLIS + ";",
+                    "CREATE INDEX book_created ON book(created);",
+                    "CREATE INDEX book_read ON book(read);",
+                    "CREATE INDEX video_created ON video(created);",
+                    "CREATE INDEX video_read ON video(read);"),
+            // books and videos share one index: a book has the rowid 2 * id and a video 2 * id + 1
+            new Migration(5, "kokotekstihaku: entry_search ja sitä päivittävät liipaisimet",
+                    "CREATE VIRTUAL TABLE entry_search USING fts5(title, author, comment"
+                    + ", tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3');",
+                    "INSERT INTO entry_search(rowid, title, author, comment)"
+                    + " SELECT 2 * id, title, author, comment FROM book;",
+                    "INSERT INTO entry_search(rowid, title, author, comment)"
+                    + " SELECT 2 * id + 1, title, NULL, comment FROM video;",
+                    "CREATE TRIGGER book_search_insert AFTER INSERT ON book BEGIN"
+                    + " INSERT INTO entry_search(rowid, title, author, comment)"
+                    + " VALUES (2 * NEW.id, NEW.title, NEW.author, NEW.comment); END;",
+                    "CREATE TRIGGER book_search_update AFTER UPDATE OF title, author, comment ON book BEGIN"
+                    + " UPDATE entry_search SET title = NEW.title, author = NEW.author, comment = NEW.comment"
+                    + " WHERE rowid = 2 * NEW.id; END;",
+                    "CREATE TRIGGER book_search_delete AFTER DELETE ON book BEGIN"
+                    + " DELETE FROM entry_search WHERE rowid = 2 * OLD.id; END;",
+                    "CREATE TRIGGER video_search_insert AFTER INSERT ON video BEGIN"
+                    + " INSERT INTO entry_search(rowid, title, author, comment)"
+                    + " VALUES (2 * NEW.id + 1, NEW.title, NULL, NEW.comment); END;",
+                    "CREATE TRIGGER video_search_update AFTER UPDATE OF title, comment ON video BEGIN"
+                    + " UPDATE entry_search SET title = NEW.title, comment = NEW.comment"
+                    + " WHERE rowid = 2 * NEW.id + 1; END;",
+                    "CREATE TRIGGER video_search_delete AFTER DELETE ON video BEGIN"
+                    + " DELETE FROM entry_search WHERE rowid = 2 * OLD.id + 1; END;"),
+            new Migration(6, "muutoslaskuri: kasvaa jokaisesta lukuvinkkien, kurssien ja linkkien muutoksesta",
+                    countChanges("book", "video", "course", "courseBook", "courseVideo"))
+    );
+
+    /**
+     * The statements that create the change_counter table and the triggers that
+     * increment it on every insert, update and delete in the given tables. A copy of
+     * the library (such as a snapshot) that stores the counter is up to date exactly when
+     * the counter has not changed since.
+     */
+    private static String[] countChanges(String... tables) {
+        ArrayList<String> statements = new ArrayList<>();
+        statements.add("CREATE TABLE change_counter (id INTEGER PRIMARY KEY CHECK (id = 1)"
+                + ", changes INTEGER NOT NULL);");
+        statements.add("INSERT INTO change_counter VALUES (1, 0);");
+        for (String table : tables) {
+            for (String event : new String[] {"INSERT", "UPDATE", "DELETE"}) {
+                statements.add("CREATE TRIGGER " + table + "_count_" + event.toLowerCase(Locale.ROOT) + " AFTER " + event
+                        + " ON " + table + " BEGIN UPDATE change_counter SET changes = changes + 1; END;");
+            }
+        }
+        return statements.toArray(new String[0]);
+    }
+
+    /**
+     * The value of the change counter (see countChanges).
+     */
+    public static long changeCount(Connection connection) throws SQLException {
+        return Util.query(connection, "SELECT changes FROM change_counter;", rs -> rs.getLong(1)).get(0);
+    }
+
+    /**
+     * Brings the database up to the newest schema version and returns that version.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        Util.execute(connection, "CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY"
+                + ", description TEXT, applied TIMESTAMP DEFAULT CURRENT_TIMESTAMP);");
+        int version = currentVersion(connection);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > version) {
+                ConnectionProvider.runInTransaction(connection, migration::apply);
+                version = migration.version;
+            }
+        }
+        return version;
+    }
+
+    public static int currentVersion(Connection connection) throws SQLException {
+        String sql = "SELECT COALESCE(MAX(version), 0) FROM schema_version;";
+        return Util.query(connection, sql, rs -> rs.getInt(1)).get(0);
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static class Migration {
+
+        private final int version;
+        private final String description;
+        private final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+
+        Void apply(Connection connection) throws SQLException {
+            Util.execute(connection, statements);
+            Util.update(connection, "INSERT INTO schema_version(version, description) VALUES(?,?);",
+                    version, description);
+            return null;
+        }
+    }
+}
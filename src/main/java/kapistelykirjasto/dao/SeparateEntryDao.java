@@ -0,0 +1,60 @@
+package kapistelykirjasto.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+import kapistelykirjasto.dao.models.VideoModel;
+
+/**
+ * Lists entries by asking the book and video DAOs separately, as the application did
+ * before EntryDao. The models carry no timestamps, so only the title order is applied;
+ * otherwise the books come first and then the videos, each in the order of their DAO.
+ */
+public class SeparateEntryDao implements EntryDao {
+
+    private final BookDao bookDao;
+    private final VideoDao videoDao;
+
+    public SeparateEntryDao(BookDao bookDao, VideoDao videoDao) {
+        this.bookDao = bookDao;
+        this.videoDao = videoDao;
+    }
+
+    @Override
+    public ArrayList<Model> getEntries(Order order) {
+        return entries(this.bookDao.getBooks(), this.videoDao.getVideos(), order);
+    }
+
+    @Override
+    public ArrayList<Model> getReadEntries(Order order) {
+        return entries(this.bookDao.getReadBooks(), this.videoDao.getReadVideos(), order);
+    }
+
+    @Override
+    public ArrayList<Model> getNotReadEntries(Order order) {
+        return entries(this.bookDao.getNotReadBooks(), this.videoDao.getNotReadVideos(), order);
+    }
+
+    @Override
+    public ArrayList<Model> getCourseEntries(int courseId, Order order) {
+        return entries(this.bookDao.getCourseBooks(courseId), this.videoDao.getCourseVideos(courseId), order);
+    }
+
+    @Override
+    public ArrayList<SearchResultModel> search(String query, int limit) {
+        return MemorySearch.search(getEntries(Order.CREATED), query, limit);
+    }
+
+    private static ArrayList<Model> entries(List<BookModel> books, List<VideoModel> videos, Order order) {
+        ArrayList<Model> entries = new ArrayList<>(books);
+        entries.addAll(videos);
+        if (order == Order.TITLE) {
+            entries.sort(Comparator.comparing(Model::getTitle, Comparator.nullsFirst(Comparator.naturalOrder())));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,255 @@
+package kapistelykirjasto.dao;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs prepared statements that take longer than a threshold. The time of a query
+ * includes stepping through its result set, since that is where SQLite does most of the
+ * work. For a slow statement the SQL, the bound parameters, the elapsed time and the
+ * EXPLAIN QUERY PLAN output are handed to a background thread that appends them to the
+ * log file, so the caller only pays for the plan lookup. The file is rotated to .1, .2
+ * and so on when it grows over maxBytes.
+ *
+ * Install the log with ConnectionProvider.setSlowQueryLog; statements that run faster
+ * than the threshold only pay for a few System.nanoTime calls.
+ */
+public class SlowQueryLog {
+
+    public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+    private static final int QUEUE_SIZE = 1000;
+    private static final String STOP = "";
+
+    private final Path file;
+    private final long thresholdNanos;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    public SlowQueryLog(Path file, long thresholdMillis, long maxBytes, int maxFiles) {
+        this.file = file;
+        this.thresholdNanos = thresholdMillis * 1000000;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.writer = new Thread(this::writeAll, "slow-query-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public SlowQueryLog(Path file, long thresholdMillis) {
+        this(file, thresholdMillis, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    public long getLoggedCount() {
+        return logged.get();
+    }
+
+    /**
+     * Slow statements that were not logged because the writer had fallen too far behind.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the queued entries and stops the writer.
+     */
+    public void close() {
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> invokeConnection(connection, method, args));
+    }
+
+    private Object invokeConnection(Connection connection, Method method, Object[] args) throws Throwable {
+        Object result = delegate(connection, method, args);
+        if (result instanceof PreparedStatement) {
+            return new LoggedStatement(connection, (PreparedStatement) result, (String) args[0]).proxy;
+        }
+        return result;
+    }
+
+    private void slow(Connection connection, String sql, Object[] params, long elapsedNanos) {
+        String entry = String.format("%s %.1f ms%nSQL: %s%nparametrit: %s%nsuunnitelma:%n%s%n",
+                LocalDateTime.now(), elapsedNanos / 1e6, sql, Arrays.toString(params),
+                explain(connection, sql, params));
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static String explain(Connection connection, String sql, Object[] params) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+            try {
+                ResultSet rs = Util.setObjects(stmt, params).executeQuery();
+                while (rs.next()) {
+                    plan.append("  ").append(rs.getString("detail")).append('\n');
+                }
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            plan.append("  (").append(e.getMessage()).append(")\n");
+        }
+        return plan.toString();
+    }
+
+    private void writeAll() {
+        try {
+            for (String entry = queue.take(); entry != STOP; entry = queue.take()) {
+                write(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String entry) {
+        try {
+            if (Files.exists(file) && Files.size(file) > maxBytes) {
+                rotate();
+            }
+            Files.write(file, (entry + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            logged.incrementAndGet();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void rotate() throws IOException {
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path older = rotated(i);
+            if (Files.exists(older)) {
+                Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rotated(int index) {
+        return Paths.get(file.toString() + "." + index);
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Records the parameters bound to one statement and the time spent executing it and
+     * stepping through its result set. The time is checked against the threshold when
+     * the result set or the statement is closed, or when its parameters are cleared for
+     * the next execution.
+     */
+    private class LoggedStatement implements InvocationHandler {
+
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final String sql;
+        private final PreparedStatement proxy;
+        private final TreeMap<Integer, Object> params = new TreeMap<>();
+        private long elapsedNanos = 0;
+        private boolean executed = false;
+
+        LoggedStatement(Connection connection, PreparedStatement statement, String sql) {
+            this.connection = connection;
+            this.statement = statement;
+            this.sql = sql;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("close") || name.equals("clearParameters")) {
+                finish();
+            }
+            if (!name.startsWith("execute")) {
+                return delegate(statement, method, args);
+            }
+            return timed(() -> delegate(statement, method, args));
+        }
+
+        private Object timed(Call call) throws Throwable {
+            executed = true;
+            long start = System.nanoTime();
+            try {
+                Object result = call.run();
+                if (result instanceof ResultSet) {
+                    return timedResults((ResultSet) result);
+                }
+                return result;
+            } finally {
+                elapsedNanos += System.nanoTime() - start;
+            }
+        }
+
+        private ResultSet timedResults(ResultSet rs) {
+            return (ResultSet) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                    new Class<?>[] {ResultSet.class}, (r, method, args) -> invokeResults(rs, method, args));
+        }
+
+        private Object invokeResults(ResultSet rs, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("next")) {
+                return timed(() -> delegate(rs, method, args));
+            } else if (method.getName().equals("close")) {
+                finish();
+            }
+            return delegate(rs, method, args);
+        }
+
+        private void finish() {
+            if (executed && elapsedNanos >= thresholdNanos) {
+                slow(connection, sql, new ArrayList<>(params.values()).toArray(), elapsedNanos);
+            }
+            executed = false;
+            elapsedNanos = 0;
+            params.clear();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        Object run() throws Throwable;
+    }
+}
@@ -0,0 +1,359 @@
+package kapistelykirjasto.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.VideoModel;
+
+/**
+ * The whole library in one binary file, for starting a MemoryDao without reading every
+ * row from SQLite. The file is
+ * <pre>
+ * header   magic "KKSN", format version, schema version, change counter (long)
+ * strings  count, the UTF-8 length of each string, the bytes of all strings
+ * courses  count, ids, codes, names
+ * books    count, last id, ids, created, read, title, comment, author, ISBN, link
+ *          count, link course ids, link book ids
+ * videos   as books, with url and duration in place of author and ISBN
+ * trailer  CRC-32 of everything before it (long)
+ * </pre>
+ * Every column is one block of big-endian ints or longs; strings are indexes into the
+ * string table, which stores each distinct string once, and -1 is null. A snapshot is
+ * read through a memory mapping of the file and used only if the checksum, the versions
+ * and the change counter of the database all match; otherwise read returns null and the
+ * caller loads from SQLite. A LogDao snapshot follows the log, not the database, so its
+ * schema version is LOG_SCHEMA and database migrations do not make it stale.
+ *
+ * The last id of a table is kept because the row with it may have been deleted, and a
+ * restored table must not give that id out again. Format version 1 has no last ids; it
+ * is still read, so that a LogDao can open a snapshot written before them, and its
+ * tables go on from their highest row. The file is written next to its final name and
+ * moved over it, so a crash never leaves a half-written snapshot.
+ */
+class Snapshot {
+
+    static final int MAGIC = 0x4B4B534E;
+    static final int FORMAT_VERSION = 2;
+    private static final int FORMAT_WITHOUT_LAST_IDS = 1;
+    static final int LOG_SCHEMA = -1;
+    private static final int HEADER_BYTES = 20;
+    private static final int TRAILER_BYTES = 8;
+
+    final int schema;
+    final long changes;
+    final List<CourseModel> courses;
+    final MemoryTable.Image books;
+    final MemoryTable.Image videos;
+
+    Snapshot(long changes, List<CourseModel> courses, MemoryTable.Image books, MemoryTable.Image videos) {
+        this(SchemaMigrations.latestVersion(), changes, courses, books, videos);
+    }
+
+    private Snapshot(int schema, long changes, List<CourseModel> courses, MemoryTable.Image books,
+            MemoryTable.Image videos) {
+        this.schema = schema;
+        this.changes = changes;
+        this.courses = courses;
+        this.books = books;
+        this.videos = videos;
+    }
+
+    /**
+     * The same snapshot marked as a LogDao snapshot.
+     */
+    Snapshot forLog() {
+        return new Snapshot(LOG_SCHEMA, changes, courses, books, videos);
+    }
+
+    void write(Path file) throws IOException {
+        Path temporary = Paths.get(file + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary.toFile());
+        try {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(stream, crc),
+                    1 << 16));
+            writeContents(out);
+            out.flush();
+            new DataOutputStream(stream).writeLong(crc.getValue());
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeContents(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(schema);
+        out.writeLong(changes);
+        StringTable strings = new StringTable();
+        ArrayList<int[]> columns = new ArrayList<>();
+        columns.add(strings.refs(courses, CourseModel::getCourseCode));
+        columns.add(strings.refs(courses, CourseModel::getName));
+        for (MemoryTable.Image image : new MemoryTable.Image[] {books, videos}) {
+            for (int column = 0; column < 4; column++) {
+                int field = column;
+                columns.add(strings.refs(image.rows, row -> fields(row.model)[field]));
+            }
+        }
+        strings.write(out);
+        writeCourses(out, columns.get(0), columns.get(1));
+        writeTable(out, books, columns.subList(2, 6));
+        writeTable(out, videos, columns.subList(6, 10));
+    }
+
+    private void writeCourses(DataOutputStream out, int[] codes, int[] names) throws IOException {
+        out.writeInt(courses.size());
+        for (CourseModel course : courses) {
+            out.writeInt(course.getId());
+        }
+        writeInts(out, codes);
+        writeInts(out, names);
+    }
+
+    private static void writeTable(DataOutputStream out, MemoryTable.Image image, List<int[]> strings)
+            throws IOException {
+        out.writeInt(image.rows.size());
+        out.writeInt(image.lastId);
+        for (MemoryTable.Row row : image.rows) {
+            out.writeInt(row.model.getId());
+        }
+        for (MemoryTable.Row row : image.rows) {
+            out.writeLong(row.created);
+        }
+        for (MemoryTable.Row row : image.rows) {
+            out.writeLong(row.read);
+        }
+        for (int[] column : strings) {
+            writeInts(out, column);
+        }
+        writeLinks(out, image.links);
+    }
+
+    private static void writeLinks(DataOutputStream out, List<int[]> links) throws IOException {
+        out.writeInt(links.size());
+        for (int part = 0; part < 2; part++) {
+            for (int[] link : links) {
+                out.writeInt(link[part]);
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * The four string columns of a book (title, comment, author, ISBN) or a video
+     * (title, comment, url, duration).
+     */
+    private static String[] fields(Model model) {
+        if (model instanceof BookModel) {
+            BookModel book = (BookModel) model;
+            return new String[] {book.getTitle(), book.getComment(), book.getAuthor(), book.getISBN()};
+        }
+        VideoModel video = (VideoModel) model;
+        return new String[] {video.getTitle(), video.getComment(), video.getUrl(), video.getDuration()};
+    }
+
+    /**
+     * Reads the snapshot, or returns null if there is no snapshot or it does not match
+     * the database: another format or schema version, a bad checksum or a different
+     * change counter.
+     */
+    static Snapshot read(Path file, long changes) throws IOException {
+        return read(file, SchemaMigrations.latestVersion(), counter -> counter == changes);
+    }
+
+    /**
+     * Reads a LogDao snapshot whatever its change counter is; the LogDao brings it up to
+     * date from the log.
+     */
+    static Snapshot readLog(Path file) throws IOException {
+        return read(file, LOG_SCHEMA, counter -> true);
+    }
+
+    private static Snapshot read(Path file, int schema, LongPredicate changes) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return isValid(buffer, schema, changes) ? read(buffer) : null;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int schema, LongPredicate changes) {
+        int size = buffer.limit();
+        if (size < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC
+                || (buffer.getInt(4) != FORMAT_VERSION && buffer.getInt(4) != FORMAT_WITHOUT_LAST_IDS)
+                || buffer.getInt(8) != schema || !changes.test(buffer.getLong(12))) {
+            return false;
+        }
+        ByteBuffer contents = buffer.duplicate();
+        contents.limit(size - TRAILER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue() == buffer.getLong(size - TRAILER_BYTES);
+    }
+
+    private static Snapshot read(ByteBuffer buffer) {
+        boolean lastIds = buffer.getInt(4) != FORMAT_WITHOUT_LAST_IDS;
+        int schema = buffer.getInt(8);
+        buffer.position(12);
+        long changes = buffer.getLong();
+        String[] strings = readStrings(buffer);
+        int[] courseIds = readInts(buffer, buffer.getInt());
+        int[] codes = readInts(buffer, courseIds.length);
+        int[] names = readInts(buffer, courseIds.length);
+        ArrayList<CourseModel> courses = new ArrayList<>();
+        for (int i = 0; i < courseIds.length; i++) {
+            courses.add(new CourseModel(courseIds[i], string(strings, codes[i]), string(strings, names[i])));
+        }
+        MemoryTable.Image books = readTable(buffer, strings, "book", lastIds);
+        MemoryTable.Image videos = readTable(buffer, strings, "video", lastIds);
+        return new Snapshot(schema, changes, courses, books, videos);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        int[] lengths = readInts(buffer, buffer.getInt());
+        int total = 0;
+        for (int length : lengths) {
+            total += length;
+        }
+        byte[] bytes = new byte[total];
+        buffer.get(bytes);
+        String[] strings = new String[lengths.length];
+        for (int i = 0, offset = 0; i < lengths.length; offset += lengths[i++]) {
+            strings[i] = new String(bytes, offset, lengths[i], StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static MemoryTable.Image readTable(ByteBuffer buffer, String[] strings, String type,
+            boolean withLastId) {
+        int count = buffer.getInt();
+        int lastId = withLastId ? buffer.getInt() : 0;
+        int[] ids = readInts(buffer, count);
+        long[] created = readLongs(buffer, ids.length);
+        long[] read = readLongs(buffer, ids.length);
+        int[][] columns = new int[4][];
+        for (int column = 0; column < 4; column++) {
+            columns[column] = readInts(buffer, ids.length);
+        }
+        ArrayList<MemoryTable.Row> rows = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            rows.add(new MemoryTable.Row(model(type, ids[i], strings, columns, i), type, created[i], read[i]));
+        }
+        return new MemoryTable.Image(rows, readLinks(buffer), lastId);
+    }
+
+    private static List<int[]> readLinks(ByteBuffer buffer) {
+        int[] linkCourses = readInts(buffer, buffer.getInt());
+        int[] linkIds = readInts(buffer, linkCourses.length);
+        ArrayList<int[]> links = new ArrayList<>(linkIds.length);
+        for (int i = 0; i < linkIds.length; i++) {
+            links.add(new int[] {linkCourses[i], linkIds[i]});
+        }
+        return links;
+    }
+
+    private static Model model(String type, int id, String[] strings, int[][] columns, int row) {
+        String title = string(strings, columns[0][row]);
+        String comment = string(strings, columns[1][row]);
+        String third = string(strings, columns[2][row]);
+        String fourth = string(strings, columns[3][row]);
+        if (type.equals("book")) {
+            return new BookModel(id, title, comment, third, fourth);
+        }
+        return new VideoModel(id, title, comment, third, fourth);
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int count) {
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + 8 * count);
+        return values;
+    }
+
+    /**
+     * Numbers the distinct strings in the order they are first seen.
+     */
+    private static class StringTable {
+
+        private final HashMap<String, Integer> refs = new HashMap<>();
+        private final ArrayList<byte[]> encoded = new ArrayList<>();
+
+        <T> int[] refs(List<T> items, Function<T, String> field) {
+            int[] column = new int[items.size()];
+            for (int i = 0; i < column.length; i++) {
+                column[i] = ref(field.apply(items.get(i)));
+            }
+            return column;
+        }
+
+        private int ref(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = encoded.size();
+                refs.put(value, ref);
+                encoded.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            return ref;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                out.writeInt(bytes.length);
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package kapistelykirjasto.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recently used prepared statements of one connection open so that the
+ * DAOs do not re-parse the same SQL on every call. The cache is installed by wrapping
+ * the connection: prepareStatement returns a cached statement and closing it only
+ * resets the statement and gives it back to the cache.
+ *
+ * A connection is only ever used by one thread at a time (see ConnectionProvider), so
+ * the cache itself is not synchronized.
+ */
+public class StatementCache implements InvocationHandler {
+
+    public static final int DEFAULT_SIZE = 64;
+
+    private final Connection connection;
+    private final int maxSize;
+    private final Statistics statistics;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    private StatementCache(Connection connection, int maxSize, Statistics statistics) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a connection that caches at most maxSize statements, or the connection
+     * itself if maxSize is zero.
+     */
+    public static Connection wrap(Connection connection, int maxSize, Statistics statistics) {
+        if (maxSize <= 0) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new StatementCache(connection, maxSize, statistics));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("prepareStatement") && isCacheable(args)) {
+            int keys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+            return prepare((String) args[0], keys);
+        }
+        if (method.getName().equals("close")) {
+            closeAll();
+        }
+        return delegate(connection, method, args);
+    }
+
+    private static boolean isCacheable(Object[] args) {
+        return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+    }
+
+    private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            statistics.hits.incrementAndGet();
+            return cached.borrow();
+        }
+        statistics.misses.incrementAndGet();
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // the same SQL is already executing further up the stack, so it cannot be shared
+            return statement;
+        }
+        cached = new CachedStatement(statement);
+        statements.put(key, cached);
+        evictOverflow();
+        return cached.borrow();
+    }
+
+    private void evictOverflow() throws SQLException {
+        Iterator<CachedStatement> eldestFirst = statements.values().iterator();
+        while (statements.size() > maxSize && eldestFirst.hasNext()) {
+            CachedStatement eldest = eldestFirst.next();
+            if (!eldest.inUse) {
+                eldestFirst.remove();
+                eldest.statement.close();
+                statistics.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            try {
+                cached.statement.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        statements.clear();
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A cached statement and the proxy handed to callers. Closing the proxy closes the
+     * result sets it produced, which resets the SQLite statement and releases its locks.
+     */
+    private static class CachedStatement implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private final ArrayList<ResultSet> openResults = new ArrayList<>();
+        private boolean inUse = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this);
+        }
+
+        PreparedStatement borrow() {
+            inUse = true;
+            return proxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("close")) {
+                release();
+                return null;
+            } else if (method.getName().equals("isClosed")) {
+                return !inUse || statement.isClosed();
+            }
+            Object result = delegate(statement, method, args);
+            if (result instanceof ResultSet) {
+                openResults.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            for (ResultSet rs : openResults) {
+                rs.close();
+            }
+            openResults.clear();
+            if (!statement.isClosed()) {
+                statement.clearParameters();
+                statement.clearBatch();
+            }
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counts shared by all caches of one ConnectionProvider.
+     */
+    public static class Statistics {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        public double getHitRate() {
+            long total = getHits() + getMisses();
+            return total == 0 ? 0 : getHits() / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d osumaa, %d ohitusta (%.1f %%), %d poistettu",
+                    getHits(), getMisses(), getHitRate() * 100, getEvictions());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package kapistelykirjasto.dao;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one SQL statement run by the DAOs, from execution
+ * until its last row has been read. When no recording has the event enabled, begin and
+ * commit do nothing and the JIT removes the event object altogether, so a statement pays
+ * nothing for being recorded.
+ */
+@Name("kapistelykirjasto.Statement")
+@Label("SQL-lause")
+@Category({"Käpistelykirjasto", "Tietokanta"})
+@Description("Yksi DAO-luokan suorittama SQL-lause")
+@StackTrace(false)
+class StatementEvent extends Event {
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Lukuvinkin tyyppi")
+    String entryType;
+
+    @Label("Rivejä")
+    int rows;
+
+    static StatementEvent start(String sql) {
+        StatementEvent event = new StatementEvent();
+        event.sql = sql;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event with the number of rows read or changed and commits it if the
+     * recording wants it.
+     */
+    void finish(int rowCount) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rowCount;
+            this.entryType = entryType(sql);
+            commit();
+        }
+    }
+
+    /**
+     * Guesses the kind of entries the statement handles from the tables it names.
+     */
+    static String entryType(String sql) {
+        String lower = sql.toLowerCase();
+        boolean book = lower.contains("book");
+        boolean video = lower.contains("video");
+        if (book && video || lower.contains("entry_search")) {
+            return "entry";
+        } else if (book) {
+            return "book";
+        } else if (video) {
+            return "video";
+        }
+        return lower.contains("course") ? "course" : "";
+    }
+}
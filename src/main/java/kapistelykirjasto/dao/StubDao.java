@@ -1,17 +1,22 @@
 package kapistelykirjasto.dao;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 import kapistelykirjasto.dao.models.BookModel;
 import kapistelykirjasto.dao.models.CourseModel;
 import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
 import kapistelykirjasto.dao.models.VideoModel;
 import kapistelykirjasto.domain.*;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.PageToken;
 import kapistelykirjasto.util.Result;
 
-public class StubDao implements BookDao, VideoDao, CourseDao {
+public class StubDao implements BookDao, VideoDao, CourseDao, EntryDao {
 
     private ArrayList<Model> entries = new ArrayList<>();
     private ArrayList<BookModel> books = new ArrayList<>();
@@ -50,6 +55,48 @@ public class StubDao implements BookDao, VideoDao, CourseDao {
         return Result.value(id);
     }
 
+    @Override
+    public Result<String, Integer> createBook(String title, String comment, String author, String ISBN,
+            int[] courseIds) {
+        Result<String, Integer> res = createBook(title, comment, author, ISBN);
+        if (res.isValue()) {
+            for (int courseId : courseIds) {
+                addBookCourseRelation(courseId, res.getValue());
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration,
+            int[] courseIds) {
+        Result<String, Integer> res = createVideo(title, comment, url, duration);
+        if (res.isValue()) {
+            for (int courseId : courseIds) {
+                addVideoCourseRelation(courseId, res.getValue());
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+        ArrayList<Result<String, Integer>> results = new ArrayList<>();
+        for (BookModel book : books) {
+            results.add(createBook(book.getTitle(), book.getComment(), book.getAuthor(), book.getISBN()));
+        }
+        return results;
+    }
+
+    @Override
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+        ArrayList<Result<String, Integer>> results = new ArrayList<>();
+        for (VideoModel video : videos) {
+            results.add(createVideo(video.getTitle(), video.getComment(), video.getUrl(), video.getDuration()));
+        }
+        return results;
+    }
+
     @Override
     public void close() {
         this.closed = true;
@@ -65,6 +112,40 @@ public class StubDao implements BookDao, VideoDao, CourseDao {
         return this.videos;
     }
 
+    @Override
+    public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize) {
+        return page(this.books, "book", sort, token, pageSize);
+    }
+
+    @Override
+    public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize) {
+        return page(this.videos, "video", sort, token, pageSize);
+    }
+
+    @Override
+    public Stream<BookModel> streamBooks(int fetchSize) {
+        return this.books.stream();
+    }
+
+    @Override
+    public Stream<VideoModel> streamVideos(int fetchSize) {
+        return this.videos.stream();
+    }
+
+    private static <T extends Model> Page<T> page(List<T> models, String type, Page.Sort sort, String token,
+            int pageSize) {
+        Util.checkPageSize(pageSize);
+        PageToken after = token == null ? null : PageToken.decode(token, sort);
+        ArrayList<T> rows = new ArrayList<>();
+        for (T model : models) {
+            if (after == null || PageToken.of(sort, type, model.getId(), model.getTitle()).compareTo(after) > 0) {
+                rows.add(model);
+            }
+        }
+        rows.sort(Comparator.comparing(model -> PageToken.of(sort, type, model.getId(), model.getTitle())));
+        return Util.toPage(rows, type, sort, pageSize);
+    }
+
     private boolean existsBook(int id) {
         for (int i = 0; i < books.size(); i++) {
             if (books.get(i).getId() == id) {
@@ -176,11 +257,17 @@ public class StubDao implements BookDao, VideoDao, CourseDao {
 
     @Override
     public boolean createCourse(String courseCode, String name) {
+        return insertCourse(courseCode, name).isValue();
+    }
+
+    @Override
+    public Result<String, Integer> insertCourse(String courseCode, String name) {
         if (closed) {
-            return false;
+            return Result.error("Tietokanta on jo suljettu");
         }
-        courses.add(new CourseModel(courses.size(), courseCode, name));
-        return true;
+        int id = courses.size();
+        courses.add(new CourseModel(id, courseCode, name));
+        return Result.value(id);
     }
 
     @Override
@@ -242,4 +329,50 @@ public class StubDao implements BookDao, VideoDao, CourseDao {
     public List<CourseModel> getCourses() {
         return this.courses;
     }
+
+    @Override
+    public ArrayList<Model> getEntries(Order order) {
+        return entries(this.books, this.videos, order);
+    }
+
+    @Override
+    public ArrayList<Model> getReadEntries(Order order) {
+        return entries(this.readBooks, this.readVideos, order);
+    }
+
+    @Override
+    public ArrayList<Model> getNotReadEntries(Order order) {
+        return entries(this.notReadBooks, this.notReadVideos, order);
+    }
+
+    @Override
+    public ArrayList<Model> getCourseEntries(int courseId, Order order) {
+        return entries(this.bookCourseRelation.getOrDefault(courseId, new ArrayList<>()),
+                this.videoCourseRelation.getOrDefault(courseId, new ArrayList<>()), order);
+    }
+
+    /**
+     * The stub keeps no timestamps, so only the title order is applied; otherwise books
+     * come before videos in the order they were added.
+     */
+    private static ArrayList<Model> entries(List<BookModel> books, List<VideoModel> videos, Order order) {
+        ArrayList<Model> entries = new ArrayList<>();
+        entries.addAll(books);
+        entries.addAll(videos);
+        if (order == Order.TITLE) {
+            entries.sort(Comparator.comparing(Model::getTitle));
+        }
+        return entries;
+    }
+
+    @Override
+    public ArrayList<SearchResultModel> search(String query, int limit) {
+        ArrayList<SearchResultModel> results = new ArrayList<>();
+        for (Model entry : entries(this.books, this.videos, Order.CREATED)) {
+            if (results.size() < limit && entry.getTitle().toLowerCase().contains(query.toLowerCase())) {
+                results.add(new SearchResultModel(entry, entry.getTitle()));
+            }
+        }
+        return results;
+    }
 }
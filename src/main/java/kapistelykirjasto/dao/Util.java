@@ -4,10 +4,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.sqlite.SQLiteErrorCode;
+
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.PageToken;
 import kapistelykirjasto.util.Result;
 
 public class Util {
+
+	/**
+	 * The current time in milliseconds as an SQL expression, in the same unit as the read
+	 * timestamps written by the DAOs.
+	 */
+	public static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+	public static final String COURSE_LINK_FAILED = "kurssin liittäminen kirjaan epäonnistui";
 	
 	public static PreparedStatement setObjects(PreparedStatement stmt, Object... objects) throws SQLException {
 		for (int i = 0; i < objects.length; i++) {
@@ -26,4 +42,191 @@ public class Util {
         
         return Result.value(rs.getInt(1));
 	}
+
+	public static <T> ArrayList<T> query(Connection connection, String sql, RowMapper<T> mapper, Object... params)
+			throws SQLException {
+		PreparedStatement stmt = connection.prepareStatement(sql);
+		StatementEvent event = StatementEvent.start(sql);
+		try {
+			ResultSet rs = setObjects(stmt, params).executeQuery();
+			ArrayList<T> rows = new ArrayList<>();
+			while (rs.next()) {
+				rows.add(mapper.map(rs));
+			}
+			event.finish(rows.size());
+			return rows;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Reads one page of the given table (book or video) ordered by the sort column and id.
+	 * Instead of an OFFSET the query continues from the row described by the token, so
+	 * every page costs the same no matter how deep into the listing it is. One extra row
+	 * is fetched to find out whether there is a next page.
+	 */
+	public static <T extends Model> Page<T> queryPage(Connection connection, String table, Page.Sort sort,
+			String token, int pageSize, RowMapper<T> mapper) throws SQLException {
+		checkPageSize(pageSize);
+		String column = sort == Page.Sort.ID ? "id" : "title";
+		ArrayList<T> rows;
+		if (token == null) {
+			rows = query(connection, "SELECT * FROM " + table + " ORDER BY " + column + ", id LIMIT ?;",
+					mapper, pageSize + 1);
+		} else {
+			PageToken after = PageToken.decode(token, sort);
+			rows = query(connection, "SELECT * FROM " + table + " WHERE (" + column + ", id) > (?, ?) ORDER BY "
+					+ column + ", id LIMIT ?;", mapper, after.getKey(), after.getIdBound(table), pageSize + 1);
+		}
+		return toPage(rows, table, sort, pageSize);
+	}
+
+	static void checkPageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("sivun koon täytyy olla positiivinen: " + pageSize);
+		}
+	}
+
+	/**
+	 * Cuts the rows to pageSize and, if a row was cut, points the next token to the last
+	 * row that is kept.
+	 */
+	static <T extends Model> Page<T> toPage(ArrayList<T> rows, String type, Page.Sort sort, int pageSize) {
+		if (rows.size() <= pageSize) {
+			return new Page<>(rows, null);
+		}
+		rows.subList(pageSize, rows.size()).clear();
+		T last = rows.get(pageSize - 1);
+		return new Page<>(rows, PageToken.of(sort, type, last.getId(), last.getTitle()).encode());
+	}
+
+	public static boolean exists(Connection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement stmt = connection.prepareStatement(sql);
+		StatementEvent event = StatementEvent.start(sql);
+		try {
+			// If there is an element available in the result set, next() returns true.
+			boolean found = setObjects(stmt, params).executeQuery().next();
+			event.finish(found ? 1 : 0);
+			return found;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	public static int update(Connection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement stmt = connection.prepareStatement(sql);
+		StatementEvent event = StatementEvent.start(sql);
+		try {
+			int count = setObjects(stmt, params).executeUpdate();
+			event.finish(count);
+			return count;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	public static Result<String, Integer> insert(Connection connection, String sql, Object... params)
+			throws SQLException {
+		PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+		StatementEvent event = StatementEvent.start(sql);
+		try {
+			event.finish(setObjects(stmt, params).executeUpdate());
+			return getGeneratedKeyFromStatement(stmt);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Inserts all rows with one prepared statement. SQLite undoes only the statement that
+	 * breaks a constraint, so a failing row is reported alone and the other rows stay in
+	 * the caller's transaction. A duplicate title is reported as such, other constraint
+	 * failures as a database error starting with the given text. The id of each row comes
+	 * from last_insert_rowid() of its own insert.
+	 */
+	public static ArrayList<Result<String, Integer>> insertBatch(Connection connection, String insertSql,
+			String error, List<Object[]> rows) throws SQLException {
+		ArrayList<Result<String, Integer>> results = new ArrayList<>();
+		PreparedStatement stmt = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS);
+		StatementEvent event = StatementEvent.start(insertSql);
+		try {
+			for (Object[] row : rows) {
+				results.add(insertRow(stmt, error, row));
+			}
+			event.finish(rows.size());
+		} finally {
+			stmt.close();
+		}
+		return results;
+	}
+
+	private static Result<String, Integer> insertRow(PreparedStatement stmt, String error, Object[] row)
+			throws SQLException {
+		try {
+			setObjects(stmt, row).executeUpdate();
+		} catch (SQLException e) {
+			if (e.getErrorCode() != SQLiteErrorCode.SQLITE_CONSTRAINT.code) {
+				throw e;
+			}
+			return Result.error(isConstraintFailure(e, "UNIQUE") ? "otsikko on jo käytössä: " + row[0]
+					: error + e.getErrorCode());
+		}
+		return getGeneratedKeyFromStatement(stmt);
+	}
+
+	/**
+	 * Tells if the exception is a failure of the given kind of constraint (UNIQUE, FOREIGN
+	 * KEY...). The driver gives only the primary result code, so the kind is read from the
+	 * message.
+	 */
+	public static boolean isConstraintFailure(SQLException e, String kind) {
+		return e.getErrorCode() == SQLiteErrorCode.SQLITE_CONSTRAINT.code
+				&& String.valueOf(e.getMessage()).contains(kind + " constraint failed");
+	}
+
+	/**
+	 * Links one entry to all given courses with a single multi-row insert into the given
+	 * relation table (courseBook or courseVideo). Links that already exist are skipped,
+	 * unknown course ids fail the insert with a FOREIGN KEY constraint failure.
+	 */
+	public static void insertCourseRelations(Connection connection, String table, String entryColumn, int entryId,
+			int[] courseIds) throws SQLException {
+		if (courseIds.length == 0) {
+			return;
+		}
+		StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO " + table + "(courseId, " + entryColumn + ") VALUES ");
+		Object[] params = new Object[courseIds.length * 2];
+		for (int i = 0; i < courseIds.length; i++) {
+			sql.append(i == 0 ? "(?,?)" : ",(?,?)");
+			params[2 * i] = courseIds[i];
+			params[2 * i + 1] = entryId;
+		}
+		update(connection, sql.toString(), params);
+	}
+
+	public static ArrayList<Result<String, Integer>> errors(int count, String error) {
+		ArrayList<Result<String, Integer>> results = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			results.add(Result.error(error));
+		}
+		return results;
+	}
+
+	public static void execute(Connection connection, String... sqlStatements) throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			for (String sql : sqlStatements) {
+				StatementEvent event = StatementEvent.start(sql);
+				event.finish(stmt.executeUpdate(sql));
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@FunctionalInterface
+	public interface RowMapper<T> {
+		T map(ResultSet rs) throws SQLException;
+	}
 }
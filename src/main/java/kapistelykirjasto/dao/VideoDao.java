@@ -1,16 +1,42 @@
 package kapistelykirjasto.dao;
 
 import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
 import kapistelykirjasto.util.Result;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface VideoDao {
 
     public ArrayList<VideoModel> getVideos();
 
+    /**
+     * Returns at most pageSize videos ordered by the given sort key and id, starting after
+     * the position encoded in token, or from the beginning if token is null.
+     */
+    public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize);
+
+    /**
+     * Returns all videos as a lazy stream that reads fetchSize rows from the database at a
+     * time. The stream keeps a connection open until it is fully consumed or closed.
+     */
+    public Stream<VideoModel> streamVideos(int fetchSize);
+
     public Result<String, Integer> createVideo(String title, String comment, String url, String duration);
 
+    /**
+     * Creates the video and links it to the given courses in one transaction. Nothing is
+     * written if any of the inserts fails.
+     */
+    public Result<String, Integer> createVideo(String title, String comment, String url, String duration, int[] courseIds);
+
+    /**
+     * Creates all videos in one transaction, see {@link BookDao#createBooks(List)}.
+     */
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos);
+
     public boolean deleteVideo(int id);
 
     public boolean editVideo(int id, String title, String comment, String url, String duration);
@@ -0,0 +1,216 @@
+package kapistelykirjasto.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the writes of a ConnectionProvider on one dedicated thread with group commit. The
+ * thread takes every request waiting in the bounded queue, up to maxBatch of them, and
+ * runs them in a single transaction, so concurrent writers share one commit (and one
+ * fsync) instead of queueing for the writer connection one commit at a time.
+ *
+ * Each request runs inside its own savepoint. A request that throws is rolled back to
+ * its savepoint and only its own future fails; the rest of the batch is committed. The
+ * futures are completed only after the commit, so a caller that sees its result knows
+ * the write is in the database.
+ */
+public class WriteQueue {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private static final Request<Void> STOP = new Request<>(null);
+
+    private final ConnectionProvider connections;
+    private final BlockingQueue<Request<?>> queue;
+    private final int maxBatch;
+    private final long offerTimeoutMillis;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    WriteQueue(ConnectionProvider connections, int capacity, int maxBatch, long offerTimeoutMillis) {
+        this.connections = connections;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writer = new Thread(this::writeAll, "write-queue");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the work and returns a future for its result, waiting for room in the queue
+     * if it is full.
+     */
+    public <T> CompletableFuture<T> submit(ConnectionProvider.Work<T> work) throws SQLException {
+        Request<T> request = new Request<>(work);
+        try {
+            if (closed || !queue.offer(request, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException(closed ? "database connection closed" : "kirjoitusjonon odotus aikakatkaistiin");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("kirjoitusjonon odotus keskeytettiin", e);
+        }
+        if (closed && queue.remove(request)) {
+            // close() has already drained the queue and would never see this request
+            throw new SQLException("database connection closed");
+        }
+        return request.future;
+    }
+
+    /**
+     * Queues the work and waits for its result.
+     */
+    public <T> T run(ConnectionProvider.Work<T> work) throws SQLException {
+        CompletableFuture<T> future = submit(work);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("kirjoituksen odotus keskeytettiin", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static SQLException rethrow(Throwable cause) {
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new SQLException(cause);
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * The average number of requests that shared one commit.
+     */
+    public double getAverageBatchSize() {
+        long count = getCommitCount();
+        return count == 0 ? 0 : getRequestCount() / (double) count;
+    }
+
+    /**
+     * Writes the requests already in the queue, stops the writer thread and fails the
+     * requests that were queued after that.
+     */
+    void close() {
+        closed = true;
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ArrayList<Request<?>> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Request<?> request : rest) {
+            request.future.completeExceptionally(new SQLException("database connection closed"));
+        }
+    }
+
+    private void writeAll() {
+        ArrayList<Request<?>> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                boolean stop = batch.remove(STOP);
+                commit(batch);
+                batch.clear();
+                if (stop) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(ArrayList<Request<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            runInTransaction(batch);
+        } catch (SQLException | RuntimeException e) {
+            for (Request<?> request : batch) {
+                request.failure = e;
+            }
+        }
+        requests.addAndGet(batch.size());
+        commits.incrementAndGet();
+        for (Request<?> request : batch) {
+            request.complete();
+        }
+    }
+
+    private void runInTransaction(ArrayList<Request<?>> batch) throws SQLException {
+        Connection connection = connections.acquireWriter();
+        try {
+            ConnectionProvider.runInTransaction(connection, c -> runAll(c, batch));
+        } finally {
+            connections.releaseWriter();
+        }
+    }
+
+    private static Void runAll(Connection connection, ArrayList<Request<?>> batch) throws SQLException {
+        for (Request<?> request : batch) {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                request.run(connection);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback(savepoint);
+                request.failure = e;
+            }
+            connection.releaseSavepoint(savepoint);
+        }
+        return null;
+    }
+
+    private static class Request<T> {
+
+        private final ConnectionProvider.Work<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception failure;
+
+        Request(ConnectionProvider.Work<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection connection) throws SQLException {
+            result = work.run(connection);
+        }
+
+        void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
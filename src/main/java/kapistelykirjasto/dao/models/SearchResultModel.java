@@ -0,0 +1,20 @@
+package kapistelykirjasto.dao.models;
+
+public class SearchResultModel {
+
+    private Model entry;
+    private String snippet;
+
+    public SearchResultModel(Model entry, String snippet) {
+        this.entry = entry;
+        this.snippet = snippet;
+    }
+
+    public Model getEntry() {
+        return entry;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+}
@@ -2,11 +2,15 @@ package kapistelykirjasto.domain;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
+import kapistelykirjasto.dao.EntryDao;
 import kapistelykirjasto.dao.models.BookModel;
 import kapistelykirjasto.dao.models.CourseModel;
 import kapistelykirjasto.dao.models.Model;
 import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Flow;
+import kapistelykirjasto.util.Page;
 import kapistelykirjasto.util.Result;
 
 public interface Application {
@@ -15,16 +19,45 @@ public interface Application {
     
     public Result<String, Integer> createBook(String title, String comment, String author, String ISBN, int[] courseIds);
 
+    public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books);
+
     public Result<String, Integer> createVideo(String title, String comment, String url, String duration);
     
     public Result<String, Integer> createVideo(String title, String comment, String url, String duration, int[] courseIds);
 
+    public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos);
+
+    /**
+     * Lists all entries in the order they were created. The order-taking variants of the
+     * listings sort by title, creation time or read time instead.
+     */
     public ArrayList<Entry> getEntries();
 
+    public ArrayList<Entry> getEntries(EntryDao.Order order);
+
     public ArrayList<Book> getBooks();
 
     public ArrayList<Video> getVideos();
 
+    /**
+     * Returns one page of books and videos ordered by the sort key, then by type and id.
+     * Pass the token of the previous page to continue, or null to start from the
+     * beginning.
+     */
+    public Page<Entry> getEntries(Page.Sort sort, String token, int pageSize);
+
+    public Page<Book> getBooks(Page.Sort sort, String token, int pageSize);
+
+    public Page<Video> getVideos(Page.Sort sort, String token, int pageSize);
+
+    /**
+     * Returns all books and then all videos as a lazy stream, so that exports and full
+     * scans do not build the whole list in memory. The stream must be closed.
+     */
+    public Stream<Entry> streamEntries();
+
+    public Stream<Entry> streamEntries(int fetchSize);
+
     public boolean deleteEntry(Entry e);
 
     public boolean deleteBook(int id);
@@ -45,11 +78,44 @@ public interface Application {
 
     public ArrayList<Entry> getNotReadEntries();
 
+    public ArrayList<Entry> getNotReadEntries(EntryDao.Order order);
+
     public ArrayList<Entry> getReadEntries();
 
+    public ArrayList<Entry> getReadEntries(EntryDao.Order order);
+
     public boolean createCourse(String courseCode, String name);
 
 	public List<Course> getCourses();
 
     public ArrayList<Entry> getCourseEntries(int courseId);
+
+    public ArrayList<Entry> getCourseEntries(int courseId, EntryDao.Order order);
+
+    /**
+     * Searches titles, authors and comments and returns at most limit entries, best
+     * matches first.
+     */
+    public ArrayList<SearchResult> search(String query, int limit);
+
+    /**
+     * A number that changes whenever a change made through this application is in the
+     * database, so that a listing read after checking the version is at least as new as
+     * the version. Changes made by other processes are not counted.
+     */
+    public long getVersion();
+
+    /**
+     * Like getVersion, but changes only with the changes that can affect the entries of
+     * the given course.
+     */
+    public long getCourseVersion(int courseId);
+
+    /**
+     * Publishes every successful change made through this application from the moment of
+     * subscribing, so that a copy of the library can be kept up to date without reading
+     * it again. A subscriber that falls too far behind is dropped with onError and has to
+     * read the library again before it subscribes anew.
+     */
+    public Flow.Publisher<LibraryChange> getChanges();
 }
@@ -0,0 +1,32 @@
+package kapistelykirjasto.domain;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one call of an Application method. Emitted by
+ * RecordedApplication.
+ */
+@Name("kapistelykirjasto.Application")
+@Label("Sovelluslogiikan kutsu")
+@Category({"Käpistelykirjasto", "Sovelluslogiikka"})
+@Description("Yksi Application-rajapinnan metodikutsu")
+@StackTrace(false)
+class ApplicationEvent extends Event {
+
+	@Label("Metodi")
+	String method;
+
+	@Label("Lukuvinkin tyyppi")
+	String entryType;
+
+	@Label("Rivejä")
+	int rows;
+
+	@Label("Virhe")
+	boolean error;
+}
@@ -2,21 +2,77 @@ package kapistelykirjasto.domain;
 
 import kapistelykirjasto.dao.*;
 import kapistelykirjasto.dao.models.*;
+import kapistelykirjasto.util.BroadcastPublisher;
+import kapistelykirjasto.util.Flow;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.PageToken;
 import kapistelykirjasto.util.Result;
+import kapistelykirjasto.util.Threads;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class ApplicationLogic implements Application {
 
 	private BookDao bookDao;
 	private VideoDao videoDao;
 	private CourseDao courseDao;
+	private EntryDao entryDao;
+	private ExecutorService executor;
 
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicLong entryChanges = new AtomicLong();
+	private final ConcurrentHashMap<Integer, AtomicLong> courseVersions = new ConcurrentHashMap<>();
+	private final BroadcastPublisher<LibraryChange> changes;
+	private final Object[] stripes = new Object[STRIPES];
+
+	private static final String BOOK_FIELDS_MISSING = "otsikko, kirjailija ja ISBN täytyy syöttää";
+	private static final String VIDEO_FIELDS_MISSING = "otiskko ja url täytyy syöttää";
+	private static final int DEFAULT_FETCH_SIZE = 256;
+	private static final int CHANGE_BUFFER_SIZE = 1024;
+	private static final int STRIPES = 64;
+
+	/**
+	 * Creates an application that lists the entries with separate book and video queries.
+	 */
 	public ApplicationLogic(BookDao bookDao, VideoDao videoDao, CourseDao courseDao) {
+		this(bookDao, videoDao, courseDao, new SeparateEntryDao(bookDao, videoDao));
+	}
+
+	/**
+	 * Creates an application that delivers the changes to subscribers on the thread
+	 * that made the change.
+	 */
+	public ApplicationLogic(BookDao bookDao, VideoDao videoDao, CourseDao courseDao, EntryDao entryDao) {
+		this(bookDao, videoDao, courseDao, entryDao, null);
+	}
+
+	/**
+	 * Creates an application that runs the independent book and video queries of one call
+	 * concurrently on the given executor, each on its own read connection, and delivers the
+	 * changes to subscribers there too. The executor is not shut down by the application.
+	 */
+	public ApplicationLogic(BookDao bookDao, VideoDao videoDao, CourseDao courseDao, EntryDao entryDao,
+			ExecutorService executor) {
 		this.bookDao = bookDao;
 		this.videoDao = videoDao;
 		this.courseDao = courseDao;
+		this.entryDao = entryDao;
+		this.executor = executor;
+		this.changes = new BroadcastPublisher<>(CHANGE_BUFFER_SIZE, executor);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+		}
 	}
 
 	@Override
@@ -26,20 +82,11 @@ public class ApplicationLogic implements Application {
 	
 	@Override
 	public Result<String, Integer> createBook(String title, String comment, String author, String ISBN, int[] courseIds) {
-		if (title.length() == 0 || author.length() == 0 || ISBN.length() == 0) {
-			return Result.error("otsikko, kirjailija ja ISBN täytyy syöttää");
+		if (!isValidBook(title, author, ISBN)) {
+			return Result.error(BOOK_FIELDS_MISSING);
 		}
-		Result<String, Integer> res = this.bookDao.createBook(title, comment, author, ISBN);
-		
-		if (res.isValue()) {
-			for (int courseId : courseIds) {
-				if (!this.courseDao.addBookCourseRelation(courseId, res.getValue())) {
-					return Result.error("kurssin liittäminen kirjaan epäonnistui");
-				}
-			}
-		}
-		
-		return res;
+		IntFunction<Entry> book = id -> new Book(new BookModel(id, title, comment, author, ISBN));
+		return created(this.bookDao.createBook(title, comment, author, ISBN, courseIds), courseIds, book);
 	}
 	
 	@Override
@@ -49,31 +96,151 @@ public class ApplicationLogic implements Application {
 
 	@Override
 	public Result<String, Integer> createVideo(String title, String comment, String url, String duration, int[] courseIds) {
-		if (title.length() == 0 || url.length() == 0) {
-			return Result.error("otiskko ja url täytyy syöttää");
+		if (!isValidVideo(title, url)) {
+			return Result.error(VIDEO_FIELDS_MISSING);
 		}
-		Result<String, Integer> res = this.videoDao.createVideo(title, comment, url, duration);
-		
-		if (res.isValue()) {
+		IntFunction<Entry> video = id -> new Video(new VideoModel(id, title, comment, url, duration));
+		return created(this.videoDao.createVideo(title, comment, url, duration, courseIds), courseIds, video);
+	}
+
+	/**
+	 * Bumps the versions after a successful create, the library version and the versions
+	 * of the courses the new entry was linked to, and publishes the new entry.
+	 */
+	private Result<String, Integer> created(Result<String, Integer> result, int[] courseIds,
+			IntFunction<Entry> entry) {
+		if (result.isValue()) {
 			for (int courseId : courseIds) {
-				if (!this.courseDao.addVideoCourseRelation(courseId, res.getValue())) {
-					return Result.error("kurssin liittäminen kirjaan epäonnistui");
-				}
+				courseVersions.computeIfAbsent(courseId, id -> new AtomicLong()).incrementAndGet();
+			}
+			version.incrementAndGet();
+			changes.publish(sequence -> LibraryChange.created(sequence, entry.apply(result.getValue()), courseIds));
+		}
+		return result;
+	}
+
+	/**
+	 * Bumps the versions after a successful edit, delete or mark as read and publishes the
+	 * change. The changed entry may be on any course, so every course version changes too.
+	 * The caller holds the stripe of the entry, so that the changes of one entry are
+	 * published in the order they were made.
+	 */
+	private boolean changed(boolean succeeded, LongFunction<LibraryChange> change) {
+		if (succeeded) {
+			entryChanges.incrementAndGet();
+			version.incrementAndGet();
+			changes.publish(change);
+		}
+		return succeeded;
+	}
+
+	private Object stripe(int id) {
+		return stripes[id & (STRIPES - 1)];
+	}
+
+	@Override
+	public Flow.Publisher<LibraryChange> getChanges() {
+		return changes;
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public long getCourseVersion(int courseId) {
+		AtomicLong created = courseVersions.get(courseId);
+		return entryChanges.get() + (created == null ? 0 : created.get());
+	}
+
+	private static boolean isValidBook(String title, String author, String ISBN) {
+		return title.length() > 0 && author.length() > 0 && ISBN.length() > 0;
+	}
+
+	private static boolean isValidVideo(String title, String url) {
+		return title.length() > 0 && url.length() > 0;
+	}
+
+	@Override
+	public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+		BiFunction<BookModel, Integer, Entry> toEntry = (book, id) -> new Book(new BookModel(id, book.getTitle(),
+				book.getComment(), book.getAuthor(), book.getISBN()));
+		return createAll(books, book -> isValidBook(book.getTitle(), book.getAuthor(), book.getISBN()),
+				BOOK_FIELDS_MISSING, this.bookDao::createBooks, toEntry);
+	}
+
+	@Override
+	public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+		BiFunction<VideoModel, Integer, Entry> toEntry = (video, id) -> new Video(new VideoModel(id,
+				video.getTitle(), video.getComment(), video.getUrl(), video.getDuration()));
+		return createAll(videos, video -> isValidVideo(video.getTitle(), video.getUrl()),
+				VIDEO_FIELDS_MISSING, this.videoDao::createVideos, toEntry);
+	}
+
+	/**
+	 * Passes the valid models to the DAO in one batch and returns one result per given
+	 * model, in order, with the invalid ones reported as errors.
+	 */
+	private <T> ArrayList<Result<String, Integer>> createAll(List<T> models, Predicate<T> isValid,
+			String invalidError, Function<List<T>, ArrayList<Result<String, Integer>>> create,
+			BiFunction<T, Integer, Entry> toEntry) {
+		ArrayList<T> valid = new ArrayList<>();
+		for (T model : models) {
+			if (isValid.test(model)) {
+				valid.add(model);
+			}
+		}
+		List<Result<String, Integer>> created = create.apply(valid);
+		ArrayList<Result<String, Integer>> results = new ArrayList<>();
+		int next = 0;
+		for (T model : models) {
+			results.add(isValid.test(model) ? created.get(next++) : Result.error(invalidError));
+		}
+		if (created.stream().anyMatch(Result::isValue)) {
+			version.incrementAndGet();
+		}
+		publishCreated(models, results, toEntry);
+		return results;
+	}
+
+	private <T> void publishCreated(List<T> models, List<Result<String, Integer>> results,
+			BiFunction<T, Integer, Entry> toEntry) {
+		for (int i = 0; i < models.size(); i++) {
+			T model = models.get(i);
+			Result<String, Integer> result = results.get(i);
+			if (result.isValue()) {
+				changes.publish(sequence -> LibraryChange.created(sequence, toEntry.apply(model, result.getValue()),
+						new int[0]));
 			}
 		}
-		
-		return res;
 	}
 
 	@Override
 	public ArrayList<Entry> getEntries() {
-		ArrayList<Entry> entries = new ArrayList<>();
-		entries.addAll(this.getBooks());
-		entries.addAll(this.getVideos());
+		return getEntries(EntryDao.Order.CREATED);
+	}
+
+	@Override
+	public ArrayList<Entry> getEntries(EntryDao.Order order) {
+		return toEntries(this.entryDao.getEntries(order));
+	}
 
+	private static ArrayList<Entry> toEntries(List<Model> models) {
+		ArrayList<Entry> entries = new ArrayList<>();
+		for (Model model : models) {
+			entries.add(toEntry(model));
+		}
 		return entries;
 	}
 
+	private static Entry toEntry(Model model) {
+		if (model instanceof BookModel) {
+			return new Book((BookModel) model);
+		}
+		return new Video((VideoModel) model);
+	}
+
 	@Override
 	public ArrayList<Book> getBooks() {
 		ArrayList<Book> books = new ArrayList<>();
@@ -94,6 +261,57 @@ public class ApplicationLogic implements Application {
 		return videos;
 	}
 
+	@Override
+	public Page<Book> getBooks(Page.Sort sort, String token, int pageSize) {
+		return this.bookDao.getBooks(sort, token, pageSize).map(Book::new);
+	}
+
+	@Override
+	public Page<Video> getVideos(Page.Sort sort, String token, int pageSize) {
+		return this.videoDao.getVideos(sort, token, pageSize).map(Video::new);
+	}
+
+	/**
+	 * Reads a page of both books and videos after the token and merges them. The token
+	 * holds the type of the last entry, so each DAO knows whether the entry with the same
+	 * sort key in the other table was already listed.
+	 */
+	@Override
+	public Page<Entry> getEntries(Page.Sort sort, String token, int pageSize) {
+		CompletableFuture<Page<Book>> futureBooks = Threads.fork(() -> getBooks(sort, token, pageSize), executor);
+		Page<Video> videos = getVideos(sort, token, pageSize);
+		Page<Book> books = Threads.join(futureBooks);
+		ArrayList<Entry> merged = new ArrayList<>();
+		merged.addAll(books.getItems());
+		merged.addAll(videos.getItems());
+		merged.sort((a, b) -> toPageToken(sort, a).compareTo(toPageToken(sort, b)));
+		if (merged.size() <= pageSize && !books.hasNext() && !videos.hasNext()) {
+			return new Page<>(merged, null);
+		}
+		ArrayList<Entry> entries = new ArrayList<>(merged.subList(0, Math.min(pageSize, merged.size())));
+		return new Page<>(entries, toPageToken(sort, entries.get(entries.size() - 1)).encode());
+	}
+
+	private static PageToken toPageToken(Page.Sort sort, Entry entry) {
+		return PageToken.of(sort, entry.getType().name().toLowerCase(), entry.getId(), entry.getTitle());
+	}
+
+	@Override
+	public Stream<Entry> streamEntries() {
+		return streamEntries(DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * The video cursor is opened only after the books have been read, so at most one
+	 * database cursor is open at a time.
+	 */
+	@Override
+	public Stream<Entry> streamEntries(int fetchSize) {
+		Stream<Entry> books = this.bookDao.streamBooks(fetchSize).map(Book::new);
+		Stream<Entry> videos = this.videoDao.streamVideos(fetchSize).map(Video::new);
+		return Stream.concat(books, videos);
+	}
+
 	@Override
 	public boolean deleteEntry(Entry e) {
 
@@ -111,44 +329,58 @@ public class ApplicationLogic implements Application {
 
 	@Override
 	public boolean deleteBook(int id) {
-		if (!this.bookDao.deleteBook(id)) {
-			return false;
+		synchronized (stripe(id)) {
+			return changed(this.bookDao.deleteBook(id),
+					sequence -> LibraryChange.deleted(sequence, Entry.Type.BOOK, id));
 		}
-		return true;
 	}
 
 	@Override
 	public boolean deleteVideo(int id) {
-		if (!this.videoDao.deleteVideo(id)) {
-			return false;
+		synchronized (stripe(id)) {
+			return changed(this.videoDao.deleteVideo(id),
+					sequence -> LibraryChange.deleted(sequence, Entry.Type.VIDEO, id));
 		}
-		return true;
 	}
 
 	@Override
 	public boolean editBook(int id, String title, String comment, String author, String ISBN) {
-		if (title.length() == 0 || !this.bookDao.editBook(id, title, comment, author, ISBN)) {
+		if (title.length() == 0) {
 			return false;
 		}
-		return true;
+		LongFunction<LibraryChange> change = sequence -> LibraryChange.edited(sequence,
+				new Book(new BookModel(id, title, comment, author, ISBN)));
+		synchronized (stripe(id)) {
+			return changed(this.bookDao.editBook(id, title, comment, author, ISBN), change);
+		}
 	}
 
 	@Override
 	public boolean editVideo(int id, String title, String comment, String url, String duration) {
-		if (title.length() == 0 || !this.videoDao.editVideo(id, title, comment, url, duration)) {
+		if (title.length() == 0) {
 			return false;
 		}
-		return true;
+		LongFunction<LibraryChange> change = sequence -> LibraryChange.edited(sequence,
+				new Video(new VideoModel(id, title, comment, url, duration)));
+		synchronized (stripe(id)) {
+			return changed(this.videoDao.editVideo(id, title, comment, url, duration), change);
+		}
 	}
 
 	@Override
 	public boolean markBookAsRead(int id) {
-		return this.bookDao.markBookAsRead(id);
+		synchronized (stripe(id)) {
+			return changed(this.bookDao.markBookAsRead(id),
+					sequence -> LibraryChange.markedRead(sequence, Entry.Type.BOOK, id));
+		}
 	}
 
 	@Override
 	public boolean markVideoAsRead(int id) {
-		return this.videoDao.markVideoAsRead(id);
+		synchronized (stripe(id)) {
+			return changed(this.videoDao.markVideoAsRead(id),
+					sequence -> LibraryChange.markedRead(sequence, Entry.Type.VIDEO, id));
+		}
 	}
 
 	@Override
@@ -171,28 +403,22 @@ public class ApplicationLogic implements Application {
 
 	@Override
 	public ArrayList<Entry> getNotReadEntries() {
-		ArrayList<Entry> notReadEntries = new ArrayList<>();
+		return getNotReadEntries(EntryDao.Order.CREATED);
+	}
 
-		for (BookModel model : this.bookDao.getNotReadBooks()) {
-			notReadEntries.add(new Book(model));
-		}
-		for (VideoModel model : this.videoDao.getNotReadVideos()) {
-			notReadEntries.add(new Video(model));
-		}
-		return notReadEntries;
+	@Override
+	public ArrayList<Entry> getNotReadEntries(EntryDao.Order order) {
+		return toEntries(this.entryDao.getNotReadEntries(order));
 	}
 
 	@Override
 	public ArrayList<Entry> getReadEntries() {
-		ArrayList<Entry> readEntries = new ArrayList<>();
+		return getReadEntries(EntryDao.Order.CREATED);
+	}
 
-		for (BookModel model : this.bookDao.getReadBooks()) {
-			readEntries.add(new Book(model));
-		}
-		for (VideoModel model : this.videoDao.getReadVideos()) {
-			readEntries.add(new Video(model));
-		}
-		return readEntries;
+	@Override
+	public ArrayList<Entry> getReadEntries(EntryDao.Order order) {
+		return toEntries(this.entryDao.getReadEntries(order));
 	}
 
 	@Override
@@ -209,18 +435,32 @@ public class ApplicationLogic implements Application {
 		if (courseCode.length() == 0 || name.length() == 0) {
 			return false;
 		}
-		return this.courseDao.createCourse(courseCode, name);
+		Result<String, Integer> created = this.courseDao.insertCourse(courseCode, name);
+		if (created.isError()) {
+			return false;
+		}
+		version.incrementAndGet();
+		CourseModel course = new CourseModel(created.getValue(), courseCode, name);
+		changes.publish(sequence -> LibraryChange.courseCreated(sequence, new Course(course)));
+		return true;
 	}
 
+	@Override
 	public ArrayList<Entry> getCourseEntries(int courseId) {
-		ArrayList<Entry> courseEntries = new ArrayList<>();
+		return getCourseEntries(courseId, EntryDao.Order.CREATED);
+	}
 
-		for (BookModel model : this.bookDao.getCourseBooks(courseId)) {
-			courseEntries.add(new Book(model));
-		}
-		for (VideoModel model : this.videoDao.getCourseVideos(courseId)) {
-			courseEntries.add(new Video(model));
+	@Override
+	public ArrayList<Entry> getCourseEntries(int courseId, EntryDao.Order order) {
+		return toEntries(this.entryDao.getCourseEntries(courseId, order));
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String query, int limit) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		for (SearchResultModel model : this.entryDao.search(query, limit)) {
+			results.add(new SearchResult(toEntry(model.getEntry()), model.getSnippet()));
 		}
-		return courseEntries;
+		return results;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+package kapistelykirjasto.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * The methods of Application returning futures, so that a caller can start many library
+ * operations and combine their results without blocking a thread on each one. A future
+ * completes exceptionally if the method throws.
+ */
+public interface AsyncApplication {
+
+    public CompletableFuture<Result<String, Integer>> createBook(String title, String comment, String author,
+            String ISBN);
+
+    public CompletableFuture<Result<String, Integer>> createBook(String title, String comment, String author,
+            String ISBN, int[] courseIds);
+
+    public CompletableFuture<ArrayList<Result<String, Integer>>> createBooks(List<BookModel> books);
+
+    public CompletableFuture<Result<String, Integer>> createVideo(String title, String comment, String url,
+            String duration);
+
+    public CompletableFuture<Result<String, Integer>> createVideo(String title, String comment, String url,
+            String duration, int[] courseIds);
+
+    public CompletableFuture<ArrayList<Result<String, Integer>>> createVideos(List<VideoModel> videos);
+
+    public CompletableFuture<ArrayList<Entry>> getEntries();
+
+    public CompletableFuture<ArrayList<Entry>> getEntries(EntryDao.Order order);
+
+    public CompletableFuture<ArrayList<Book>> getBooks();
+
+    public CompletableFuture<ArrayList<Video>> getVideos();
+
+    public CompletableFuture<Page<Entry>> getEntries(Page.Sort sort, String token, int pageSize);
+
+    public CompletableFuture<Page<Book>> getBooks(Page.Sort sort, String token, int pageSize);
+
+    public CompletableFuture<Page<Video>> getVideos(Page.Sort sort, String token, int pageSize);
+
+    /**
+     * The stream is still read lazily by whoever consumes it, and must be closed.
+     */
+    public CompletableFuture<Stream<Entry>> streamEntries();
+
+    public CompletableFuture<Stream<Entry>> streamEntries(int fetchSize);
+
+    public CompletableFuture<Boolean> deleteEntry(Entry e);
+
+    public CompletableFuture<Boolean> deleteBook(int id);
+
+    public CompletableFuture<Boolean> deleteVideo(int id);
+
+    public CompletableFuture<Boolean> editBook(int id, String title, String comment, String author, String ISBN);
+
+    public CompletableFuture<Boolean> editVideo(int id, String title, String comment, String url, String duration);
+
+    public CompletableFuture<Boolean> markBookAsRead(int id);
+
+    public CompletableFuture<Boolean> markVideoAsRead(int id);
+
+    public CompletableFuture<ArrayList<Book>> getReadBooks();
+
+    public CompletableFuture<ArrayList<Video>> getReadVideos();
+
+    public CompletableFuture<ArrayList<Entry>> getNotReadEntries();
+
+    public CompletableFuture<ArrayList<Entry>> getNotReadEntries(EntryDao.Order order);
+
+    public CompletableFuture<ArrayList<Entry>> getReadEntries();
+
+    public CompletableFuture<ArrayList<Entry>> getReadEntries(EntryDao.Order order);
+
+    public CompletableFuture<Boolean> createCourse(String courseCode, String name);
+
+    public CompletableFuture<List<Course>> getCourses();
+
+    public CompletableFuture<ArrayList<Entry>> getCourseEntries(int courseId);
+
+    public CompletableFuture<ArrayList<Entry>> getCourseEntries(int courseId, EntryDao.Order order);
+
+    public CompletableFuture<ArrayList<SearchResult>> search(String query, int limit);
+}
@@ -0,0 +1,211 @@
+package kapistelykirjasto.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import kapistelykirjasto.util.Threads;
+
+/**
+ * Runs the calls of an Application on an executor. The default executor starts a virtual
+ * thread per call where the JDK has them, so a call that waits for the database does not
+ * hold a platform thread; on older JDKs it is a pool as large as the default reader pool.
+ * Writes still go through the writer connection one transaction at a time, or through the
+ * write queue when the ConnectionProvider has one.
+ */
+public class AsyncApplicationLogic implements AsyncApplication {
+
+	private final Application app;
+	private final Executor executor;
+
+	public AsyncApplicationLogic(Application app, Executor executor) {
+		this.app = app;
+		this.executor = executor;
+	}
+
+	public AsyncApplicationLogic(Application app) {
+		this(app, Threads.newExecutor(ConnectionProvider.DEFAULT_MAX_READERS));
+	}
+
+	private <T> CompletableFuture<T> async(Supplier<T> call) {
+		return CompletableFuture.supplyAsync(call, executor);
+	}
+
+	@Override
+	public CompletableFuture<Result<String, Integer>> createBook(String title, String comment, String author,
+			String ISBN) {
+		return async(() -> app.createBook(title, comment, author, ISBN));
+	}
+
+	@Override
+	public CompletableFuture<Result<String, Integer>> createBook(String title, String comment, String author,
+			String ISBN, int[] courseIds) {
+		return async(() -> app.createBook(title, comment, author, ISBN, courseIds));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Result<String, Integer>>> createBooks(List<BookModel> books) {
+		return async(() -> app.createBooks(books));
+	}
+
+	@Override
+	public CompletableFuture<Result<String, Integer>> createVideo(String title, String comment, String url,
+			String duration) {
+		return async(() -> app.createVideo(title, comment, url, duration));
+	}
+
+	@Override
+	public CompletableFuture<Result<String, Integer>> createVideo(String title, String comment, String url,
+			String duration, int[] courseIds) {
+		return async(() -> app.createVideo(title, comment, url, duration, courseIds));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Result<String, Integer>>> createVideos(List<VideoModel> videos) {
+		return async(() -> app.createVideos(videos));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getEntries() {
+		return async(() -> app.getEntries());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getEntries(EntryDao.Order order) {
+		return async(() -> app.getEntries(order));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Book>> getBooks() {
+		return async(() -> app.getBooks());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Video>> getVideos() {
+		return async(() -> app.getVideos());
+	}
+
+	@Override
+	public CompletableFuture<Page<Entry>> getEntries(Page.Sort sort, String token, int pageSize) {
+		return async(() -> app.getEntries(sort, token, pageSize));
+	}
+
+	@Override
+	public CompletableFuture<Page<Book>> getBooks(Page.Sort sort, String token, int pageSize) {
+		return async(() -> app.getBooks(sort, token, pageSize));
+	}
+
+	@Override
+	public CompletableFuture<Page<Video>> getVideos(Page.Sort sort, String token, int pageSize) {
+		return async(() -> app.getVideos(sort, token, pageSize));
+	}
+
+	@Override
+	public CompletableFuture<Stream<Entry>> streamEntries() {
+		return async(() -> app.streamEntries());
+	}
+
+	@Override
+	public CompletableFuture<Stream<Entry>> streamEntries(int fetchSize) {
+		return async(() -> app.streamEntries(fetchSize));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteEntry(Entry e) {
+		return async(() -> app.deleteEntry(e));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteBook(int id) {
+		return async(() -> app.deleteBook(id));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteVideo(int id) {
+		return async(() -> app.deleteVideo(id));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> editBook(int id, String title, String comment, String author, String ISBN) {
+		return async(() -> app.editBook(id, title, comment, author, ISBN));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> editVideo(int id, String title, String comment, String url, String duration) {
+		return async(() -> app.editVideo(id, title, comment, url, duration));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> markBookAsRead(int id) {
+		return async(() -> app.markBookAsRead(id));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> markVideoAsRead(int id) {
+		return async(() -> app.markVideoAsRead(id));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Book>> getReadBooks() {
+		return async(() -> app.getReadBooks());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Video>> getReadVideos() {
+		return async(() -> app.getReadVideos());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getNotReadEntries() {
+		return async(() -> app.getNotReadEntries());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getNotReadEntries(EntryDao.Order order) {
+		return async(() -> app.getNotReadEntries(order));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getReadEntries() {
+		return async(() -> app.getReadEntries());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getReadEntries(EntryDao.Order order) {
+		return async(() -> app.getReadEntries(order));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> createCourse(String courseCode, String name) {
+		return async(() -> app.createCourse(courseCode, name));
+	}
+
+	@Override
+	public CompletableFuture<List<Course>> getCourses() {
+		return async(() -> app.getCourses());
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getCourseEntries(int courseId) {
+		return async(() -> app.getCourseEntries(courseId));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<Entry>> getCourseEntries(int courseId, EntryDao.Order order) {
+		return async(() -> app.getCourseEntries(courseId, order));
+	}
+
+	@Override
+	public CompletableFuture<ArrayList<SearchResult>> search(String query, int limit) {
+		return async(() -> app.search(query, limit));
+	}
+}
@@ -0,0 +1,446 @@
+package kapistelykirjasto.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Flow;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Keeps the entry listings of another Application in memory. Every listing (all, read,
+ * unread and course entries in each order, and the book and video lists) is cached as a
+ * view, and every cached entry is indexed by its type and id to the views that contain
+ * it, so a write drops only the views it can change: an edit, delete or mark as read
+ * drops the views containing that entry, and a create drops the views a new entry
+ * belongs to.
+ *
+ * Views are evicted least recently used first when they hold more than maxSize entries
+ * together. Pages, streams and search results are not cached. Changes made to the
+ * database by anyone else than this application are not seen until the affected views
+ * are invalidated.
+ *
+ * The versions are counted here and not taken from the other Application, because its
+ * versions change before the views are dropped: a reader seeing the new version in
+ * between could still get the old view. Here a version changes only after the views of
+ * the change are gone.
+ */
+public class CachingApplication implements Application {
+
+	public static final int DEFAULT_MAX_SIZE = 100000;
+
+	private static final String ENTRIES = "entries:";
+	private static final String READ = "read:";
+	private static final String NOT_READ = "notRead:";
+	private static final String COURSE = "course:";
+	private static final String BOOKS = "books";
+	private static final String VIDEOS = "videos";
+	private static final String READ_BOOKS = "readBooks";
+	private static final String READ_VIDEOS = "readVideos";
+
+	private final Application app;
+	private final int maxSize;
+	private final Statistics statistics = new Statistics();
+
+	private final LinkedHashMap<String, ArrayList<? extends Entry>> views = new LinkedHashMap<>(16, 0.75f, true);
+	private final HashMap<Long, HashSet<String>> viewsByEntry = new HashMap<>();
+	private List<Course> courses;
+	private int size = 0;
+	private long generation = 0;
+	private long version = 0;
+	private long entryChanges = 0;
+	private final HashMap<Integer, Long> courseVersions = new HashMap<>();
+
+	public CachingApplication(Application app, int maxSize) {
+		this.app = app;
+		this.maxSize = maxSize;
+	}
+
+	public CachingApplication(Application app) {
+		this(app, DEFAULT_MAX_SIZE);
+	}
+
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public ArrayList<Entry> getEntries() {
+		return getEntries(EntryDao.Order.CREATED);
+	}
+
+	@Override
+	public ArrayList<Entry> getEntries(EntryDao.Order order) {
+		return cached(ENTRIES + order, () -> app.getEntries(order));
+	}
+
+	@Override
+	public ArrayList<Entry> getNotReadEntries() {
+		return getNotReadEntries(EntryDao.Order.CREATED);
+	}
+
+	@Override
+	public ArrayList<Entry> getNotReadEntries(EntryDao.Order order) {
+		return cached(NOT_READ + order, () -> app.getNotReadEntries(order));
+	}
+
+	@Override
+	public ArrayList<Entry> getReadEntries() {
+		return getReadEntries(EntryDao.Order.CREATED);
+	}
+
+	@Override
+	public ArrayList<Entry> getReadEntries(EntryDao.Order order) {
+		return cached(READ + order, () -> app.getReadEntries(order));
+	}
+
+	@Override
+	public ArrayList<Entry> getCourseEntries(int courseId) {
+		return getCourseEntries(courseId, EntryDao.Order.CREATED);
+	}
+
+	@Override
+	public ArrayList<Entry> getCourseEntries(int courseId, EntryDao.Order order) {
+		return cached(COURSE + courseId + ":" + order, () -> app.getCourseEntries(courseId, order));
+	}
+
+	@Override
+	public ArrayList<Book> getBooks() {
+		return cached(BOOKS, app::getBooks);
+	}
+
+	@Override
+	public ArrayList<Video> getVideos() {
+		return cached(VIDEOS, app::getVideos);
+	}
+
+	@Override
+	public ArrayList<Book> getReadBooks() {
+		return cached(READ_BOOKS, app::getReadBooks);
+	}
+
+	@Override
+	public ArrayList<Video> getReadVideos() {
+		return cached(READ_VIDEOS, app::getReadVideos);
+	}
+
+	@Override
+	public List<Course> getCourses() {
+		long loadGeneration;
+		synchronized (this) {
+			if (courses != null) {
+				statistics.hits.incrementAndGet();
+				return new ArrayList<>(courses);
+			}
+			loadGeneration = generation;
+		}
+		statistics.misses.incrementAndGet();
+		List<Course> loaded = app.getCourses();
+		synchronized (this) {
+			if (loadGeneration == generation) {
+				courses = new ArrayList<>(loaded);
+			}
+		}
+		return loaded;
+	}
+
+	@Override
+	public Result<String, Integer> createBook(String title, String comment, String author, String ISBN) {
+		return createBook(title, comment, author, ISBN, new int[0]);
+	}
+
+	@Override
+	public Result<String, Integer> createBook(String title, String comment, String author, String ISBN,
+			int[] courseIds) {
+		Result<String, Integer> res = app.createBook(title, comment, author, ISBN, courseIds);
+		if (res.isValue()) {
+			entryCreated(BOOKS, courseIds);
+		}
+		return res;
+	}
+
+	@Override
+	public ArrayList<Result<String, Integer>> createBooks(List<BookModel> books) {
+		ArrayList<Result<String, Integer>> results = app.createBooks(books);
+		if (results.stream().anyMatch(Result::isValue)) {
+			entryCreated(BOOKS, new int[0]);
+		}
+		return results;
+	}
+
+	@Override
+	public Result<String, Integer> createVideo(String title, String comment, String url, String duration) {
+		return createVideo(title, comment, url, duration, new int[0]);
+	}
+
+	@Override
+	public Result<String, Integer> createVideo(String title, String comment, String url, String duration,
+			int[] courseIds) {
+		Result<String, Integer> res = app.createVideo(title, comment, url, duration, courseIds);
+		if (res.isValue()) {
+			entryCreated(VIDEOS, courseIds);
+		}
+		return res;
+	}
+
+	@Override
+	public ArrayList<Result<String, Integer>> createVideos(List<VideoModel> videos) {
+		ArrayList<Result<String, Integer>> results = app.createVideos(videos);
+		if (results.stream().anyMatch(Result::isValue)) {
+			entryCreated(VIDEOS, new int[0]);
+		}
+		return results;
+	}
+
+	@Override
+	public boolean deleteEntry(Entry e) {
+		if (e.getType() == Entry.Type.BOOK) {
+			return deleteBook(e.getId());
+		}
+		return deleteVideo(e.getId());
+	}
+
+	@Override
+	public boolean deleteBook(int id) {
+		return entryChanged(app.deleteBook(id), key(Entry.Type.BOOK, id));
+	}
+
+	@Override
+	public boolean deleteVideo(int id) {
+		return entryChanged(app.deleteVideo(id), key(Entry.Type.VIDEO, id));
+	}
+
+	@Override
+	public boolean editBook(int id, String title, String comment, String author, String ISBN) {
+		return entryChanged(app.editBook(id, title, comment, author, ISBN), key(Entry.Type.BOOK, id));
+	}
+
+	@Override
+	public boolean editVideo(int id, String title, String comment, String url, String duration) {
+		return entryChanged(app.editVideo(id, title, comment, url, duration), key(Entry.Type.VIDEO, id));
+	}
+
+	@Override
+	public boolean markBookAsRead(int id) {
+		return entryChanged(app.markBookAsRead(id), key(Entry.Type.BOOK, id), READ, READ_BOOKS);
+	}
+
+	@Override
+	public boolean markVideoAsRead(int id) {
+		return entryChanged(app.markVideoAsRead(id), key(Entry.Type.VIDEO, id), READ, READ_VIDEOS);
+	}
+
+	@Override
+	public boolean createCourse(String courseCode, String name) {
+		boolean created = app.createCourse(courseCode, name);
+		if (created) {
+			synchronized (this) {
+				generation++;
+				courses = null;
+				version++;
+			}
+		}
+		return created;
+	}
+
+	@Override
+	public Page<Entry> getEntries(Page.Sort sort, String token, int pageSize) {
+		return app.getEntries(sort, token, pageSize);
+	}
+
+	@Override
+	public Page<Book> getBooks(Page.Sort sort, String token, int pageSize) {
+		return app.getBooks(sort, token, pageSize);
+	}
+
+	@Override
+	public Page<Video> getVideos(Page.Sort sort, String token, int pageSize) {
+		return app.getVideos(sort, token, pageSize);
+	}
+
+	@Override
+	public Stream<Entry> streamEntries() {
+		return app.streamEntries();
+	}
+
+	@Override
+	public Stream<Entry> streamEntries(int fetchSize) {
+		return app.streamEntries(fetchSize);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String query, int limit) {
+		return app.search(query, limit);
+	}
+
+	/**
+	 * Returns a copy of the cached view, loading it on a miss. A view loaded while a write
+	 * invalidated the cache may already be stale, so it is returned but not stored.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Entry> ArrayList<T> cached(String view, Supplier<ArrayList<T>> load) {
+		long loadGeneration;
+		synchronized (this) {
+			ArrayList<T> entries = (ArrayList<T>) views.get(view);
+			if (entries != null) {
+				statistics.hits.incrementAndGet();
+				return new ArrayList<>(entries);
+			}
+			loadGeneration = generation;
+		}
+		statistics.misses.incrementAndGet();
+		ArrayList<T> loaded = load.get();
+		synchronized (this) {
+			if (loadGeneration == generation && loaded.size() <= maxSize) {
+				store(view, new ArrayList<>(loaded));
+			}
+		}
+		return loaded;
+	}
+
+	private void store(String view, ArrayList<? extends Entry> entries) {
+		views.put(view, entries);
+		for (Entry entry : entries) {
+			viewsByEntry.computeIfAbsent(key(entry.getType(), entry.getId()), k -> new HashSet<>()).add(view);
+		}
+		size += entries.size();
+		Iterator<Map.Entry<String, ArrayList<? extends Entry>>> eldestFirst = views.entrySet().iterator();
+		while (size > maxSize) {
+			Map.Entry<String, ArrayList<? extends Entry>> eldest = eldestFirst.next();
+			eldestFirst.remove();
+			forget(eldest.getKey(), eldest.getValue());
+			statistics.evictions.incrementAndGet();
+		}
+	}
+
+	private synchronized void entryCreated(String typeView, int[] courseIds) {
+		invalidateWhere(view -> view.startsWith(ENTRIES) || view.startsWith(NOT_READ) || view.equals(typeView));
+		for (int courseId : courseIds) {
+			invalidateWhere(view -> view.startsWith(COURSE + courseId + ":"));
+			courseVersions.merge(courseId, 1L, Long::sum);
+		}
+		version++;
+	}
+
+	/**
+	 * Drops the views that contain the changed entry and the views that start with one of
+	 * the given prefixes.
+	 */
+	private synchronized boolean entryChanged(boolean changed, long entry, String... prefixes) {
+		if (!changed) {
+			return false;
+		}
+		HashSet<String> containing = viewsByEntry.getOrDefault(entry, new HashSet<>());
+		invalidateWhere(view -> containing.contains(view) || startsWithAny(view, prefixes));
+		entryChanges++;
+		version++;
+		return true;
+	}
+
+	private static boolean startsWithAny(String view, String[] prefixes) {
+		for (String prefix : prefixes) {
+			if (view.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void invalidateWhere(Predicate<String> matches) {
+		generation++;
+		Iterator<Map.Entry<String, ArrayList<? extends Entry>>> it = views.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, ArrayList<? extends Entry>> view = it.next();
+			if (matches.test(view.getKey())) {
+				it.remove();
+				forget(view.getKey(), view.getValue());
+				statistics.invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	private void forget(String view, ArrayList<? extends Entry> entries) {
+		size -= entries.size();
+		for (Entry entry : entries) {
+			long key = key(entry.getType(), entry.getId());
+			HashSet<String> containing = viewsByEntry.get(key);
+			containing.remove(view);
+			if (containing.isEmpty()) {
+				viewsByEntry.remove(key);
+			}
+		}
+	}
+
+	private static long key(Entry.Type type, int id) {
+		return 2L * id + (type == Entry.Type.BOOK ? 0 : 1);
+	}
+
+	/**
+	 * Counted like in ApplicationLogic, but each version is bumped after the views of the
+	 * change have been dropped.
+	 */
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	@Override
+	public synchronized long getCourseVersion(int courseId) {
+		return entryChanges + courseVersions.getOrDefault(courseId, 0L);
+	}
+
+	@Override
+	public Flow.Publisher<LibraryChange> getChanges() {
+		return app.getChanges();
+	}
+
+	/**
+	 * Hit, miss, eviction and invalidation counts of one cache.
+	 */
+	public static class Statistics {
+
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+		private final AtomicLong invalidations = new AtomicLong();
+
+		public long getHits() {
+			return hits.get();
+		}
+
+		public long getMisses() {
+			return misses.get();
+		}
+
+		public long getEvictions() {
+			return evictions.get();
+		}
+
+		public long getInvalidations() {
+			return invalidations.get();
+		}
+
+		public double getHitRate() {
+			long total = getHits() + getMisses();
+			return total == 0 ? 0 : getHits() / (double) total;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d osumaa, %d ohitusta (%.1f %%), %d poistettu, %d mitätöity",
+					getHits(), getMisses(), getHitRate() * 100, getEvictions(), getInvalidations());
+		}
+	}
+}
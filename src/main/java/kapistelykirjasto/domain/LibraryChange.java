@@ -0,0 +1,108 @@
+package kapistelykirjasto.domain;
+
+/**
+ * One successful change of the library, as published by Application.getChanges. The
+ * sequence numbers of the changes a subscriber receives follow each other without gaps
+ * unless it has missed changes. Changes of one entry are published in the order they
+ * were made.
+ */
+public class LibraryChange {
+
+	public enum Type {
+		/**
+		 * An entry was created, with links to getCourseIds.
+		 */
+		CREATED,
+		/**
+		 * An entry was edited; getEntry has its new fields.
+		 */
+		EDITED,
+		DELETED,
+		MARKED_READ,
+		COURSE_CREATED
+	}
+
+	private final long sequence;
+	private final Type type;
+	private final Entry.Type entryType;
+	private final int id;
+	private final Entry entry;
+	private final Course course;
+	private final int[] courseIds;
+
+	private LibraryChange(long sequence, Type type, Entry.Type entryType, int id, Entry entry, Course course,
+			int[] courseIds) {
+		this.sequence = sequence;
+		this.type = type;
+		this.entryType = entryType;
+		this.id = id;
+		this.entry = entry;
+		this.course = course;
+		this.courseIds = courseIds;
+	}
+
+	static LibraryChange created(long sequence, Entry entry, int[] courseIds) {
+		return new LibraryChange(sequence, Type.CREATED, entry.getType(), entry.getId(), entry, null, courseIds.clone());
+	}
+
+	static LibraryChange edited(long sequence, Entry entry) {
+		return new LibraryChange(sequence, Type.EDITED, entry.getType(), entry.getId(), entry, null, new int[0]);
+	}
+
+	static LibraryChange deleted(long sequence, Entry.Type entryType, int id) {
+		return new LibraryChange(sequence, Type.DELETED, entryType, id, null, null, new int[0]);
+	}
+
+	static LibraryChange markedRead(long sequence, Entry.Type entryType, int id) {
+		return new LibraryChange(sequence, Type.MARKED_READ, entryType, id, null, null, new int[0]);
+	}
+
+	static LibraryChange courseCreated(long sequence, Course course) {
+		return new LibraryChange(sequence, Type.COURSE_CREATED, null, course.getId(), null, course, new int[0]);
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * BOOK or VIDEO, or null for a course.
+	 */
+	public Entry.Type getEntryType() {
+		return entryType;
+	}
+
+	/**
+	 * The id of the entry, or of the course for COURSE_CREATED.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * The entry as it is after a CREATED or EDITED change, otherwise null.
+	 */
+	public Entry getEntry() {
+		return entry;
+	}
+
+	/**
+	 * The new course of a COURSE_CREATED change, otherwise null.
+	 */
+	public Course getCourse() {
+		return course;
+	}
+
+	public int[] getCourseIds() {
+		return courseIds.clone();
+	}
+
+	@Override
+	public String toString() {
+		return sequence + " " + type + " " + (entryType == null ? "COURSE" : entryType) + " " + id;
+	}
+}
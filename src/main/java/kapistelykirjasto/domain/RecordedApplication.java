@@ -0,0 +1,84 @@
+package kapistelykirjasto.domain;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Emits an ApplicationEvent for every call of another Application, with the method name,
+ * the kind of entries it handles, the number of rows it returned and its duration. The
+ * events cost nothing unless a flight recording has them enabled.
+ */
+public class RecordedApplication implements InvocationHandler {
+
+	private final Application app;
+
+	private RecordedApplication(Application app) {
+		this.app = app;
+	}
+
+	public static Application wrap(Application app) {
+		return (Application) Proxy.newProxyInstance(RecordedApplication.class.getClassLoader(),
+				new Class<?>[] {Application.class}, new RecordedApplication(app));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return method.invoke(app, args);
+		}
+		ApplicationEvent event = new ApplicationEvent();
+		event.begin();
+		try {
+			Object result = method.invoke(app, args);
+			commit(event, method, result, false);
+			return result;
+		} catch (InvocationTargetException e) {
+			commit(event, method, null, true);
+			throw e.getCause();
+		}
+	}
+
+	private static void commit(ApplicationEvent event, Method method, Object result, boolean error) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.method = method.getName();
+			event.entryType = entryType(method.getName());
+			event.rows = rows(result);
+			event.error = error || result instanceof Result && ((Result<?, ?>) result).isError();
+			event.commit();
+		}
+	}
+
+	static String entryType(String methodName) {
+		if (methodName.contains("Book")) {
+			return "book";
+		} else if (methodName.contains("Video")) {
+			return "video";
+		} else if (methodName.contains("Course") && !methodName.contains("Entries")) {
+			return "course";
+		}
+		return "entry";
+	}
+
+	/**
+	 * The number of entries in a returned list or page, 1 for a single created entry or a
+	 * successful change and 0 otherwise. A stream counts as 0, since its rows are only
+	 * read later.
+	 */
+	static int rows(Object result) {
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		} else if (result instanceof Page) {
+			return ((Page<?>) result).getItems().size();
+		} else if (result instanceof Result) {
+			return ((Result<?, ?>) result).isValue() ? 1 : 0;
+		}
+		return Boolean.TRUE.equals(result) ? 1 : 0;
+	}
+}
@@ -0,0 +1,29 @@
+package kapistelykirjasto.domain;
+
+public class SearchResult {
+
+	private Entry entry;
+	private String snippet;
+
+	public SearchResult(Entry entry, String snippet) {
+		this.entry = entry;
+		this.snippet = snippet;
+	}
+
+	public Entry getEntry() {
+		return entry;
+	}
+
+	/**
+	 * The best matching part of the title, author or comment with the matched words in
+	 * square brackets.
+	 */
+	public String getSnippet() {
+		return snippet;
+	}
+
+	@Override
+	public String toString() {
+		return entry.toString() + "\n\tosuma: " + snippet;
+	}
+}
@@ -0,0 +1,38 @@
+package kapistelykirjasto.ui.cli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one action chosen from the main menu, from the choice
+ * until the action returns. The time includes waiting for the user to type.
+ */
+@Name("kapistelykirjasto.Action")
+@Label("Käyttöliittymän toiminto")
+@Category({"Käpistelykirjasto", "Käyttöliittymä"})
+@Description("Yksi päävalikosta valittu toiminto")
+@StackTrace(false)
+class ActionEvent extends Event {
+
+    @Label("Valinta")
+    String key;
+
+    @Label("Toiminto")
+    String action;
+
+    static void run(String key, Action action) {
+        ActionEvent event = new ActionEvent();
+        event.begin();
+        action.run();
+        event.end();
+        if (event.shouldCommit()) {
+            event.key = key;
+            event.action = action.getClass().isSynthetic() ? "CLI" : action.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+}
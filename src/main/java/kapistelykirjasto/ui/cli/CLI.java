@@ -4,6 +4,8 @@ import kapistelykirjasto.domain.Application;
 import kapistelykirjasto.domain.Entry;
 import kapistelykirjasto.ui.IO;
 import kapistelykirjasto.ui.UserInterface;
+import kapistelykirjasto.util.FlightRecording;
+import kapistelykirjasto.util.MetricsRegistry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,6 +18,15 @@ public class CLI implements UserInterface {
     private HashMap<String, Action> topLevelActions;
 
     public CLI(Application app, IO io) {
+        this(app, io, null, null);
+    }
+
+    /**
+     * The figures of the given registry are printed by the hidden action "M", and the
+     * hidden action "J" starts and stops the given flight recording. Neither is listed in
+     * the menu.
+     */
+    public CLI(Application app, IO io, MetricsRegistry metrics, FlightRecording recording) {
         this.app = app;
         this.io = io;
 
@@ -26,6 +37,12 @@ public class CLI implements UserInterface {
         this.topLevelActions.put("3", new DeleteEntryAction(io, app));
         this.topLevelActions.put("4", new EditEntryAction(io, app));
         this.topLevelActions.put("5", new MarkAsReadAction(io, app));
+        if (metrics != null) {
+            this.topLevelActions.put("M", () -> io.print(metrics.dump()));
+        }
+        if (recording != null) {
+            this.topLevelActions.put("J", () -> io.print(recording.toggle()));
+        }
     }
 
     @Override
@@ -37,7 +54,7 @@ public class CLI implements UserInterface {
                 io.print("suljetaan");
                 break;
             } else if (this.topLevelActions.containsKey(action)) {
-                this.topLevelActions.get(action).run();
+                ActionEvent.run(action, this.topLevelActions.get(action));
             } else {
                 io.print("epäkelpo toiminto");
             }
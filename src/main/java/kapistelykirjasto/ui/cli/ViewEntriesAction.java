@@ -9,6 +9,8 @@ import kapistelykirjasto.domain.Entry;
 import kapistelykirjasto.ui.IO;
 
 public class ViewEntriesAction implements Action {
+
+	private static final int SEARCH_LIMIT = 20;
 	
 	private IO io;
 	private Application app;
@@ -29,7 +31,7 @@ public class ViewEntriesAction implements Action {
     private void filterList() {
         while (io.hasNextLine()) {
             String typeOfFilter = io.readLine(
-                    "\n Suodata listaa:\n[1]: luetut \n[2]: lukemattomat \n[3]: kurssi \n[X]: poistu");
+                    "\n Suodata listaa:\n[1]: luetut \n[2]: lukemattomat \n[3]: kurssi \n[4]: haku \n[X]: poistu");
             if (typeOfFilter.equals("1")) {
                 Util.printList(io, this.app.getReadEntries(), "ei luettuja lukuvinkkejä");
             } else if (typeOfFilter.equals("2")) {
@@ -37,6 +39,8 @@ public class ViewEntriesAction implements Action {
             } else if (typeOfFilter.equals("3")) {
                 int courseId = readCourse();
                 Util.printList(io, this.app.getCourseEntries(courseId), "ei lukuvinkkejä kurssilla");
+            } else if (typeOfFilter.equals("4")) {
+                search();
             } else if (typeOfFilter.equals("X")) {
                 break;
             } else {
@@ -45,6 +49,11 @@ public class ViewEntriesAction implements Action {
         }
     }
 
+    private void search() {
+        String query = io.readLine("Hakusanat: ");
+        Util.printList(io, this.app.search(query, SEARCH_LIMIT), "ei hakutuloksia");
+    }
+
     private int readCourse() {
         List<Course> courses = app.getCourses();
         Util.printEnumeratedList(io, courses, "Ei lisättyjä kursseja");
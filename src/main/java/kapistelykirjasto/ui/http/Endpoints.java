@@ -0,0 +1,262 @@
+package kapistelykirjasto.ui.http;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.domain.Application;
+import kapistelykirjasto.domain.Book;
+import kapistelykirjasto.domain.Course;
+import kapistelykirjasto.domain.Entry;
+import kapistelykirjasto.domain.SearchResult;
+import kapistelykirjasto.domain.Video;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * Maps the REST endpoints to the Application:
+ * <pre>
+ * GET    /entries?order=title|created|read&amp;read=true|false   all, read or unread entries
+ * GET    /entries?size=n&amp;sort=id|title&amp;token=t              one page of entries
+ * GET    /export                                             every entry, streamed from the database
+ * GET    /books, /videos (?read=true, ?size=n...)             books or videos
+ * POST   /books       title, author, isbn, comment, courses=1,2
+ * POST   /videos      title, url, duration, comment, courses=1,2
+ * PUT    /books/{id}, /videos/{id}                            edit, same parameters (409 if the title is taken)
+ * DELETE /books/{id}, /videos/{id}
+ * POST   /books/{id}/read, /videos/{id}/read                  mark as read
+ * GET    /courses,  POST /courses  code, name
+ * GET    /courses/{id}/entries?order=...
+ * GET    /search?q=words&amp;limit=n
+ * </pre>
+ */
+class Endpoints {
+
+    static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    private final Application app;
+
+    Endpoints(Application app) {
+        this.app = app;
+    }
+
+    Response handle(Request request) {
+        switch (request.segment(0)) {
+            case "entries":
+                return entries(request);
+            case "export":
+                return export(request);
+            case "books":
+                return request.getPathLength() == 1 ? bookCollection(request) : book(request);
+            case "videos":
+                return request.getPathLength() == 1 ? videoCollection(request) : video(request);
+            case "courses":
+                return courses(request);
+            case "search":
+                return search(request);
+            default:
+                throw HttpError.notFound();
+        }
+    }
+
+    private Response entries(Request request) {
+        get(request, 1);
+        if (request.param("size") != null) {
+            Page<Entry> page = app.getEntries(sort(request), request.param("token"), request.intParam("size", 0));
+            return Response.ok(json -> LibraryJson.page(json, page));
+        }
+        String read = request.param("read");
+        EntryDao.Order order = order(request);
+        Iterable<Entry> entries = read == null ? app.getEntries(order)
+                : Boolean.parseBoolean(read) ? app.getReadEntries(order) : app.getNotReadEntries(order);
+        return Response.ok(json -> LibraryJson.entries(json, entries));
+    }
+
+    private Response export(Request request) {
+        get(request, 1);
+        return Response.ok(this::writeAll);
+    }
+
+    private void writeAll(JsonWriter json) throws IOException {
+        Stream<Entry> entries = app.streamEntries();
+        try {
+            json.beginArray();
+            for (Iterator<Entry> i = entries.iterator(); i.hasNext();) {
+                LibraryJson.entry(json, i.next());
+            }
+            json.endArray();
+        } finally {
+            entries.close();
+        }
+    }
+
+    private Response bookCollection(Request request) {
+        if (request.getMethod().equals("POST")) {
+            Result<String, Integer> result = app.createBook(request.required("title"), request.param("comment", ""),
+                    request.param("author", ""), request.param("isbn", ""), request.ids("courses"));
+            return created(result);
+        }
+        get(request, 1);
+        if (request.param("size") != null) {
+            Page<Book> page = app.getBooks(sort(request), request.param("token"), request.intParam("size", 0));
+            return Response.ok(json -> LibraryJson.page(json, page));
+        }
+        boolean read = Boolean.parseBoolean(request.param("read"));
+        Iterable<? extends Entry> books = read ? app.getReadBooks() : app.getBooks();
+        return Response.ok(json -> LibraryJson.entries(json, books));
+    }
+
+    private Response book(Request request) {
+        int id = request.id(1);
+        if (request.getPathLength() == 3 && request.segment(2).equals("read")) {
+            post(request, 3);
+            return found(app.markBookAsRead(id));
+        }
+        switch (request.getMethod()) {
+            case "PUT":
+                String title = request.required("title");
+                boolean edited = app.editBook(id, title, request.param("comment", ""), request.param("author", ""),
+                        request.param("isbn", ""));
+                return edited(edited, id, title, app::getBooks);
+            case "DELETE":
+                return found(app.deleteBook(id));
+            default:
+                throw HttpError.methodNotAllowed();
+        }
+    }
+
+    private Response videoCollection(Request request) {
+        if (request.getMethod().equals("POST")) {
+            Result<String, Integer> result = app.createVideo(request.required("title"), request.param("comment", ""),
+                    request.param("url", ""), request.param("duration", ""), request.ids("courses"));
+            return created(result);
+        }
+        get(request, 1);
+        if (request.param("size") != null) {
+            Page<Video> page = app.getVideos(sort(request), request.param("token"), request.intParam("size", 0));
+            return Response.ok(json -> LibraryJson.page(json, page));
+        }
+        boolean read = Boolean.parseBoolean(request.param("read"));
+        Iterable<? extends Entry> videos = read ? app.getReadVideos() : app.getVideos();
+        return Response.ok(json -> LibraryJson.entries(json, videos));
+    }
+
+    private Response video(Request request) {
+        int id = request.id(1);
+        if (request.getPathLength() == 3 && request.segment(2).equals("read")) {
+            post(request, 3);
+            return found(app.markVideoAsRead(id));
+        }
+        switch (request.getMethod()) {
+            case "PUT":
+                String title = request.required("title");
+                boolean edited = app.editVideo(id, title, request.param("comment", ""), request.param("url", ""),
+                        request.param("duration", ""));
+                return edited(edited, id, title, app::getVideos);
+            case "DELETE":
+                return found(app.deleteVideo(id));
+            default:
+                throw HttpError.methodNotAllowed();
+        }
+    }
+
+    private Response courses(Request request) {
+        if (request.getPathLength() == 3 && request.segment(2).equals("entries")) {
+            get(request, 3);
+            Iterable<Entry> entries = app.getCourseEntries(request.id(1), order(request));
+            return Response.ok(json -> LibraryJson.entries(json, entries));
+        } else if (request.getPathLength() != 1) {
+            throw HttpError.notFound();
+        } else if (request.getMethod().equals("POST")) {
+            boolean created = app.createCourse(request.required("code"), request.required("name"));
+            return created ? Response.noContent() : Response.error(400, "kurssin lisääminen epäonnistui");
+        }
+        get(request, 1);
+        List<Course> courses = app.getCourses();
+        return Response.ok(json -> LibraryJson.courses(json, courses));
+    }
+
+    private Response search(Request request) {
+        get(request, 1);
+        Iterable<SearchResult> results = app.search(request.param("q", ""), request.intParam("limit",
+                DEFAULT_SEARCH_LIMIT));
+        return Response.ok(json -> LibraryJson.searchResults(json, results));
+    }
+
+    /**
+     * Fails the request unless it is a GET with a path of the given length.
+     */
+    private static void get(Request request, int pathLength) {
+        expect(request, "GET", pathLength);
+    }
+
+    private static void post(Request request, int pathLength) {
+        expect(request, "POST", pathLength);
+    }
+
+    private static void expect(Request request, String method, int pathLength) {
+        if (request.getPathLength() != pathLength) {
+            throw HttpError.notFound();
+        } else if (!request.getMethod().equals(method)) {
+            throw HttpError.methodNotAllowed();
+        }
+    }
+
+    /**
+     * 201 with the id, or 400 with the error of the Result (missing fields or a title
+     * that is already in use).
+     */
+    private static Response created(Result<String, Integer> result) {
+        return new Response(result.isValue() ? 201 : 400, json -> LibraryJson.created(json, result));
+    }
+
+    private static Response found(boolean found) {
+        if (!found) {
+            throw new HttpError(404, "lukuvinkkiä ei löydy");
+        }
+        return Response.noContent();
+    }
+
+    /**
+     * 204 for an edit that went through. A rejected edit is 404 if the entry does not
+     * exist, 409 if another entry of the same kind has the title and otherwise 400.
+     */
+    private static Response edited(boolean edited, int id, String title,
+            Supplier<List<? extends Entry>> entries) {
+        if (edited) {
+            return Response.noContent();
+        }
+        boolean exists = false;
+        boolean titleTaken = false;
+        for (Entry entry : entries.get()) {
+            exists |= entry.getId() == id;
+            titleTaken |= entry.getId() != id && entry.getTitle().equals(title);
+        }
+        if (!exists) {
+            throw new HttpError(404, "lukuvinkkiä ei löydy");
+        }
+        throw titleTaken ? new HttpError(409, "otsikko on jo käytössä: " + title)
+                : new HttpError(400, "lukuvinkin muokkaaminen epäonnistui");
+    }
+
+    private static Page.Sort sort(Request request) {
+        return enumParam(Page.Sort.class, request, "sort", Page.Sort.ID);
+    }
+
+    private static EntryDao.Order order(Request request) {
+        return enumParam(EntryDao.Order.class, request, "order", EntryDao.Order.CREATED);
+    }
+
+    private static <E extends Enum<E>> E enumParam(Class<E> type, Request request, String name, E defaultValue) {
+        String value = request.param(name);
+        try {
+            return value == null ? defaultValue : Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "virheellinen " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package kapistelykirjasto.ui.http;
+
+/**
+ * Ends a request with the given HTTP status and an error message as the response.
+ */
+class HttpError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    HttpError(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    static HttpError notFound() {
+        return new HttpError(404, "ei löydy");
+    }
+
+    static HttpError methodNotAllowed() {
+        return new HttpError(405, "menetelmä ei ole sallittu");
+    }
+}
@@ -0,0 +1,107 @@
+package kapistelykirjasto.ui.http;
+
+import java.io.IOException;
+
+import kapistelykirjasto.domain.Book;
+import kapistelykirjasto.domain.Course;
+import kapistelykirjasto.domain.Entry;
+import kapistelykirjasto.domain.SearchResult;
+import kapistelykirjasto.domain.Video;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+
+/**
+ * The JSON form of the library's domain objects. An entry is an object with a "type"
+ * of "book" or "video" and the fields of that type.
+ */
+public class LibraryJson {
+
+    public static void entry(JsonWriter json, Entry entry) throws IOException {
+        if (entry.getType() == Entry.Type.BOOK) {
+            book(json, (Book) entry);
+        } else {
+            video(json, (Video) entry);
+        }
+    }
+
+    public static void book(JsonWriter json, Book book) throws IOException {
+        json.beginObject()
+                .name("type").value("book")
+                .name("id").value(book.getId())
+                .name("title").value(book.getTitle())
+                .name("author").value(book.getAuthor())
+                .name("isbn").value(book.getISBN())
+                .name("comment").value(book.getComment())
+                .endObject();
+    }
+
+    public static void video(JsonWriter json, Video video) throws IOException {
+        json.beginObject()
+                .name("type").value("video")
+                .name("id").value(video.getId())
+                .name("title").value(video.getTitle())
+                .name("url").value(video.getUrl())
+                .name("duration").value(video.getDuration())
+                .name("comment").value(video.getComment())
+                .endObject();
+    }
+
+    public static void course(JsonWriter json, Course course) throws IOException {
+        json.beginObject()
+                .name("id").value(course.getId())
+                .name("code").value(course.getCourseCode())
+                .name("name").value(course.getName())
+                .endObject();
+    }
+
+    public static void courses(JsonWriter json, Iterable<Course> courses) throws IOException {
+        json.beginArray();
+        for (Course course : courses) {
+            course(json, course);
+        }
+        json.endArray();
+    }
+
+    public static void searchResult(JsonWriter json, SearchResult result) throws IOException {
+        json.beginObject().name("entry");
+        entry(json, result.getEntry());
+        json.name("snippet").value(result.getSnippet()).endObject();
+    }
+
+    public static void searchResults(JsonWriter json, Iterable<SearchResult> results) throws IOException {
+        json.beginArray();
+        for (SearchResult result : results) {
+            searchResult(json, result);
+        }
+        json.endArray();
+    }
+
+    public static void entries(JsonWriter json, Iterable<? extends Entry> entries) throws IOException {
+        json.beginArray();
+        for (Entry entry : entries) {
+            entry(json, entry);
+        }
+        json.endArray();
+    }
+
+    public static void page(JsonWriter json, Page<? extends Entry> page) throws IOException {
+        json.beginObject().name("items");
+        entries(json, page.getItems());
+        json.name("next").value(page.getNextToken()).endObject();
+    }
+
+    /**
+     * The id of a created entry as {"id": n}, or its error as {"error": "..."}.
+     */
+    public static void created(JsonWriter json, Result<String, Integer> result) throws IOException {
+        if (result.isValue()) {
+            json.beginObject().name("id").value(result.getValue()).endObject();
+        } else {
+            error(json, result.getError());
+        }
+    }
+
+    public static void error(JsonWriter json, String message) throws IOException {
+        json.beginObject().name("error").value(message).endObject();
+    }
+}
@@ -0,0 +1,134 @@
+package kapistelykirjasto.ui.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import kapistelykirjasto.domain.Application;
+
+/**
+ * Serves an Application as a REST/JSON API (see Endpoints) with the HTTP server of the
+ * JDK. Each request runs on the given executor, which should start a virtual thread per
+ * request where the JDK has them. At most maxConcurrent requests are handled at once; a
+ * request that does not get its turn within queueTimeoutMillis is answered with 503
+ * and Retry-After, so an overloaded server sheds load instead of queueing without bound.
+ * GET requests go through a ResponseCache, which answers unchanged listings with 304 or
+ * from memory.
+ */
+public class LibraryServer {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 256;
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 1000;
+    private static final int BACKLOG = 1024;
+
+    static {
+        // The JDK server writes the headers and the body separately, and without TCP_NODELAY
+        // the body waits for the delayed ACK of the headers: about 40 ms on every response.
+        // The setting is read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final Endpoints endpoints;
+    private final ResponseCache cache;
+    private final Semaphore permits;
+    private final long queueTimeoutMillis;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public LibraryServer(Application app, InetSocketAddress address, int maxConcurrent, long queueTimeoutMillis,
+            Executor executor) throws IOException {
+        this.endpoints = new Endpoints(app);
+        this.cache = new ResponseCache(app, ResponseCache.DEFAULT_MAX_BYTES);
+        this.permits = new Semaphore(maxConcurrent);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting connections and waits at most delaySeconds for the requests being
+     * handled to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Requests that got their turn within the limit.
+     */
+    public long getServedCount() {
+        return served.get();
+    }
+
+    /**
+     * Requests answered with 503 because the concurrency limit was reached.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    ResponseCache getCache() {
+        return cache;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!acquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                Response.error(503, "palvelin on ruuhkautunut").send(exchange);
+                return;
+            }
+            served.incrementAndGet();
+            try {
+                respond(exchange);
+            } finally {
+                permits.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean acquire() {
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        Response response;
+        try {
+            response = cache.handle(Request.of(exchange), endpoints::handle);
+        } catch (HttpError e) {
+            response = Response.error(e.getStatus(), e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            response = Response.error(500, "palvelinvirhe");
+        }
+        response.send(exchange);
+    }
+}
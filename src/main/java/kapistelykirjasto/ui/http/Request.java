@@ -0,0 +1,187 @@
+package kapistelykirjasto.ui.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The method, path and parameters of one request. The parameters come from the query
+ * string and, for POST and PUT, from a form encoded (application/x-www-form-urlencoded)
+ * body.
+ */
+class Request {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final String method;
+    private final String[] path;
+    private final String url;
+    private final String ifNoneMatch;
+    private final HashMap<String, String> params = new HashMap<>();
+
+    Request(String method, String path, String query, String body, String ifNoneMatch) {
+        this.method = method;
+        this.path = split(path);
+        this.url = query == null ? path : path + "?" + query;
+        this.ifNoneMatch = ifNoneMatch;
+        parse(query);
+        parse(body);
+    }
+
+    Request(String method, String path, String query, String body) {
+        this(method, path, query, body, null);
+    }
+
+    static Request of(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String body = method.equals("POST") || method.equals("PUT") ? read(exchange.getRequestBody()) : null;
+        return new Request(method, exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery(), body,
+                exchange.getRequestHeaders().getFirst("If-None-Match"));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            body.write(buffer, 0, n);
+            if (body.size() > MAX_BODY_BYTES) {
+                throw new HttpError(413, "pyyntö on liian suuri");
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String[] split(String path) {
+        ArrayList<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    private void parse(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            params.put(decode(name), equals < 0 ? "" : decode(pair.substring(equals + 1)));
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new HttpError(400, "virheellinen parametri: " + value);
+        }
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    int getPathLength() {
+        return path.length;
+    }
+
+    /**
+     * The path and the raw query string, which identify a GET.
+     */
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * Whether If-None-Match lists the tag, comparing weakly (ignoring W/) as RFC 7232
+     * requires for GET.
+     */
+    boolean matches(String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    String segment(int index) {
+        return index < path.length ? path[index] : "";
+    }
+
+    /**
+     * The path segment at the index as an id, failing the request with 404 if it is not
+     * a number.
+     */
+    int id(int index) {
+        try {
+            return Integer.parseInt(segment(index));
+        } catch (NumberFormatException e) {
+            throw HttpError.notFound();
+        }
+    }
+
+    String param(String name) {
+        return params.get(name);
+    }
+
+    String param(String name, String defaultValue) {
+        return params.getOrDefault(name, defaultValue);
+    }
+
+    String required(String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new HttpError(400, "parametri puuttuu: " + name);
+        }
+        return value;
+    }
+
+    int intParam(String name, int defaultValue) {
+        String value = params.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "parametrin " + name + " täytyy olla luku: " + value);
+        }
+    }
+
+    /**
+     * A comma separated list of ids, like courses=1,2,3.
+     */
+    int[] ids(String name) {
+        String value = param(name, "");
+        if (value.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = value.split(",");
+        int[] ids = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                ids[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new HttpError(400, "parametrin " + name + " täytyy olla lukuja: " + value);
+            }
+        }
+        return ids;
+    }
+}
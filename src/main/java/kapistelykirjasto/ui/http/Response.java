@@ -0,0 +1,117 @@
+package kapistelykirjasto.ui.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The status and JSON body of a response. The body is written straight to the
+ * connection with chunked transfer encoding, so its size need not be known in advance.
+ * A rendered response (see render) instead holds the encoded body and its ETag, and can
+ * be sent any number of times.
+ */
+class Response {
+
+    private final int status;
+    private final Body body;
+    private final byte[] bytes;
+    private final String etag;
+
+    Response(int status, Body body) {
+        this(status, body, null, null);
+    }
+
+    private Response(int status, Body body, byte[] bytes, String etag) {
+        this.status = status;
+        this.body = body;
+        this.bytes = bytes;
+        this.etag = etag;
+    }
+
+    static Response ok(Body body) {
+        return new Response(200, body);
+    }
+
+    static Response created(Body body) {
+        return new Response(201, body);
+    }
+
+    static Response noContent() {
+        return new Response(204, null);
+    }
+
+    static Response notModified(String etag) {
+        return new Response(304, null, null, etag);
+    }
+
+    static Response error(int status, String message) {
+        return new Response(status, json -> LibraryJson.error(json, message));
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * The size of the rendered body in bytes.
+     */
+    int getSize() {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * Encodes the body into memory and returns a response that carries it with the tag.
+     */
+    Response render(String etag) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Response(status, body, out.toByteArray(), etag);
+    }
+
+    void send(HttpExchange exchange) throws IOException {
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (bytes != null) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            return;
+        }
+        exchange.sendResponseHeaders(status, 0);
+        write(exchange.getResponseBody());
+    }
+
+    private void write(OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        try {
+            body.write(json);
+        } finally {
+            json.close();
+        }
+    }
+
+    @FunctionalInterface
+    interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+}
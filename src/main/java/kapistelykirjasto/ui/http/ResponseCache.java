@@ -0,0 +1,137 @@
+package kapistelykirjasto.ui.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import kapistelykirjasto.domain.Application;
+
+/**
+ * Conditional GETs and a cache of rendered listings. Every GET except /export is tagged
+ * with the version of the data it reads: the course version (Application.getCourseVersion)
+ * for the entries of one course and the library version for everything else. The version
+ * is read before the listing, so a tag is never newer than its body.
+ *
+ * A request whose If-None-Match has the current tag is answered with 304 without asking
+ * the application. The body of a 200 is kept, keyed by the URL, until the version
+ * changes, so repeated reads of an unchanged listing are copied from memory instead of
+ * queried and encoded again. The least recently used bodies are dropped when the cache
+ * holds more than maxBytes.
+ *
+ * The tags are weak, and they start with a random id of this cache, because the versions
+ * start from zero again when the server restarts.
+ */
+class ResponseCache {
+
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private final Application app;
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final long maxBytes;
+    private final LinkedHashMap<String, Response> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    ResponseCache(Application app, long maxBytes) {
+        this.app = app;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Answers the request from the tag or the cache if it can, and otherwise with route,
+     * caching the response if it is a 200.
+     */
+    Response handle(Request request, Function<Request, Response> route) {
+        String etag = etag(request);
+        if (etag == null) {
+            return route.apply(request);
+        } else if (request.matches(etag)) {
+            notModified.incrementAndGet();
+            return Response.notModified(etag);
+        }
+        Response cached = lookup(request.getUrl(), etag);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return render(request, etag, route.apply(request));
+    }
+
+    private Response render(Request request, String etag, Response response) {
+        if (response.getStatus() != 200) {
+            return response;
+        }
+        Response rendered = response.render(etag);
+        store(request.getUrl(), rendered);
+        return rendered;
+    }
+
+    /**
+     * The tag of the current version of what the request reads, or null if the request
+     * is not a cacheable GET.
+     */
+    String etag(Request request) {
+        if (!request.getMethod().equals("GET") || request.segment(0).equals("export")) {
+            return null;
+        } else if (request.segment(0).equals("courses") && request.segment(2).equals("entries")) {
+            return "W/\"" + instance + "-c" + app.getCourseVersion(request.id(1)) + "\"";
+        }
+        return "W/\"" + instance + "-" + app.getVersion() + "\"";
+    }
+
+    private synchronized Response lookup(String url, String etag) {
+        Response response = responses.get(url);
+        if (response == null || response.getEtag().equals(etag)) {
+            return response;
+        }
+        remove(url);
+        return null;
+    }
+
+    private synchronized void store(String url, Response response) {
+        long size = response.getSize();
+        if (size > maxBytes) {
+            return;
+        }
+        remove(url);
+        responses.put(url, response);
+        bytes += size;
+        Iterator<Map.Entry<String, Response>> eldest = responses.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().getValue().getSize();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String url) {
+        Response removed = responses.remove(url);
+        if (removed != null) {
+            bytes -= removed.getSize();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Requests answered with 304.
+     */
+    long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,164 @@
+package kapistelykirjasto.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+/**
+ * A Flow.Publisher that sends every published item to all current subscribers. Each
+ * subscriber has its own buffer of at most bufferSize items that it has not requested
+ * yet. Publishing never waits for a subscriber: one that falls so far behind that its
+ * buffer is full is dropped with onError, and can subscribe again after catching up by
+ * other means.
+ *
+ * Items are numbered in the order they are published, and an item is made only if there
+ * are subscribers, so publishing to no one costs next to nothing. A subscriber that sees
+ * a gap in the numbers has missed items.
+ *
+ * The items of one subscriber are delivered by one task at a time on the executor, or
+ * on the publishing thread if there is no executor.
+ */
+public class BroadcastPublisher<T> implements Flow.Publisher<T> {
+
+	private final CopyOnWriteArrayList<Delivery> deliveries = new CopyOnWriteArrayList<>();
+	private final int bufferSize;
+	private final Executor executor;
+	private long sequence;
+
+	public BroadcastPublisher(int bufferSize, Executor executor) {
+		this.bufferSize = bufferSize;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		Delivery delivery = new Delivery(subscriber);
+		deliveries.add(delivery);
+		subscriber.onSubscribe(delivery);
+		delivery.schedule();
+	}
+
+	public boolean hasSubscribers() {
+		return !deliveries.isEmpty();
+	}
+
+	/**
+	 * Makes the item with the next sequence number and offers it to every subscriber.
+	 */
+	public void publish(LongFunction<T> item) {
+		if (deliveries.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			T next = item.apply(++sequence);
+			for (Delivery delivery : deliveries) {
+				delivery.offer(next);
+			}
+		}
+	}
+
+	/**
+	 * The buffer and the requested count of one subscriber. The thread that raises wip
+	 * from zero delivers until wip drops back to zero, so deliveries never overlap; the
+	 * subscribe call starts with wip at one, so that nothing is delivered before
+	 * onSubscribe returns.
+	 */
+	private class Delivery implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super T> subscriber;
+		private final ArrayDeque<T> buffer = new ArrayDeque<>();
+		private final AtomicInteger wip = new AtomicInteger(1);
+		private long demand;
+		private Throwable error;
+		private volatile boolean cancelled;
+
+		Delivery(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(T item) {
+			synchronized (this) {
+				if (buffer.size() < bufferSize) {
+					buffer.add(item);
+				} else if (error == null) {
+					buffer.clear();
+					error = new IllegalStateException("tilaaja jäi yli " + bufferSize + " muutosta jälkeen");
+				}
+			}
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized (this) {
+				if (n <= 0) {
+					error = new IllegalArgumentException("pyydettävä määrä ei ole positiivinen: " + n);
+				}
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			deliveries.remove(this);
+			synchronized (this) {
+				buffer.clear();
+			}
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() == 0) {
+				schedule();
+			}
+		}
+
+		void schedule() {
+			if (executor == null) {
+				run();
+			} else {
+				executor.execute(this::run);
+			}
+		}
+
+		private void run() {
+			int missed = 1;
+			do {
+				deliver();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			while (!cancelled) {
+				T item;
+				Throwable failure;
+				synchronized (this) {
+					failure = error;
+					item = failure == null && demand > 0 ? buffer.poll() : null;
+					demand -= item == null ? 0 : 1;
+				}
+				if (failure != null) {
+					cancel();
+					subscriber.onError(failure);
+				} else if (item != null) {
+					next(item);
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void next(T item) {
+			try {
+				subscriber.onNext(item);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				cancel();
+			}
+		}
+	}
+}
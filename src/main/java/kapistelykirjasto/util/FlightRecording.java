@@ -0,0 +1,82 @@
+package kapistelykirjasto.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts and stops a Java Flight Recorder recording of the library's own events
+ * (kapistelykirjasto.Action, .Application and .Statement) together with the JVM's
+ * default events, so that garbage collection, lock and I/O events can be lined up with
+ * the library operations. When stopped the recording is written to the given file.
+ *
+ * A recording can also be started from outside the application with
+ * -XX:StartFlightRecording or jcmd JFR.start; the events are then enabled the same way.
+ */
+public class FlightRecording {
+
+	private static final String[] EVENTS = {"kapistelykirjasto.Action", "kapistelykirjasto.Application",
+		"kapistelykirjasto.Statement"};
+
+	private final Path file;
+	private Recording recording;
+
+	public FlightRecording(Path file) {
+		this.file = file;
+	}
+
+	public synchronized boolean isRunning() {
+		return recording != null;
+	}
+
+	/**
+	 * Starts recording with the JVM's "default" settings, which are meant to be cheap
+	 * enough for production, and the library's events enabled.
+	 */
+	public synchronized void start() throws IOException, ParseException {
+		if (recording != null) {
+			return;
+		}
+		recording = new Recording(Configuration.getConfiguration("default"));
+		for (String event : EVENTS) {
+			recording.enable(event);
+		}
+		recording.start();
+	}
+
+	/**
+	 * Stops the recording and writes it to the file.
+	 */
+	public synchronized void stop() throws IOException {
+		if (recording == null) {
+			return;
+		}
+		try {
+			recording.stop();
+			recording.dump(file);
+		} finally {
+			recording.close();
+			recording = null;
+		}
+	}
+
+	/**
+	 * Starts a stopped recording or stops a running one and returns a message telling
+	 * which was done.
+	 */
+	public String toggle() {
+		try {
+			if (!isRunning()) {
+				start();
+				return "lentotallennus käynnistetty";
+			}
+			stop();
+			return "lentotallennus tallennettu: " + file;
+		} catch (IOException | ParseException e) {
+			return "lentotallennus epäonnistui: " + e.getMessage();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package kapistelykirjasto.util;
+
+/**
+ * The interfaces of java.util.concurrent.Flow (Reactive Streams), which came in Java 9.
+ * The project is compiled for Java 8, so they are copied here with the same names and
+ * rules; moving to the JDK ones is a change of imports.
+ */
+public final class Flow {
+
+	private Flow() {
+	}
+
+	/**
+	 * Sends items to the subscribers, each only as many as it has requested.
+	 */
+	public interface Publisher<T> {
+
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/**
+	 * Receives onSubscribe first, then onNext at most as many times as it has requested,
+	 * and finally onComplete or onError unless it cancels first. The calls for one
+	 * subscriber never overlap.
+	 */
+	public interface Subscriber<T> {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	public interface Subscription {
+
+		/**
+		 * Asks for n more items; n must be positive.
+		 */
+		void request(long n);
+
+		void cancel();
+	}
+}
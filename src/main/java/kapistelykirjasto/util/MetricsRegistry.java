@@ -0,0 +1,63 @@
+package kapistelykirjasto.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named latency histograms and error counters, created on first use.
+ */
+public class MetricsRegistry {
+
+	private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+	public Timer timer(String name) {
+		return timers.computeIfAbsent(name, n -> new Timer());
+	}
+
+	public Map<String, Timer> getTimers() {
+		return new TreeMap<>(timers);
+	}
+
+	/**
+	 * One line per operation with the call and error counts and the p50, p99, p999 and
+	 * maximum latencies in milliseconds.
+	 */
+	public String dump() {
+		StringBuilder dump = new StringBuilder(String.format("%-36s %9s %8s %9s %9s %9s %9s",
+				"operaatio", "kutsuja", "virheitä", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (Map.Entry<String, Timer> timer : getTimers().entrySet()) {
+			dump.append('\n').append(String.format("%-36s %s", timer.getKey(), timer.getValue()));
+		}
+		return dump.toString();
+	}
+
+	public static class Timer {
+
+		private final Histogram latencies = new Histogram();
+		private final LongAdder errors = new LongAdder();
+
+		public void record(long nanos, boolean error) {
+			latencies.record(nanos);
+			if (error) {
+				errors.increment();
+			}
+		}
+
+		public Histogram getLatencies() {
+			return latencies;
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%9d %8d %9.3f %9.3f %9.3f %9.3f", latencies.getCount(), getErrors(),
+					latencies.getPercentile(0.5) / 1e6, latencies.getPercentile(0.99) / 1e6,
+					latencies.getPercentile(0.999) / 1e6, latencies.getMax() / 1e6);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package kapistelykirjasto.util;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset paginated listing. The next page is requested with the token
+ * returned by getNextToken(), which is null on the last page.
+ */
+public class Page<T> {
+
+	public enum Sort {
+		ID, TITLE
+	}
+
+	private ArrayList<T> items;
+	private String nextToken;
+
+	public Page(ArrayList<T> items, String nextToken) {
+		this.items = items;
+		this.nextToken = nextToken;
+	}
+
+	public ArrayList<T> getItems() {
+		return items;
+	}
+
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+	public <R> Page<R> map(Function<T, R> mapper) {
+		ArrayList<R> mapped = new ArrayList<>();
+		for (T item : items) {
+			mapped.add(mapper.apply(item));
+		}
+		return new Page<>(mapped, nextToken);
+	}
+}
@@ -0,0 +1,76 @@
+package kapistelykirjasto.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of an entry in a keyset paginated listing. Entries are ordered by the sort
+ * key (id or title), then by entry type and then by id, so the same token can continue
+ * a listing of books, of videos or of both.
+ */
+public class PageToken implements Comparable<PageToken> {
+
+	private Page.Sort sort;
+	private String type;
+	private int id;
+	private String title;
+
+	private PageToken(Page.Sort sort, String type, int id, String title) {
+		this.sort = sort;
+		this.type = type;
+		this.id = id;
+		this.title = title == null ? "" : title;
+	}
+
+	public static PageToken of(Page.Sort sort, String type, int id, String title) {
+		return new PageToken(sort, type, id, title);
+	}
+
+	public static PageToken decode(String token, Page.Sort sort) {
+		String[] parts = token.split(":", 4);
+		try {
+			if (parts.length != 4 || Page.Sort.valueOf(parts[0]) != sort) {
+				throw new IllegalArgumentException("virheellinen jatkotunnus: " + token);
+			}
+			String title = new String(Base64.getUrlDecoder().decode(parts[3]), StandardCharsets.UTF_8);
+			return new PageToken(sort, parts[1], Integer.parseInt(parts[2]), title);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("virheellinen jatkotunnus: " + token, e);
+		}
+	}
+
+	public String encode() {
+		return sort.name() + ":" + type + ":" + id + ":"
+				+ Base64.getUrlEncoder().encodeToString(title.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The sort key as a query parameter.
+	 */
+	public Object getKey() {
+		return sort == Page.Sort.ID ? (Object) id : title;
+	}
+
+	/**
+	 * The id bound for rows of the given type that have the same sort key as this token:
+	 * rows of an earlier type were already listed and rows of a later type were not, so
+	 * the keyset condition (key, id) > (getKey(), getIdBound(type)) selects exactly the
+	 * rows that come after this token.
+	 */
+	public int getIdBound(String rowType) {
+		int order = rowType.compareTo(type);
+		if (order == 0) {
+			return id;
+		}
+		return order < 0 ? Integer.MAX_VALUE : -1;
+	}
+
+	@Override
+	public int compareTo(PageToken other) {
+		int order = sort == Page.Sort.ID ? Integer.compare(id, other.id) : title.compareTo(other.title);
+		if (order == 0) {
+			order = type.compareTo(other.type);
+		}
+		return order == 0 ? Integer.compare(id, other.id) : order;
+	}
+}
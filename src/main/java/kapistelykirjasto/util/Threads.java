@@ -0,0 +1,54 @@
+package kapistelykirjasto.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+public class Threads {
+
+	/**
+	 * Returns an executor that starts a virtual thread per task when running on a JDK that
+	 * has them (21 or newer), and a fixed pool of poolSize threads otherwise. The project
+	 * is compiled for Java 8, so the virtual thread executor is looked up reflectively.
+	 */
+	public static ExecutorService newExecutor(int poolSize) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(poolSize, Threads::daemon);
+		}
+	}
+
+	private static Thread daemon(Runnable task) {
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Runs the task on the executor, or right away on the calling thread if there is no
+	 * executor.
+	 */
+	public static <T> CompletableFuture<T> fork(Supplier<T> task, ExecutorService executor) {
+		if (executor == null) {
+			return CompletableFuture.completedFuture(task.get());
+		}
+		return CompletableFuture.supplyAsync(task, executor);
+	}
+
+	/**
+	 * Waits for the result and rethrows a runtime exception thrown by the task as is.
+	 */
+	public static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
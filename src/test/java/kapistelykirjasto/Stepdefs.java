@@ -3,8 +3,10 @@ package kapistelykirjasto;
 
 import io.cucumber.java.Before;
 import io.cucumber.java.en.*;
+import kapistelykirjasto.dao.ConnectionProvider;
 import kapistelykirjasto.dao.SQLiteBookDao;
 import kapistelykirjasto.dao.SQLiteCourseDao;
+import kapistelykirjasto.dao.SQLiteEntryDao;
 import kapistelykirjasto.dao.SQLiteVideoDao;
 import kapistelykirjasto.ui.*;
 import kapistelykirjasto.ui.cli.CLI;
@@ -22,8 +24,9 @@ public class Stepdefs {
     @Before
     public void setup() {
         this.inputLines = new ArrayList<>();
-        app = new ApplicationLogic(new SQLiteBookDao(":memory:"), new SQLiteVideoDao(":memory:"),
-                new SQLiteCourseDao(":memory:"));
+        ConnectionProvider connections = new ConnectionProvider(":memory:");
+        app = new ApplicationLogic(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                new SQLiteCourseDao(connections), new SQLiteEntryDao(connections));
     }
 
     @Given("book with title {string} is added")
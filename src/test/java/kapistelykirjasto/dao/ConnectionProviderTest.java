@@ -0,0 +1,111 @@
+package kapistelykirjasto.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class ConnectionProviderTest {
+
+    private ConnectionProvider connections;
+    private final File testDatabaseFile = new File("test_database.db");
+
+    @Before
+    public void setUp() throws IOException {
+        assertTrue(testDatabaseFile.createNewFile());
+        this.connections = new ConnectionProvider(testDatabaseFile.getAbsolutePath(), 2, 100);
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+        assertTrue(testDatabaseFile.delete());
+    }
+
+    @Test
+    public void daosShareOneWriterConnection() {
+        SQLiteBookDao bookDao = new SQLiteBookDao(connections);
+        SQLiteCourseDao courseDao = new SQLiteCourseDao(connections);
+
+        int bookId = bookDao.createBook("Clean Code", "", "Robert Martin", "978-0132350884").getValue();
+        courseDao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        courseDao.addBookCourseRelation(courseDao.getCourses().get(0).getId(), bookId);
+
+        assertEquals(1, bookDao.getCourseBooks(courseDao.getCourses().get(0).getId()).size());
+    }
+
+    @Test
+    public void readersAreReadOnly() throws SQLException {
+        new SQLiteBookDao(connections);
+        Connection reader = connections.acquireReader();
+        try {
+            reader.createStatement().executeUpdate("DELETE FROM book");
+            fail();
+        } catch (SQLException e) {
+            // expected
+        } finally {
+            connections.releaseReader(reader);
+        }
+    }
+
+    @Test
+    public void readerPoolIsBoundedAndTimesOut() throws SQLException {
+        new SQLiteBookDao(connections);
+        Connection first = connections.acquireReader();
+        Connection second = connections.acquireReader();
+        try {
+            connections.acquireReader();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(2, connections.getOpenReaderCount());
+        }
+        connections.releaseReader(first);
+        assertSame(first, connections.acquireReader());
+        connections.releaseReader(first);
+        connections.releaseReader(second);
+    }
+
+    @Test
+    public void waitTimesAreRecorded() {
+        SQLiteBookDao bookDao = new SQLiteBookDao(connections);
+        bookDao.getBooks();
+        bookDao.getBooks();
+
+        assertEquals(2, connections.getReaderWaits().getAcquisitions());
+        assertTrue(connections.getWriterWaits().getAcquisitions() >= 1);
+    }
+
+    @Test
+    public void threadHoldingWriterReadsFromWriter() throws SQLException {
+        Connection writer = connections.acquireWriter();
+        Connection reader = connections.acquireReader();
+        assertSame(writer, reader);
+        connections.releaseReader(reader);
+        connections.releaseWriter();
+    }
+
+    @Test
+    public void inMemoryDatabaseReadsFromWriter() {
+        ConnectionProvider memory = new ConnectionProvider(":memory:");
+        SQLiteBookDao bookDao = new SQLiteBookDao(memory);
+        bookDao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+
+        assertEquals(1, bookDao.getBooks().size());
+        memory.close();
+    }
+
+    @Test
+    public void closedProviderRefusesConnections() {
+        SQLiteBookDao bookDao = new SQLiteBookDao(connections);
+        connections.close();
+
+        assertNull(bookDao.getBooks());
+        assertTrue(bookDao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K").isError());
+    }
+}
@@ -0,0 +1,120 @@
+package kapistelykirjasto.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DatabaseProfileTest {
+
+    private Path directory;
+    private ConnectionProvider connections;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("database-profile");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (this.connections != null) {
+            this.connections.close();
+        }
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private ConnectionProvider open(DatabaseProfile profile) {
+        this.connections = new ConnectionProvider(directory.resolve("test.db").toString(), profile);
+        return this.connections;
+    }
+
+    private static String pragma(Connection connection, String name) throws SQLException {
+        return Util.query(connection, "PRAGMA " + name, rs -> rs.getString(1)).get(0);
+    }
+
+    @Test
+    public void profilesAreFoundByName() {
+        assertSame(DatabaseProfile.SAFE, DatabaseProfile.forName("safe"));
+        assertSame(DatabaseProfile.BALANCED, DatabaseProfile.forName("balanced"));
+        assertSame(DatabaseProfile.BULK_LOAD, DatabaseProfile.forName("bulk-load"));
+    }
+
+    @Test
+    public void onlySafeProfileIsDurable() {
+        assertTrue(DatabaseProfile.SAFE.isDurable());
+        assertFalse(DatabaseProfile.BALANCED.isDurable());
+        assertFalse(DatabaseProfile.BULK_LOAD.isDurable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownProfileIsRejected() {
+        DatabaseProfile.forName("fast");
+    }
+
+    @Test
+    public void balancedProfileIsAppliedToWriterAndReaders() throws SQLException {
+        new SQLiteBookDao(open(DatabaseProfile.BALANCED));
+
+        assertEquals("wal", connections.write(connection -> pragma(connection, "journal_mode")));
+        assertEquals("1", connections.write(connection -> pragma(connection, "synchronous")));
+        assertEquals("-65536", connections.read(connection -> pragma(connection, "cache_size")));
+        assertEquals("5000", connections.read(connection -> pragma(connection, "busy_timeout")));
+        assertEquals("2", connections.read(connection -> pragma(connection, "temp_store")));
+    }
+
+    @Test
+    public void readersSeeLastCommitWhileWriterHasOpenTransaction() throws Exception {
+        SQLiteBookDao dao = new SQLiteBookDao(open(DatabaseProfile.BALANCED));
+        dao.createBook("Kirja", "", "Kirjailija", "1");
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+
+        int seen = connections.transaction(connection -> {
+            Util.update(connection, "DELETE FROM book");
+            try {
+                return reader.submit(() -> dao.getBooks().size()).get(1, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new SQLException(e);
+            }
+        });
+        reader.shutdown();
+
+        assertEquals(1, seen);
+        assertEquals(0, dao.getBooks().size());
+    }
+
+    @Test
+    public void propertiesOverrideNamedProfile() throws IOException, SQLException {
+        Path file = directory.resolve("tietokanta.properties");
+        Files.write(file, Arrays.asList("profile=bulk-load", "synchronous=normal", "busy_timeout=1234"),
+                StandardCharsets.UTF_8);
+        DatabaseProfile profile = DatabaseProfile.load(file);
+        new SQLiteBookDao(open(profile));
+
+        assertEquals("bulk-load", profile.getName());
+        assertEquals("memory", connections.write(connection -> pragma(connection, "journal_mode")));
+        assertEquals("1", connections.write(connection -> pragma(connection, "synchronous")));
+        assertEquals("1234", connections.write(connection -> pragma(connection, "busy_timeout")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPropertyIsRejected() throws IOException {
+        Path file = directory.resolve("tietokanta.properties");
+        Files.write(file, Arrays.asList("journal_mode=fast"), StandardCharsets.UTF_8);
+        DatabaseProfile.load(file);
+    }
+}
@@ -0,0 +1,203 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.util.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LogDaoTest {
+
+    private Path directory;
+    private LogDao dao;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("log-dao");
+        this.dao = LogDao.open(directory, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.dao.close();
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private List<Path> files() throws IOException {
+        Stream<Path> files = Files.list(directory);
+        try {
+            return files.sorted().collect(Collectors.toList());
+        } finally {
+            files.close();
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        ArrayList<Path> segments = new ArrayList<>();
+        for (Path file : files()) {
+            if (file.toString().endsWith(".log")) {
+                segments.add(file);
+            }
+        }
+        return segments;
+    }
+
+    private static List<String> titles(List<? extends Model> models) {
+        ArrayList<String> titles = new ArrayList<>();
+        for (Model model : models) {
+            titles.add(model.getTitle());
+        }
+        return titles;
+    }
+
+    private LogDao reopen(long segmentBytes) throws IOException {
+        this.dao.close();
+        this.dao = LogDao.open(directory, false, segmentBytes);
+        return this.dao;
+    }
+
+    private void createLibrary() {
+        this.dao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        this.dao.createBook("Kirja", null, "Kirjailija", "1", new int[] {1});
+        this.dao.createBook("Poistettu", "", "Kirjailija", "2");
+        this.dao.createVideo("Video", "kommentti", "https://example.com", "1:00");
+        this.dao.editBook(1, "Käyttöjärjestelmät", null, "Kirjailija", "1");
+        this.dao.deleteBook(2);
+        this.dao.markVideoAsRead(1);
+        this.dao.addVideoCourseRelation(1, 1);
+    }
+
+    private void assertLibrary(LogDao dao) {
+        assertEquals(Arrays.asList("Käyttöjärjestelmät"), titles(dao.getBooks()));
+        assertNull(dao.getBooks().get(0).getComment());
+        assertEquals(Arrays.asList("Video"), titles(dao.getReadVideos()));
+        assertEquals(Arrays.asList("Käyttöjärjestelmät", "Video"),
+                titles(dao.getCourseEntries(1, EntryDao.Order.TITLE)));
+        assertEquals("Ohjelmistotuotanto", dao.getCourses().get(0).getName());
+    }
+
+    @Test
+    public void changesAreReplayedWhenTheLogIsOpened() throws IOException {
+        createLibrary();
+        long created = this.dao.getBooks().get(0).getId();
+
+        assertLibrary(reopen(MutationLog.DEFAULT_SEGMENT_BYTES));
+        assertEquals(8, this.dao.getLastSequence());
+        assertEquals(created, this.dao.getBooks().get(0).getId());
+        assertEquals(3, (int) this.dao.createBook("Uusi", "", "Kirjailija", "3").getValue());
+    }
+
+    @Test
+    public void rejectedChangesAreNotLogged() {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+
+        assertFalse(this.dao.createBook("Kirja", "", "Kirjailija", "2").isValue());
+        assertFalse(this.dao.createVideo("Video", "", "https://example.com", "1:00", new int[] {1}).isValue());
+        assertFalse(this.dao.editBook(2, "Toinen", "", "Kirjailija", "2"));
+        assertFalse(this.dao.markVideoAsRead(1));
+        assertFalse(this.dao.addBookCourseRelation(1, 1));
+        List<Result<String, Integer>> results = this.dao.createBooks(Arrays.asList(
+                new BookModel(0, "Uusi", "", "Kirjailija", "3"), new BookModel(0, "Uusi", "", "Kirjailija", "4")));
+        assertEquals(2, (int) results.get(0).getValue());
+        assertFalse(results.get(1).isValue());
+        assertEquals(2, this.dao.getLastSequence());
+    }
+
+    @Test
+    public void snapshotCompactsTheLog() throws IOException {
+        reopen(200);
+        createLibrary();
+        assertTrue(segments().size() > 1);
+
+        this.dao.snapshot();
+        assertEquals(1, segments().size());
+        this.dao.markBookAsRead(1);
+
+        LogDao reopened = reopen(200);
+        assertLibrary(reopened);
+        assertEquals(Arrays.asList("Käyttöjärjestelmät"), titles(reopened.getReadBooks()));
+        assertEquals(9, reopened.getLastSequence());
+    }
+
+    @Test
+    public void snapshotDoesNotDependOnTheDatabaseSchema() throws IOException {
+        createLibrary();
+        this.dao.snapshot();
+        Path snapshot = directory.resolve(LogDao.SNAPSHOT);
+
+        assertEquals(Snapshot.LOG_SCHEMA, Snapshot.readLog(snapshot).schema);
+        assertNull(Snapshot.read(snapshot, this.dao.getLastSequence()));
+        assertLibrary(reopen(MutationLog.DEFAULT_SEGMENT_BYTES));
+    }
+
+    @Test
+    public void deletedLastIdIsNotReusedAfterSnapshot() throws IOException {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+        this.dao.createBook("Poistettu", "", "Kirjailija", "2");
+        this.dao.deleteBook(2);
+        this.dao.snapshot();
+
+        LogDao reopened = reopen(MutationLog.DEFAULT_SEGMENT_BYTES);
+        assertEquals(3, (int) reopened.createBook("Uusi", "", "Kirjailija", "3").getValue());
+    }
+
+    @Test
+    public void failedAppendIsNotApplied() {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+        this.dao.close();
+
+        assertTrue(this.dao.createBook("Toinen", "", "Kirjailija", "2").isError());
+        assertEquals(Arrays.asList("Kirja"), titles(this.dao.getBooks()));
+        assertEquals(1, this.dao.getLastSequence());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        createLibrary();
+        this.dao.createBook("Kesken", "", "Kirjailija", "3");
+        this.dao.close();
+        Path segment = segments().get(0);
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(channel.size() - 3);
+        } finally {
+            channel.close();
+        }
+
+        this.dao = LogDao.open(directory, false);
+        assertLibrary(this.dao);
+        assertEquals(8, this.dao.getLastSequence());
+        assertEquals(3, (int) this.dao.createBook("Uusi", "", "Kirjailija", "3").getValue());
+        assertEquals(Arrays.asList("Käyttöjärjestelmät", "Uusi"), titles(reopen(200).getBooks()));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptRecordBeforeTheEndIsAnError() throws IOException {
+        reopen(100);
+        createLibrary();
+        this.dao.close();
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        this.dao = LogDao.open(directory, false, 100);
+    }
+}
@@ -0,0 +1,195 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class MemoryDaoTest {
+
+    private ConnectionProvider connections;
+    private MemoryDao dao;
+
+    @Before
+    public void setUp() {
+        this.connections = new ConnectionProvider(":memory:");
+        this.dao = new MemoryDao();
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+    }
+
+    private static List<String> titles(List<? extends Model> models) {
+        ArrayList<String> titles = new ArrayList<>();
+        for (Model model : models) {
+            titles.add(model.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    public void createdEntriesAreListedInIdOrder() {
+        assertEquals(1, (int) this.dao.createBook("B", "", "Kirjailija", "1").getValue());
+        assertEquals(2, (int) this.dao.createBook("A", "", "Kirjailija", "2").getValue());
+        assertEquals(1, (int) this.dao.createVideo("V", "", "https://example.com", "1:00").getValue());
+
+        assertEquals(Arrays.asList("B", "A"), titles(this.dao.getBooks()));
+        assertEquals(2, this.dao.getBooks().get(1).getId());
+        assertEquals(Arrays.asList("V"), titles(this.dao.getVideos()));
+        assertEquals(3, this.dao.size());
+    }
+
+    @Test
+    public void duplicateTitleIsRejected() {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+        this.dao.createBook("Toinen", "", "Kirjailija", "2");
+
+        assertFalse(this.dao.createBook("Kirja", "", "Kirjailija", "3").isValue());
+        assertFalse(this.dao.editBook(2, "Kirja", "", "Kirjailija", "2"));
+        List<Result<String, Integer>> results = this.dao.createBooks(Arrays.asList(
+                new BookModel(0, "Uusi", "", "Kirjailija", "4"), new BookModel(0, "Uusi", "", "Kirjailija", "5")));
+        assertEquals(3, (int) results.get(0).getValue());
+        assertFalse(results.get(1).isValue());
+    }
+
+    @Test
+    public void readAndNotReadEntriesAreKeptApart() {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+        this.dao.createBook("Toinen", "", "Kirjailija", "2");
+        this.dao.createVideo("Video", "", "https://example.com", "1:00");
+
+        assertTrue(this.dao.markBookAsRead(2));
+        assertFalse(this.dao.markVideoAsRead(5));
+        assertEquals(Arrays.asList("Toinen"), titles(this.dao.getReadBooks()));
+        assertEquals(Arrays.asList("Kirja"), titles(this.dao.getNotReadBooks()));
+        assertEquals(Arrays.asList("Toinen"), titles(this.dao.getReadEntries(EntryDao.Order.TITLE)));
+        assertEquals(Arrays.asList("Toinen", "Kirja", "Video"), titles(this.dao.getEntries(EntryDao.Order.READ)));
+        assertTrue(this.dao.deleteBook(2));
+        assertFalse(this.dao.deleteBook(2));
+        assertTrue(this.dao.getReadBooks().isEmpty());
+    }
+
+    @Test
+    public void courseEntriesFollowTheLinks() {
+        this.dao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        this.dao.createCourse("TKT20007", "Ohjelmistotekniikka");
+        this.dao.createBook("Kirja", "", "Kirjailija", "1", new int[] {1});
+        this.dao.createVideo("Video", "", "https://example.com", "1:00", new int[] {1, 2});
+
+        assertFalse(this.dao.createBook("Ei kurssia", "", "Kirjailija", "2", new int[] {3}).isValue());
+        assertFalse(this.dao.addBookCourseRelation(3, 1));
+        assertTrue(this.dao.addBookCourseRelation(2, 1));
+        assertEquals(Arrays.asList("Kirja", "Video"), titles(this.dao.getCourseEntries(2, EntryDao.Order.TITLE)));
+        assertTrue(this.dao.deleteVideo(1));
+        assertEquals(Arrays.asList("Kirja"), titles(this.dao.getCourseEntries(1, EntryDao.Order.CREATED)));
+        assertTrue(this.dao.getCourseVideos(2).isEmpty());
+        assertTrue(this.dao.getCourseBooks(9).isEmpty());
+    }
+
+    @Test
+    public void pagesMatchTheSQLiteDao() {
+        SQLiteBookDao sqlite = new SQLiteBookDao(connections);
+        for (String title : new String[] {"d", "b", "e", "a", "c"}) {
+            this.dao.createBook(title, "", "Kirjailija", title);
+            sqlite.createBook(title, "", "Kirjailija", title);
+        }
+        this.dao.deleteBook(3);
+        sqlite.deleteBook(3);
+
+        for (Page.Sort sort : Page.Sort.values()) {
+            assertSamePages(sqlite, sort);
+        }
+    }
+
+    private void assertSamePages(SQLiteBookDao sqlite, Page.Sort sort) {
+        String memoryToken = null;
+        String sqliteToken = null;
+        do {
+            Page<BookModel> memory = this.dao.getBooks(sort, memoryToken, 2);
+            Page<BookModel> expected = sqlite.getBooks(sort, sqliteToken, 2);
+            assertEquals(titles(expected.getItems()), titles(memory.getItems()));
+            assertEquals(expected.getNextToken(), memory.getNextToken());
+            memoryToken = memory.getNextToken();
+            sqliteToken = expected.getNextToken();
+        } while (memoryToken != null);
+    }
+
+    @Test
+    public void searchMatchesWordPrefixesWithoutDiacritics() {
+        this.dao.createBook("Käyttöjärjestelmät", "perusteet", "Kirjailija", "1");
+        this.dao.createVideo("Tietorakenteet", "käyttö esimerkein", "https://example.com", "1:00");
+
+        ArrayList<SearchResultModel> results = this.dao.search("kaytto", 10);
+
+        assertEquals(2, results.size());
+        assertEquals("Käyttöjärjestelmät", results.get(0).getEntry().getTitle());
+        assertEquals("[Käyttöjärjestelmät]", results.get(0).getSnippet());
+        assertEquals("[käyttö] esimerkein", results.get(1).getSnippet());
+        assertTrue(this.dao.search("kaytto puuttuu", 10).isEmpty());
+    }
+
+    @Test
+    public void loadedDaoReadsTheDatabaseAndWritesThrough() throws SQLException {
+        SQLiteBookDao books = new SQLiteBookDao(connections);
+        new SQLiteCourseDao(connections).createCourse("TKT20006", "Ohjelmistotuotanto");
+        books.createBook("Kirja", "", "Kirjailija", "1", new int[] {1});
+        books.markBookAsRead(1);
+
+        MemoryDao loaded = MemoryDao.load(connections);
+        assertEquals(Arrays.asList("Kirja"), titles(loaded.getReadBooks()));
+        assertEquals(Arrays.asList("Kirja"), titles(loaded.getCourseBooks(1)));
+        assertFalse(loaded.createBook("Kirja", "", "Kirjailija", "2").isValue());
+        assertEquals(2, (int) loaded.createBook("Toinen", "", "Kirjailija", "2", new int[] {1}).getValue());
+        assertTrue(loaded.editBook(1, "Muokattu", "", "Kirjailija", "1"));
+        assertTrue(loaded.createCourse("TKT20007", "Ohjelmistotekniikka"));
+
+        assertEquals(titles(books.getBooks()), titles(loaded.getBooks()));
+        assertEquals(2, books.getCourseBooks(1).size());
+        assertEquals(2, loaded.getCourses().get(1).getId());
+        assertEquals(titles(MemoryDao.load(connections).getEntries(EntryDao.Order.TITLE)),
+                titles(loaded.getEntries(EntryDao.Order.TITLE)));
+    }
+
+    private boolean listsAreConsistent() {
+        List<VideoModel> read = this.dao.getReadVideos();
+        List<VideoModel> all = this.dao.getVideos();
+        return !read.contains(null) && !all.contains(null) && all.size() >= read.size();
+    }
+
+    @Test
+    public void readersSeeConsistentListsDuringWrites() throws InterruptedException {
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                this.dao.createVideo("Video " + i, "", "https://example.com", "1:00");
+                this.dao.markVideoAsRead(i / 2 + 1);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            if (!listsAreConsistent()) {
+                failed.set(true);
+            }
+        }
+        writer.join();
+
+        assertFalse(failed.get());
+        assertEquals(2000, this.dao.getVideos().size());
+        assertEquals(1000, this.dao.getReadVideos().size());
+    }
+}
@@ -0,0 +1,56 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.util.MetricsRegistry;
+import kapistelykirjasto.util.Page;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MeteredDaoTest {
+
+    private MetricsRegistry metrics;
+    private BookDao dao;
+
+    @Before
+    public void setUp() {
+        this.metrics = new MetricsRegistry();
+        this.dao = MeteredDao.wrap(BookDao.class, new StubDao(), metrics);
+    }
+
+    @Test
+    public void callsAreTimedPerMethod() {
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+        this.dao.getBooks();
+        this.dao.getBooks();
+
+        assertEquals(1, metrics.timer("BookDao.createBook").getLatencies().getCount());
+        assertEquals(2, metrics.timer("BookDao.getBooks").getLatencies().getCount());
+        assertEquals(0, metrics.timer("BookDao.getBooks").getErrors());
+    }
+
+    @Test
+    public void errorResultsAreCounted() {
+        this.dao.close();
+        this.dao.createBook("Kirja", "", "Kirjailija", "1");
+
+        assertEquals(1, metrics.timer("BookDao.createBook").getErrors());
+        assertEquals(0, metrics.timer("BookDao.close").getErrors());
+    }
+
+    @Test
+    public void exceptionsAreCountedAndRethrown() {
+        try {
+            this.dao.getBooks(Page.Sort.ID, "virheellinen", 10);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, metrics.timer("BookDao.getBooks").getErrors());
+        }
+    }
+
+    @Test
+    public void dumpListsEveryOperation() {
+        this.dao.getBooks();
+        assertTrue(metrics.dump().contains("BookDao.getBooks"));
+    }
+}
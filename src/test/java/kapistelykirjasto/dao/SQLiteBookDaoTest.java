@@ -1,8 +1,13 @@
 package kapistelykirjasto.dao;
 
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import java.util.Arrays;
 import java.io.*;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import kapistelykirjasto.dao.models.BookModel;
 import kapistelykirjasto.dao.models.VideoModel;
@@ -244,4 +249,141 @@ public class SQLiteBookDaoTest {
 
         assertEquals(this.dao.getCourseBooks(courseId).size(), 1);
     }
+
+    @Test
+    public void createBooksInsertsAllBooksAndReturnsTheirIds() {
+        ArrayList<Result<String, Integer>> results = this.dao.createBooks(Arrays.asList(
+                new BookModel(0, "Hello Ruby!", "Sopii lapsille!", "Linda Liukas", "032-135522-K"),
+                new BookModel(0, "Database System Concepts", "Todella pitkä kirja", "Henry F. Fort", "007-124476-X")));
+
+        assertEquals(2, results.size());
+        ArrayList<BookModel> books = this.dao.getBooks();
+        assertEquals(books.get(0).getId(), (int) results.get(0).getValue());
+        assertEquals(books.get(1).getId(), (int) results.get(1).getValue());
+    }
+
+    @Test
+    public void createBooksReportsDuplicateTitleOnlyForItsOwnRow() {
+        this.dao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+        ArrayList<Result<String, Integer>> results = this.dao.createBooks(Arrays.asList(
+                new BookModel(0, "Clean Code", "", "Robert Martin", "978-0132350884"),
+                new BookModel(0, "Hello Ruby!", "", "Linda Liukas", "032-135522-K"),
+                new BookModel(0, "Clean Code", "", "Robert Martin", "978-0132350884"),
+                new BookModel(0, "Database System Concepts", "", "Henry F. Fort", "007-124476-X")));
+
+        assertTrue(results.get(0).isValue());
+        assertEquals("otsikko on jo käytössä: Hello Ruby!", results.get(1).getError());
+        assertTrue(results.get(2).isError());
+        assertTrue(results.get(3).isValue());
+        assertEquals(3, this.dao.getBooks().size());
+        assertEquals(this.dao.getBooks().get(2).getId(), (int) results.get(3).getValue());
+    }
+
+    @Test
+    public void createBooksReturnsErrorsWhenDatabaseIsClosed() {
+        this.dao.close();
+        ArrayList<Result<String, Integer>> results = this.dao.createBooks(Arrays.asList(
+                new BookModel(0, "Hello Ruby!", "", "Linda Liukas", "032-135522-K")));
+
+        assertTrue(results.get(0).isError());
+    }
+
+    @Test
+    public void createBookWithCoursesLinksBookToAllCourses() {
+        this.courseDao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        this.courseDao.createCourse("TKT20007", "Ohjelmistotuotantoprojekti");
+        int first = this.courseDao.getCourses().get(0).getId();
+        int second = this.courseDao.getCourses().get(1).getId();
+
+        assertTrue(this.dao.createBook("Clean Code", "", "Robert Martin", "978-0132350884",
+                new int[] {first, second}).isValue());
+
+        assertEquals(1, this.dao.getCourseBooks(first).size());
+        assertEquals(1, this.dao.getCourseBooks(second).size());
+    }
+
+    @Test
+    public void createBookWithCoursesWritesNothingIfLinkingFails() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + testDatabaseFile.getAbsolutePath());
+        connection.createStatement().executeUpdate("DROP TABLE courseBook");
+        connection.close();
+
+        assertTrue(this.dao.createBook("Clean Code", "", "Robert Martin", "978-0132350884",
+                new int[] {1}).isError());
+        assertEquals(0, this.dao.getBooks().size());
+    }
+
+    @Test
+    public void createBookWithUnknownCourseReportsTheFailedLink() {
+        Result<String, Integer> result = this.dao.createBook("Clean Code", "", "Robert Martin", "978-0132350884",
+                new int[] {42});
+
+        assertEquals("kurssin liittäminen kirjaan epäonnistui", result.getError());
+        assertEquals(0, this.dao.getBooks().size());
+    }
+
+    @Test
+    public void getBooksPageContinuesFromToken() {
+        for (int i = 1; i <= 5; i++) {
+            this.dao.createBook("Kirja " + i, "", "Kirjailija", "ISBN" + i);
+        }
+        Page<BookModel> first = this.dao.getBooks(Page.Sort.ID, null, 2);
+        Page<BookModel> second = this.dao.getBooks(Page.Sort.ID, first.getNextToken(), 2);
+        Page<BookModel> last = this.dao.getBooks(Page.Sort.ID, second.getNextToken(), 2);
+
+        assertEquals("Kirja 1", first.getItems().get(0).getTitle());
+        assertEquals("Kirja 3", second.getItems().get(0).getTitle());
+        assertEquals(1, last.getItems().size());
+        assertEquals("Kirja 5", last.getItems().get(0).getTitle());
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    public void getBooksPageSortsByTitle() {
+        this.dao.createBook("C", "", "Kirjailija", "1");
+        this.dao.createBook("A", "", "Kirjailija", "2");
+        this.dao.createBook("B", "", "Kirjailija", "3");
+
+        Page<BookModel> first = this.dao.getBooks(Page.Sort.TITLE, null, 2);
+        Page<BookModel> second = this.dao.getBooks(Page.Sort.TITLE, first.getNextToken(), 2);
+
+        assertEquals("A", first.getItems().get(0).getTitle());
+        assertEquals("B", first.getItems().get(1).getTitle());
+        assertEquals("C", second.getItems().get(0).getTitle());
+        assertFalse(second.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getBooksPageRejectsTokenOfOtherSort() {
+        this.dao.createBook("A", "", "Kirjailija", "1");
+        this.dao.createBook("B", "", "Kirjailija", "2");
+        String token = this.dao.getBooks(Page.Sort.ID, null, 1).getNextToken();
+        this.dao.getBooks(Page.Sort.TITLE, token, 1);
+    }
+
+    @Test
+    public void streamBooksReturnsAllBooksInIdOrder() {
+        for (int i = 1; i <= 5; i++) {
+            this.dao.createBook("Kirja " + i, "", "Kirjailija", "ISBN" + i);
+        }
+        Stream<BookModel> books = this.dao.streamBooks(2);
+        try {
+            assertEquals(Arrays.asList("Kirja 1", "Kirja 2", "Kirja 3", "Kirja 4", "Kirja 5"),
+                    books.map(BookModel::getTitle).collect(Collectors.toList()));
+        } finally {
+            books.close();
+        }
+    }
+
+    @Test
+    public void closingPartiallyReadStreamReleasesConnection() {
+        this.dao.createBook("Kirja 1", "", "Kirjailija", "1");
+        this.dao.createBook("Kirja 2", "", "Kirjailija", "2");
+        Stream<BookModel> books = this.dao.streamBooks(1);
+        assertEquals("Kirja 1", books.findFirst().get().getTitle());
+        books.close();
+
+        assertTrue(this.dao.deleteBook(1));
+        assertEquals(1, this.dao.getBooks().size());
+    }
 }
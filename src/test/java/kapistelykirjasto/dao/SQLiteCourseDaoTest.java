@@ -11,6 +11,7 @@ import java.sql.*;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class SQLiteCourseDaoTest {
@@ -51,8 +52,22 @@ public class SQLiteCourseDaoTest {
         assertTrue(dao.getCourses().get(0).getName().equals("refaktoroinnin perusteet"));
     }
 
+    @Test
+    public void insertCourseReturnsTheIdOfTheNewCourse() {
+        this.dao.createCourse("TKT123", "refaktoroinnin perusteet");
+        int id = this.dao.insertCourse("TKT124", "testauksen perusteet").getValue();
+
+        assertEquals(id, dao.getCourses().get(1).getId());
+        assertEquals("testauksen perusteet", dao.getCourses().get(1).getName());
+    }
+
     @Test
     public void addBookCourseRelationAddsRowToRelationTable() throws SQLException {
+        this.dao.createCourse("TKT123", "refaktoroinnin perusteet");
+        SQLiteBookDao bookDao = new SQLiteBookDao(testDatabaseFile.getAbsolutePath());
+        bookDao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+        bookDao.createBook("Clean Code", "", "Robert Martin", "978-0132350884");
+        bookDao.close();
         this.dao.addBookCourseRelation(1, 2);
 
         Connection connection = DriverManager.getConnection("jdbc:sqlite:" + testDatabaseFile.getAbsolutePath());
@@ -70,6 +85,11 @@ public class SQLiteCourseDaoTest {
 
     @Test
     public void addVideoCourseRelationAddsRowToRelationTable() throws SQLException {
+        this.dao.createCourse("TKT123", "refaktoroinnin perusteet");
+        SQLiteVideoDao videoDao = new SQLiteVideoDao(testDatabaseFile.getAbsolutePath());
+        videoDao.createVideo("Visualization of Quick sort", "", "https://www.youtube.com/watch?v=vxENKlcs2Tw", "2:56");
+        videoDao.createVideo("Crash Course Computer Science Preview", "", "https://youtu.be/tpIctyqH29Q", "2:44");
+        videoDao.close();
         this.dao.addVideoCourseRelation(1, 2);
         Connection connection = DriverManager.getConnection("jdbc:sqlite:" + testDatabaseFile.getAbsolutePath());
         Statement statement = connection.createStatement();
@@ -100,4 +120,12 @@ public class SQLiteCourseDaoTest {
         assertTrue(courses.get(1).getName().equals("refaktoroinnin jatkokurssi"));
     }
 
+    @Test
+    public void addBookCourseRelationFailsForUnknownCourse() {
+        SQLiteBookDao bookDao = new SQLiteBookDao(testDatabaseFile.getAbsolutePath());
+        bookDao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+        bookDao.close();
+
+        assertFalse(this.dao.addBookCourseRelation(1, 1));
+    }
 }
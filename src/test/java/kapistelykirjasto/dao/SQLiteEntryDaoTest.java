@@ -0,0 +1,151 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.Model;
+import kapistelykirjasto.dao.models.SearchResultModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class SQLiteEntryDaoTest {
+
+    private ConnectionProvider connections;
+    private SQLiteBookDao bookDao;
+    private SQLiteVideoDao videoDao;
+    private SQLiteCourseDao courseDao;
+    private SQLiteEntryDao dao;
+    private final File testDatabaseFile = new File("test_database.db");
+
+    @Before
+    public void setUp() throws IOException {
+        assertTrue(testDatabaseFile.createNewFile());
+        this.connections = new ConnectionProvider(testDatabaseFile.getAbsolutePath());
+        this.bookDao = new SQLiteBookDao(connections);
+        this.videoDao = new SQLiteVideoDao(connections);
+        this.courseDao = new SQLiteCourseDao(connections);
+        this.dao = new SQLiteEntryDao(connections);
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+        assertTrue(testDatabaseFile.delete());
+    }
+
+    @Test
+    public void getEntriesOrdersBooksAndVideosByTitle() {
+        this.bookDao.createBook("B", "", "Kirjailija", "1");
+        this.videoDao.createVideo("A", "", "https://example.com/a", "1:00");
+        this.bookDao.createBook("C", "", "Kirjailija", "2");
+
+        ArrayList<Model> entries = this.dao.getEntries(EntryDao.Order.TITLE);
+
+        assertEquals(3, entries.size());
+        assertEquals("A", entries.get(0).getTitle());
+        assertTrue(entries.get(0) instanceof VideoModel);
+        assertEquals("https://example.com/a", ((VideoModel) entries.get(0)).getUrl());
+        assertTrue(entries.get(1) instanceof BookModel);
+        assertEquals("Kirjailija", ((BookModel) entries.get(1)).getAuthor());
+        assertEquals("C", entries.get(2).getTitle());
+    }
+
+    @Test
+    public void getEntriesOrdersByCreationTime() {
+        this.bookDao.createBook("B", "", "Kirjailija", "1");
+        this.videoDao.createVideo("A", "", "https://example.com/a", "");
+
+        ArrayList<Model> entries = this.dao.getEntries(EntryDao.Order.CREATED);
+
+        assertEquals("B", entries.get(0).getTitle());
+        assertEquals("A", entries.get(1).getTitle());
+    }
+
+    @Test
+    public void getReadEntriesListsReadBooksAndVideos() {
+        this.bookDao.createBook("Kirja", "", "Kirjailija", "1");
+        this.bookDao.createBook("Lukematon", "", "Kirjailija", "2");
+        this.videoDao.createVideo("Video", "", "https://example.com", "");
+        this.bookDao.markBookAsRead(1);
+        this.videoDao.markVideoAsRead(1);
+
+        assertEquals(2, this.dao.getReadEntries(EntryDao.Order.READ).size());
+        assertEquals(1, this.dao.getNotReadEntries(EntryDao.Order.READ).size());
+        assertEquals("Lukematon", this.dao.getNotReadEntries(EntryDao.Order.TITLE).get(0).getTitle());
+    }
+
+    @Test
+    public void getEntriesInReadOrderListsUnreadLast() {
+        this.bookDao.createBook("Lukematon", "", "Kirjailija", "1");
+        this.videoDao.createVideo("Video", "", "https://example.com", "");
+        this.videoDao.markVideoAsRead(1);
+
+        ArrayList<Model> entries = this.dao.getEntries(EntryDao.Order.READ);
+
+        assertEquals("Video", entries.get(0).getTitle());
+        assertEquals("Lukematon", entries.get(1).getTitle());
+    }
+
+    @Test
+    public void getCourseEntriesListsOnlyLinkedEntries() {
+        this.courseDao.createCourse("TKT20003", "Käyttöjärjestelmät");
+        this.bookDao.createBook("Kurssikirja", "", "Kirjailija", "1", new int[] {1});
+        this.bookDao.createBook("Muu kirja", "", "Kirjailija", "2");
+        this.videoDao.createVideo("Kurssivideo", "", "https://example.com", "", new int[] {1});
+
+        ArrayList<Model> entries = this.dao.getCourseEntries(1, EntryDao.Order.TITLE);
+
+        assertEquals(2, entries.size());
+        assertEquals("Kurssikirja", entries.get(0).getTitle());
+        assertEquals("Kurssivideo", entries.get(1).getTitle());
+    }
+
+    @Test
+    public void searchFindsBooksAndVideosByWordPrefix() {
+        this.bookDao.createBook("Hello Ruby!", "Sopii lapsille", "Linda Liukas", "1");
+        this.videoDao.createVideo("Ruby on Rails", "", "https://example.com", "");
+        this.bookDao.createBook("Clean Code", "", "Robert Martin", "2");
+
+        ArrayList<SearchResultModel> results = this.dao.search("rub", 10);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).getSnippet().contains("[Ruby]"));
+    }
+
+    @Test
+    public void searchMatchesAuthorAndCommentWithoutDiacritics() {
+        this.bookDao.createBook("Hello Ruby!", "Sopii lapsille", "Linda Liukas", "1");
+        this.videoDao.createVideo("Quick sort", "Selkeä esitys", "https://example.com", "");
+
+        assertEquals("Hello Ruby!", this.dao.search("liukas", 10).get(0).getEntry().getTitle());
+        assertTrue(this.dao.search("selkea", 10).get(0).getEntry() instanceof VideoModel);
+    }
+
+    @Test
+    public void searchFollowsEditsAndDeletes() {
+        this.bookDao.createBook("Vanha nimi", "", "Kirjailija", "1");
+        this.videoDao.createVideo("Video", "", "https://example.com", "");
+        this.bookDao.editBook(1, "Uusi nimi", "", "Kirjailija", "1");
+        this.videoDao.deleteVideo(1);
+
+        assertEquals(0, this.dao.search("vanha", 10).size());
+        assertEquals(1, this.dao.search("uusi", 10).size());
+        assertEquals(0, this.dao.search("video", 10).size());
+    }
+
+    @Test
+    public void searchIgnoresQuerySyntaxAndRespectsLimit() {
+        this.bookDao.createBook("C++ \"NOT\" OR", "", "Kirjailija", "1");
+        this.bookDao.createBook("C# perusteet", "", "Kirjailija", "2");
+
+        assertEquals(1, this.dao.search("c \"not\" (or", 10).size());
+        assertEquals(1, this.dao.search("c", 1).size());
+        assertEquals(0, this.dao.search("*\"", 10).size());
+    }
+}
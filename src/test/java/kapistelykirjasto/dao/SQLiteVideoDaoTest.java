@@ -1,5 +1,9 @@
 package kapistelykirjasto.dao;
 
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import java.util.Arrays;
+import java.util.ArrayList;
 import kapistelykirjasto.dao.models.VideoModel;
 import org.junit.After;
 import org.junit.Before;
@@ -162,4 +166,52 @@ public class SQLiteVideoDaoTest {
         assertEquals(this.dao.getCourseVideos(courseId).size(), 1);
     }
 
+    @Test
+    public void createVideosReportsDuplicateTitleOnlyForItsOwnRow() {
+        ArrayList<Result<String, Integer>> results = this.dao.createVideos(Arrays.asList(
+                new VideoModel(0, "Visualization of Quick sort", "", "https://www.youtube.com/watch?v=vxENKlcs2Tw", "2:56"),
+                new VideoModel(0, "Visualization of Quick sort", "", "https://www.youtube.com/", "2:56"),
+                new VideoModel(0, "Crash Course Computer Science Preview", "", "https://youtu.be/tpIctyqH29Q", "2:44")));
+
+        assertTrue(results.get(0).isValue());
+        assertTrue(results.get(1).isError());
+        assertEquals(this.dao.getVideos().get(1).getId(), (int) results.get(2).getValue());
+        assertEquals(2, this.dao.getVideos().size());
+    }
+
+    @Test
+    public void createVideoWithCoursesLinksVideoToCourse() {
+        this.courseDao.createCourse("TKT10001", "Johdatus tietojenkäsittelytieteeseen");
+        int courseId = this.courseDao.getCourses().get(0).getId();
+
+        assertTrue(this.dao.createVideo("Crash Course Computer Science Preview", "",
+                "https://youtu.be/tpIctyqH29Q", "2:44", new int[] {courseId}).isValue());
+
+        assertEquals(1, this.dao.getCourseVideos(courseId).size());
+    }
+
+    @Test
+    public void createVideoWithUnknownCourseReportsTheFailedLink() {
+        Result<String, Integer> result = this.dao.createVideo("Crash Course Computer Science Preview", "",
+                "https://youtu.be/tpIctyqH29Q", "2:44", new int[] {42});
+
+        assertEquals("kurssin liittäminen kirjaan epäonnistui", result.getError());
+        assertEquals(0, this.dao.getVideos().size());
+    }
+
+    @Test
+    public void getVideosPageReturnsEveryVideoOnce() {
+        for (int i = 1; i <= 5; i++) {
+            this.dao.createVideo("Video " + i, "", "https://example.com/" + i, "");
+        }
+        ArrayList<String> titles = new ArrayList<>();
+        String token = null;
+        do {
+            Page<VideoModel> page = this.dao.getVideos(Page.Sort.TITLE, token, 2);
+            page.getItems().forEach(video -> titles.add(video.getTitle()));
+            token = page.getNextToken();
+        } while (token != null);
+
+        assertEquals(Arrays.asList("Video 1", "Video 2", "Video 3", "Video 4", "Video 5"), titles);
+    }
 }
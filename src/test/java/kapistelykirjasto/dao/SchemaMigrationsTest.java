@@ -0,0 +1,82 @@
+package kapistelykirjasto.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigrationsTest {
+
+    private Connection connection;
+    private final File testDatabaseFile = new File("test_database.db");
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        assertTrue(testDatabaseFile.createNewFile());
+        this.connection = DriverManager.getConnection("jdbc:sqlite:" + testDatabaseFile.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        this.connection.close();
+        assertTrue(testDatabaseFile.delete());
+    }
+
+    @Test
+    public void migrateBringsEmptyDatabaseToLatestVersion() throws SQLException {
+        assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.migrate(connection));
+        assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.currentVersion(connection));
+    }
+
+    @Test
+    public void migrateAppliesEachMigrationOnlyOnce() throws SQLException {
+        SchemaMigrations.migrate(connection);
+        SchemaMigrations.migrate(connection);
+
+        int rows = Util.query(connection, "SELECT COUNT(*) FROM schema_version;", rs -> rs.getInt(1)).get(0);
+        assertEquals(SchemaMigrations.latestVersion(), rows);
+    }
+
+    @Test
+    public void migrateKeepsDataOfDatabaseCreatedBeforeMigrations() throws SQLException {
+        Util.execute(connection,
+                "CREATE TABLE book (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT UNIQUE, comment TEXT"
+                + ", author TEXT, ISBN TEXT, read TIMESTAMP DEFAULT NULL);",
+                "CREATE TABLE course (id INTEGER PRIMARY KEY AUTOINCREMENT, coursecode TEXT, name TEXT);",
+                "CREATE TABLE courseBook (courseId INTEGER, bookId INTEGER);",
+                "INSERT INTO book(title) VALUES('Hello Ruby!');",
+                "INSERT INTO course(coursecode, name) VALUES('TKT20006', 'Ohjelmistotuotanto');",
+                "INSERT INTO courseBook VALUES(1, 1);",
+                "INSERT INTO courseBook VALUES(1, 1);",
+                "INSERT INTO courseBook VALUES(1, 7);");
+
+        SchemaMigrations.migrate(connection);
+
+        assertEquals(1, (int) Util.query(connection, "SELECT COUNT(*) FROM book;", rs -> rs.getInt(1)).get(0));
+        assertEquals(1, (int) Util.query(connection, "SELECT COUNT(*) FROM courseBook;", rs -> rs.getInt(1)).get(0));
+    }
+
+    @Test
+    public void courseListingUsesPrimaryKeyAndDeletesCascade() throws SQLException {
+        ConnectionProvider connections = new ConnectionProvider(testDatabaseFile.getAbsolutePath());
+        SQLiteBookDao bookDao = new SQLiteBookDao(connections);
+        SQLiteCourseDao courseDao = new SQLiteCourseDao(connections);
+        courseDao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        int bookId = bookDao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K", new int[] {1}).getValue();
+
+        String plan = String.join(" ", Util.query(connection,
+                "EXPLAIN QUERY PLAN SELECT bookId FROM courseBook WHERE courseId=1;", rs -> rs.getString("detail")));
+        assertTrue(plan, plan.contains("PRIMARY KEY") || plan.contains("INDEX"));
+
+        assertTrue(bookDao.deleteBook(bookId));
+        assertEquals(0, (int) Util.query(connection, "SELECT COUNT(*) FROM courseBook;", rs -> rs.getInt(1)).get(0));
+        connections.close();
+    }
+}
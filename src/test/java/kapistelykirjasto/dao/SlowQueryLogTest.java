@@ -0,0 +1,83 @@
+package kapistelykirjasto.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class SlowQueryLogTest {
+
+    private Path directory;
+    private Path logFile;
+    private ConnectionProvider connections;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("slow-query-log");
+        this.logFile = directory.resolve("slow.log");
+        this.connections = new ConnectionProvider(":memory:");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.connections.close();
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void statementsOverThresholdAreLoggedWithParametersAndPlan() throws IOException {
+        SlowQueryLog log = new SlowQueryLog(logFile, 0);
+        this.connections.setSlowQueryLog(log);
+        SQLiteBookDao dao = new SQLiteBookDao(connections);
+        dao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+        dao.getCourseBooks(7);
+        log.close();
+
+        String logged = read(logFile);
+        assertTrue(logged.contains("SQL: INSERT INTO book"));
+        assertTrue(logged.contains("parametrit: [Hello Ruby!, , Linda Liukas, 032-135522-K]"));
+        assertTrue(logged.contains("parametrit: [7]"));
+        assertTrue(logged.contains("SEARCH TABLE courseBook AS c USING PRIMARY KEY (courseId=?)"));
+    }
+
+    @Test
+    public void fastStatementsAreNotLogged() {
+        SlowQueryLog log = new SlowQueryLog(logFile, 60000);
+        this.connections.setSlowQueryLog(log);
+        new SQLiteBookDao(connections).getBooks();
+        log.close();
+
+        assertEquals(0, log.getLoggedCount());
+        assertFalse(Files.exists(logFile));
+    }
+
+    @Test
+    public void logIsRotatedWhenItGrowsOverMaxSize() {
+        SlowQueryLog log = new SlowQueryLog(logFile, 0, 100, 2);
+        this.connections.setSlowQueryLog(log);
+        SQLiteBookDao dao = new SQLiteBookDao(connections);
+        for (int i = 0; i < 10; i++) {
+            dao.getBooks();
+        }
+        log.close();
+
+        assertTrue(Files.exists(logFile));
+        assertTrue(Files.exists(Paths.get(logFile + ".1")));
+        assertTrue(Files.exists(Paths.get(logFile + ".2")));
+        assertFalse(Files.exists(Paths.get(logFile + ".3")));
+    }
+}
@@ -0,0 +1,163 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.CourseModel;
+import kapistelykirjasto.dao.models.Model;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    private Path directory;
+    private Path file;
+    private ConnectionProvider connections;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("snapshot");
+        this.file = directory.resolve("library.snapshot");
+        this.connections = new ConnectionProvider(":memory:");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.connections.close();
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static List<String> titles(List<? extends Model> models) {
+        ArrayList<String> titles = new ArrayList<>();
+        for (Model model : models) {
+            titles.add(model.getTitle());
+        }
+        return titles;
+    }
+
+    private long changes() throws SQLException {
+        return this.connections.read(SchemaMigrations::changeCount);
+    }
+
+    /**
+     * Books 1 and 3, of which 1 has no comment, 3 is read and on course 1.
+     */
+    private static MemoryTable<BookModel> books() {
+        MemoryTable<BookModel> table = new MemoryTable<>("book");
+        for (int id = 1; id <= 3; id++) {
+            table.put(new BookModel(id, "Kirja " + id, id == 1 ? null : "ÄÖ", "Kirjailija", "1"), 100 + id, 0);
+        }
+        table.remove(2);
+        table.markRead(3, 500);
+        table.link(1, 3);
+        return table;
+    }
+
+    @Test
+    public void snapshotKeepsRowsTimesAndLinks() throws IOException {
+        List<CourseModel> courses = Collections.singletonList(new CourseModel(1, "TKT20006", null));
+        new Snapshot(7, courses, books().capture(), new MemoryTable<>("video").capture()).write(file);
+
+        assertNull(Snapshot.read(file, 8));
+        Snapshot read = Snapshot.read(file, 7);
+        MemoryTable<BookModel> restored = new MemoryTable<>("book");
+        restored.restore(read.books);
+
+        assertEquals(7, read.changes);
+        assertNull(read.courses.get(0).getName());
+        assertEquals(Arrays.asList("Kirja 1", "Kirja 3"), titles(restored.list(MemoryTable.Filter.ALL, 0)));
+        assertNull(restored.list(MemoryTable.Filter.ALL, 0).get(0).getComment());
+        assertEquals("ÄÖ", restored.list(MemoryTable.Filter.COURSE, 1).get(0).getComment());
+        assertEquals(500, restored.rows(MemoryTable.Filter.READ, 0).get(0).read);
+        assertEquals(101, restored.rows(MemoryTable.Filter.NOT_READ, 0).get(0).created);
+        assertTrue(read.videos.rows.isEmpty());
+        assertFalse(Files.exists(directory.resolve("library.snapshot.tmp")));
+    }
+
+    /**
+     * Fills the database with books 1 and 3 (read) and a video, the first book and the
+     * video on course 1.
+     */
+    private void fillDatabase() {
+        SQLiteBookDao books = new SQLiteBookDao(connections);
+        new SQLiteCourseDao(connections).createCourse("TKT20006", "Ohjelmistotuotanto");
+        books.createBook("Käyttöjärjestelmät", null, "Kirjailija", "1", new int[] {1});
+        books.createBook("Poistettu", "", "Kirjailija", "2");
+        books.createBook("Luettu", "kommentti", "Kirjailija", "3");
+        books.deleteBook(2);
+        books.markBookAsRead(3);
+        new SQLiteVideoDao(connections).createVideo("Video", "", "https://example.com", "1:00", new int[] {1});
+    }
+
+    @Test
+    public void loadedDaoStartsFromAnUpToDateSnapshot() throws IOException, SQLException {
+        fillDatabase();
+        MemoryDao.load(connections).snapshot(file);
+
+        // a snapshot with the same counter is trusted as is, so a different one shows that it was used
+        List<CourseModel> courses = Collections.singletonList(new CourseModel(1, "TKT20006", "Vain tilannekuvassa"));
+        Snapshot saved = Snapshot.read(file, changes());
+        new Snapshot(saved.changes, courses, saved.books, saved.videos).write(file);
+        MemoryDao loaded = MemoryDao.load(connections, file);
+
+        assertEquals("Vain tilannekuvassa", loaded.getCourses().get(0).getName());
+        assertEquals(Arrays.asList("Käyttöjärjestelmät", "Luettu"), titles(loaded.getBooks()));
+        assertNull(loaded.getBooks().get(0).getComment());
+        assertEquals(Arrays.asList("Luettu"), titles(loaded.getReadBooks()));
+        assertEquals(Arrays.asList("Käyttöjärjestelmät", "Video"),
+                titles(loaded.getCourseEntries(1, EntryDao.Order.TITLE)));
+        assertEquals(4, (int) loaded.createBook("Uusi", "", "Kirjailija", "4").getValue());
+    }
+
+    @Test
+    public void staleSnapshotFallsBackToTheDatabase() throws IOException, SQLException {
+        SQLiteBookDao books = new SQLiteBookDao(connections);
+        books.createBook("Kirja", "", "Kirjailija", "1");
+        MemoryDao.load(connections).snapshot(file);
+        books.editBook(1, "Muokattu", "", "Kirjailija", "1");
+
+        assertNull(Snapshot.read(file, changes()));
+        assertEquals(Arrays.asList("Muokattu"), titles(MemoryDao.load(connections, file).getBooks()));
+    }
+
+    @Test
+    public void corruptSnapshotIsNotRead() throws IOException, SQLException {
+        new SQLiteBookDao(connections).createBook("Kirja", "", "Kirjailija", "1");
+        MemoryDao.load(connections).snapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 12] ^= 1;
+        Files.write(file, bytes);
+
+        assertNull(Snapshot.read(file, changes()));
+        assertNull(Snapshot.read(directory.resolve("puuttuu"), changes()));
+        assertEquals(Arrays.asList("Kirja"), titles(MemoryDao.load(connections, file).getBooks()));
+    }
+
+    @Test
+    public void closingWritesTheLastChanges() throws IOException, SQLException {
+        MemoryDao dao = MemoryDao.load(connections, file);
+        dao.startSnapshots(file, 60_000);
+        dao.createCourse("TKT20006", "Ohjelmistotuotanto");
+        dao.createBook("Kirja", "", "Kirjailija", "1", new int[] {1});
+        dao.close();
+
+        Snapshot snapshot = Snapshot.read(file, changes());
+        assertNotNull(snapshot);
+        assertEquals("Kirja", snapshot.books.rows.get(0).model.getTitle());
+        assertEquals(1, snapshot.books.links.size());
+        assertEquals(Arrays.asList("Kirja"), titles(MemoryDao.load(connections, file).getCourseBooks(1)));
+    }
+}
@@ -0,0 +1,82 @@
+package kapistelykirjasto.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class StatementCacheTest {
+
+    private Connection connection;
+    private StatementCache.Statistics statistics;
+
+    @Before
+    public void setUp() throws SQLException {
+        this.statistics = new StatementCache.Statistics();
+        this.connection = StatementCache.wrap(DriverManager.getConnection("jdbc:sqlite::memory:"), 2, statistics);
+        Util.execute(connection, "CREATE TABLE book (id INTEGER PRIMARY KEY, title TEXT);");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        this.connection.close();
+    }
+
+    @Test
+    public void sameSqlIsPreparedOnlyOnce() throws SQLException {
+        Util.update(connection, "INSERT INTO book(title) VALUES(?);", "Hello Ruby!");
+        Util.update(connection, "INSERT INTO book(title) VALUES(?);", "Clean Code");
+
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, Util.query(connection, "SELECT * FROM book", rs -> rs.getString("title")).size());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        Util.exists(connection, "SELECT * FROM book WHERE id=?;", 1);
+        Util.exists(connection, "SELECT * FROM book WHERE title=?;", "a");
+        Util.exists(connection, "SELECT * FROM book WHERE id=?;", 1);
+        Util.exists(connection, "SELECT id FROM book;");
+
+        assertEquals(1, statistics.getEvictions());
+        Util.exists(connection, "SELECT * FROM book WHERE id=?;", 1);
+        assertEquals(2, statistics.getHits());
+    }
+
+    @Test
+    public void statementInUseIsNotShared() throws SQLException {
+        PreparedStatement outer = connection.prepareStatement("SELECT * FROM book");
+        PreparedStatement inner = connection.prepareStatement("SELECT * FROM book");
+
+        assertNotSame(outer, inner);
+        inner.close();
+        outer.close();
+        assertSame(outer, connection.prepareStatement("SELECT * FROM book"));
+    }
+
+    @Test
+    public void cachedReaderStatementsDoNotBlockWriter() throws SQLException, IOException {
+        File file = new File("test_database.db");
+        assertTrue(file.createNewFile());
+        ConnectionProvider connections = new ConnectionProvider(file.getAbsolutePath(), 1, 100);
+        SQLiteBookDao dao = new SQLiteBookDao(connections);
+        dao.createBook("Hello Ruby!", "", "Linda Liukas", "032-135522-K");
+        dao.createBook("Clean Code", "", "Robert Martin", "978-0132350884");
+
+        connections.read(reader -> Util.exists(reader, "SELECT * FROM book"));
+
+        assertTrue(dao.markBookAsRead(dao.getBooks().get(0).getId()));
+        assertTrue(connections.getStatementCacheStatistics().getHits() > 0);
+        connections.close();
+        assertTrue(file.delete());
+    }
+}
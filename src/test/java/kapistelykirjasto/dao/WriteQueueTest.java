@@ -0,0 +1,142 @@
+package kapistelykirjasto.dao;
+
+import kapistelykirjasto.util.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class WriteQueueTest {
+
+    private ConnectionProvider connections;
+    private WriteQueue queue;
+    private SQLiteBookDao dao;
+    private final File testDatabaseFile = new File("test_database.db");
+
+    @Before
+    public void setUp() throws IOException {
+        assertTrue(testDatabaseFile.createNewFile());
+        this.connections = new ConnectionProvider(testDatabaseFile.getAbsolutePath(), DatabaseProfile.BALANCED);
+        this.dao = new SQLiteBookDao(connections);
+        this.queue = connections.startWriteQueue();
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+        new File(testDatabaseFile.getAbsolutePath() + "-wal").delete();
+        new File(testDatabaseFile.getAbsolutePath() + "-shm").delete();
+        assertTrue(testDatabaseFile.delete());
+    }
+
+    /**
+     * Keeps the writer thread busy until the returned latch is opened, so that the writes
+     * submitted meanwhile wait in the queue.
+     */
+    private CountDownLatch blockWriter() throws SQLException, InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.submit(connection -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        started.await();
+        return latch;
+    }
+
+    @Test
+    public void waitingWritesShareOneCommit() throws Exception {
+        CountDownLatch latch = blockWriter();
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<Result<String, Integer>>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String title = "Kirja " + i;
+            results.add(writers.submit(() -> dao.createBook(title, "", "Kirjailija", "1")));
+        }
+        Thread.sleep(200);
+        latch.countDown();
+        for (Future<Result<String, Integer>> result : results) {
+            assertTrue(result.get().isValue());
+        }
+        writers.shutdown();
+
+        assertEquals(8, dao.getBooks().size());
+        assertEquals(9, queue.getRequestCount());
+        assertEquals(2, queue.getCommitCount());
+    }
+
+    private CompletableFuture<Integer> insert(String title) throws SQLException {
+        return queue.submit(connection -> Util.update(connection, "INSERT INTO book(title) VALUES (?)", title));
+    }
+
+    private static void assertFailsWith(String message, Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void failedRequestIsRolledBackAlone() throws Exception {
+        CountDownLatch latch = blockWriter();
+        CompletableFuture<Integer> first = insert("Ensimmäinen");
+        CompletableFuture<Integer> failing = queue.submit(connection -> {
+            Util.update(connection, "INSERT INTO book(title) VALUES ('Peruttu')");
+            throw new SQLException("virhe");
+        });
+        CompletableFuture<Integer> last = insert("Viimeinen");
+        latch.countDown();
+
+        assertEquals(1, (int) first.get());
+        assertEquals(1, (int) last.get());
+        assertFailsWith("virhe", failing);
+        assertEquals(2, dao.getBooks().size());
+        assertEquals(2, queue.getCommitCount());
+    }
+
+    @Test
+    public void daoGetsItsOwnErrorResult() {
+        assertTrue(dao.createBook("Kirja", "", "Kirjailija", "1").isValue());
+
+        assertTrue(dao.createBook("Kirja", "", "Kirjailija", "1").isError());
+        assertTrue(dao.markBookAsRead(1));
+        assertEquals(1, dao.getReadBooks().size());
+    }
+
+    @Test
+    public void queuedWritesAreCommittedOnClose() throws Exception {
+        CountDownLatch latch = blockWriter();
+        CompletableFuture<Integer> write = queue.submit(connection -> Util.update(connection,
+                "INSERT INTO book(title) VALUES ('Kirja')"));
+        new Thread(latch::countDown).start();
+        connections.close();
+
+        assertEquals(1, (int) write.get());
+        try {
+            queue.submit(connection -> null);
+            fail();
+        } catch (SQLException e) {
+            assertEquals("database connection closed", e.getMessage());
+        }
+    }
+}
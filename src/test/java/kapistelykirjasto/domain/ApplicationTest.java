@@ -1,11 +1,22 @@
 package kapistelykirjasto.domain;
 
 import kapistelykirjasto.dao.StubDao;
+import kapistelykirjasto.dao.models.BookModel;
+import kapistelykirjasto.dao.models.VideoModel;
+import kapistelykirjasto.util.Flow;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import kapistelykirjasto.util.Threads;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -318,4 +329,229 @@ public class ApplicationTest {
         assertEquals(2,courseEntries.size());
         assertEquals("Visualization of Quick sort", courseEntries.get(1).getTitle());
     }
+
+    @Test
+    public void createBooksReturnsErrorForInvalidRowsAndCreatesTheRest() {
+        List<Result<String, Integer>> results = this.logic.createBooks(Arrays.asList(
+                new BookModel(0, "Hello Ruby!", "", "Linda Liukas", "032-135522-K"),
+                new BookModel(0, "Elements of the Theory of Computation", "", "", "135-896577-E"),
+                new BookModel(0, "Database System Concepts", "", "Henry F. Fort", "007-124476-X")));
+
+        assertTrue(results.get(0).isValue());
+        assertTrue(results.get(1).isError());
+        assertTrue(results.get(2).isValue());
+        assertEquals(2, this.logic.getBooks().size());
+    }
+
+    @Test
+    public void createVideosReturnsErrorForVideoWithoutUrl() {
+        List<Result<String, Integer>> results = this.logic.createVideos(Arrays.asList(
+                new VideoModel(0, "Visualization of Quick sort", "", "", "2:56"),
+                new VideoModel(0, "Crash Course Computer Science Preview", "", "https://youtu.be/tpIctyqH29Q", "2:44")));
+
+        assertTrue(results.get(0).isError());
+        assertTrue(results.get(1).isValue());
+        assertEquals(1, this.logic.getVideos().size());
+    }
+
+    @Test
+    public void getEntriesPageMergesBooksAndVideosByTitle() {
+        this.logic.createBook("B", "", "Kirjailija", "1");
+        this.logic.createBook("D", "", "Kirjailija", "2");
+        this.logic.createVideo("A", "", "https://example.com/a", "");
+        this.logic.createVideo("C", "", "https://example.com/c", "");
+        this.logic.createVideo("E", "", "https://example.com/e", "");
+
+        ArrayList<String> titles = new ArrayList<>();
+        String token = null;
+        do {
+            Page<Entry> page = this.logic.getEntries(Page.Sort.TITLE, token, 2);
+            assertTrue(page.getItems().size() <= 2);
+            page.getItems().forEach(entry -> titles.add(entry.getTitle()));
+            token = page.getNextToken();
+        } while (token != null);
+
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), titles);
+    }
+
+    @Test
+    public void getEntriesPageListsBookAndVideoWithSameIdSeparately() {
+        this.logic.createBook("Kirja", "", "Kirjailija", "1");
+        this.logic.createVideo("Video", "", "https://example.com", "");
+
+        Page<Entry> first = this.logic.getEntries(Page.Sort.ID, null, 1);
+        Page<Entry> second = this.logic.getEntries(Page.Sort.ID, first.getNextToken(), 1);
+
+        assertEquals(Entry.Type.BOOK, first.getItems().get(0).getType());
+        assertEquals(Entry.Type.VIDEO, second.getItems().get(0).getType());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    public void streamEntriesReturnsBooksThenVideos() {
+        this.logic.createVideo("Video", "", "https://example.com", "");
+        this.logic.createBook("Kirja", "", "Kirjailija", "1");
+
+        ArrayList<Entry> entries = new ArrayList<>();
+        this.logic.streamEntries().forEach(entries::add);
+
+        assertEquals(2, entries.size());
+        assertEquals(Entry.Type.BOOK, entries.get(0).getType());
+        assertEquals(Entry.Type.VIDEO, entries.get(1).getType());
+    }
+
+    /**
+     * Holds each page load until both the book and the video load have started, and
+     * records whether they did so before the timeout.
+     */
+    private static class OverlapDao extends StubDao {
+
+        private final CountDownLatch started = new CountDownLatch(2);
+        private volatile boolean booksOverlapped;
+        private volatile boolean videosOverlapped;
+
+        @Override
+        public Page<BookModel> getBooks(Page.Sort sort, String token, int pageSize) {
+            booksOverlapped = bothStarted();
+            return super.getBooks(sort, token, pageSize);
+        }
+
+        @Override
+        public Page<VideoModel> getVideos(Page.Sort sort, String token, int pageSize) {
+            videosOverlapped = bothStarted();
+            return super.getVideos(sort, token, pageSize);
+        }
+
+        private boolean bothStarted() {
+            started.countDown();
+            try {
+                return started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Test
+    public void getEntriesPageLoadsBooksAndVideosConcurrently() {
+        OverlapDao overlap = new OverlapDao();
+        ExecutorService executor = Threads.newExecutor(2);
+        ApplicationLogic parallel = new ApplicationLogic(overlap, overlap, overlap, overlap, executor);
+        parallel.createBook("B", "", "Kirjailija", "1");
+        parallel.createVideo("A", "", "https://example.com/a", "");
+
+        Page<Entry> page = parallel.getEntries(Page.Sort.TITLE, null, 10);
+        executor.shutdown();
+
+        assertTrue(overlap.booksOverlapped);
+        assertTrue(overlap.videosOverlapped);
+        assertEquals(2, page.getItems().size());
+        assertEquals("A", page.getItems().get(0).getTitle());
+        assertFalse(page.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getEntriesPageRejectsInvalidTokenInParallelMode() {
+        ExecutorService executor = Threads.newExecutor(2);
+        try {
+            new ApplicationLogic(dao, dao, dao, dao, executor).getEntries(Page.Sort.TITLE, "virheellinen", 10);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void versionChangesOnlyWithSuccessfulChanges() {
+        long initial = logic.getVersion();
+        logic.createBook("", "", "", "");
+        assertEquals(initial, logic.getVersion());
+        logic.createBook("Kirja", "", "Kirjailija", "1");
+        assertTrue(logic.getVersion() > initial);
+        long created = logic.getVersion();
+        assertFalse(logic.markBookAsRead(5));
+        assertEquals(created, logic.getVersion());
+    }
+
+    @Test
+    public void courseVersionChangesWithItsEntries() {
+        long first = logic.getCourseVersion(1);
+        long second = logic.getCourseVersion(2);
+        logic.createBook("Kirja", "", "Kirjailija", "1", new int[] {1});
+        assertTrue(logic.getCourseVersion(1) > first);
+        assertEquals(second, logic.getCourseVersion(2));
+        logic.markBookAsRead(0);
+        assertTrue(logic.getCourseVersion(2) > second);
+    }
+
+    private static class ChangeRecorder implements Flow.Subscriber<LibraryChange> {
+
+        private final List<LibraryChange> changes = new ArrayList<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(LibraryChange change) {
+            changes.add(change);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable.toString());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private List<LibraryChange> subscribe() {
+        ChangeRecorder recorder = new ChangeRecorder();
+        logic.getChanges().subscribe(recorder);
+        return recorder.changes;
+    }
+
+    /**
+     * Makes six successful changes and two rejected ones.
+     */
+    private void changeLibrary() {
+        logic.createCourse("TKT20006", "Ohjelmistotuotanto");
+        logic.createBook("Kirja", "", "Kirjailija", "1", new int[] {0});
+        logic.createBook("", "", "", "");
+        logic.editBook(1, "Muokattu", "", "Kirjailija", "1");
+        logic.markBookAsRead(1);
+        logic.markBookAsRead(7);
+        logic.createVideos(Arrays.asList(new VideoModel(0, "Video", "", "https://example.com", "1:00")));
+        logic.deleteEntry(logic.getBooks().get(0));
+    }
+
+    private static void assertSequences(int count, List<LibraryChange> changes) {
+        assertEquals(count, changes.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, changes.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void successfulChangesArePublishedInOrder() {
+        logic.createBook("Ennen tilausta", "", "Kirjailija", "0");
+        List<LibraryChange> changes = subscribe();
+        changeLibrary();
+
+        assertSequences(6, changes);
+        assertEquals(LibraryChange.Type.COURSE_CREATED, changes.get(0).getType());
+        assertEquals("Ohjelmistotuotanto", changes.get(0).getCourse().getName());
+        assertEquals(0, changes.get(0).getId());
+        assertEquals(LibraryChange.Type.CREATED, changes.get(1).getType());
+        assertEquals("Kirja", changes.get(1).getEntry().getTitle());
+        assertArrayEquals(new int[] {0}, changes.get(1).getCourseIds());
+        assertEquals("Muokattu", changes.get(2).getEntry().getTitle());
+        assertEquals(LibraryChange.Type.MARKED_READ, changes.get(3).getType());
+        assertEquals(Entry.Type.VIDEO, changes.get(4).getEntryType());
+        assertEquals(LibraryChange.Type.DELETED, changes.get(5).getType());
+        assertEquals(0, changes.get(5).getId());
+    }
 }
@@ -0,0 +1,73 @@
+package kapistelykirjasto.domain;
+
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.dao.StubDao;
+import kapistelykirjasto.util.Page;
+import kapistelykirjasto.util.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncApplicationTest {
+
+    private ExecutorService executor;
+    private AtomicInteger tasks;
+    private AsyncApplication app;
+
+    @Before
+    public void setUp() {
+        StubDao dao = new StubDao();
+        this.executor = Executors.newFixedThreadPool(2);
+        this.tasks = new AtomicInteger();
+        this.app = new AsyncApplicationLogic(new ApplicationLogic(dao, dao, dao, dao), task -> {
+            tasks.incrementAndGet();
+            executor.execute(task);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void callsCanBePipelined() throws Exception {
+        CompletableFuture<Result<String, Integer>> book = app.createBook("Kirja", "", "Kirjailija", "1");
+        CompletableFuture<Result<String, Integer>> video = app.createVideo("Video", "", "https://example.com",
+                "1:00");
+        CompletableFuture<ArrayList<Entry>> entries = CompletableFuture.allOf(book, video)
+                .thenCompose(created -> app.getEntries(EntryDao.Order.TITLE));
+
+        assertEquals(2, entries.get().size());
+        assertTrue(app.markBookAsRead(book.get().getValue()).get());
+        assertEquals(1, app.getReadEntries().get().size());
+    }
+
+    @Test
+    public void callsRunOnTheGivenExecutor() throws Exception {
+        app.getBooks().get();
+        app.getCourses().get();
+
+        assertEquals(2, tasks.get());
+    }
+
+    @Test
+    public void exceptionCompletesTheFutureExceptionally() throws InterruptedException {
+        CompletableFuture<Page<Entry>> page = app.getEntries(Page.Sort.ID, null, 0);
+        try {
+            page.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
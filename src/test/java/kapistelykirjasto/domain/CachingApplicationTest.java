@@ -0,0 +1,145 @@
+package kapistelykirjasto.domain;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.EntryDao;
+import kapistelykirjasto.dao.SQLiteBookDao;
+import kapistelykirjasto.dao.SQLiteCourseDao;
+import kapistelykirjasto.dao.SQLiteEntryDao;
+import kapistelykirjasto.dao.SQLiteVideoDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachingApplicationTest {
+
+    private ConnectionProvider connections;
+    private CachingApplication app;
+
+    @Before
+    public void setUp() {
+        this.connections = new ConnectionProvider(":memory:");
+        this.app = new CachingApplication(new ApplicationLogic(new SQLiteBookDao(connections),
+                new SQLiteVideoDao(connections), new SQLiteCourseDao(connections),
+                new SQLiteEntryDao(connections)), 10);
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+    }
+
+    /**
+     * Reads the version and the books through the cache after the edit is in the database
+     * but before the cache has dropped its views.
+     */
+    private static class ReadDuringEdit extends ApplicationLogic {
+
+        CachingApplication reader;
+        long versionInBetween;
+        String titleInBetween;
+
+        ReadDuringEdit(ConnectionProvider connections) {
+            super(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                    new SQLiteCourseDao(connections), new SQLiteEntryDao(connections));
+        }
+
+        @Override
+        public boolean editBook(int id, String title, String comment, String author, String ISBN) {
+            boolean edited = super.editBook(id, title, comment, author, ISBN);
+            versionInBetween = reader.getVersion();
+            titleInBetween = reader.getBooks().get(0).getTitle();
+            return edited;
+        }
+    }
+
+    @Test
+    public void versionChangesOnlyAfterTheViewsAreDropped() {
+        ReadDuringEdit logic = new ReadDuringEdit(connections);
+        logic.reader = new CachingApplication(logic, 10);
+        logic.reader.createBook("Kirja", "", "Kirjailija", "1");
+        logic.reader.getBooks();
+        long before = logic.reader.getVersion();
+        logic.reader.editBook(1, "Muokattu", "", "Kirjailija", "1");
+
+        assertEquals("Kirja", logic.titleInBetween);
+        assertEquals(before, logic.versionInBetween);
+        assertNotEquals(before, logic.reader.getVersion());
+        assertEquals("Muokattu", logic.reader.getBooks().get(0).getTitle());
+    }
+
+    @Test
+    public void repeatedReadIsServedFromCache() {
+        this.app.createBook("Kirja", "", "Kirjailija", "1");
+        assertEquals(1, this.app.getEntries().size());
+        assertEquals(1, this.app.getEntries().size());
+
+        assertEquals(1, this.app.getStatistics().getHits());
+        assertEquals(1, this.app.getStatistics().getMisses());
+    }
+
+    @Test
+    public void createInvalidatesListings() {
+        this.app.createBook("Kirja", "", "Kirjailija", "1");
+        this.app.getEntries();
+        this.app.getBooks();
+        this.app.createVideo("Video", "", "https://example.com", "");
+
+        assertEquals(2, this.app.getEntries().size());
+        assertEquals(1, this.app.getBooks().size());
+        assertEquals(1, this.app.getStatistics().getHits());
+    }
+
+    @Test
+    public void markAsReadMovesEntryBetweenViews() {
+        this.app.createBook("Kirja", "", "Kirjailija", "1");
+        assertEquals(1, this.app.getNotReadEntries().size());
+        assertEquals(0, this.app.getReadEntries().size());
+        this.app.markBookAsRead(1);
+
+        assertEquals(0, this.app.getNotReadEntries().size());
+        assertEquals(1, this.app.getReadEntries().size());
+    }
+
+    @Test
+    public void editInvalidatesOnlyViewsContainingTheEntry() {
+        this.app.createBook("Kirja", "", "Kirjailija", "1");
+        this.app.createCourse("TKT20003", "Käyttöjärjestelmät");
+        this.app.getEntries();
+        this.app.getCourseEntries(1);
+        this.app.editBook(1, "Uusi nimi", "", "Kirjailija", "1");
+
+        assertEquals("Uusi nimi", this.app.getEntries(EntryDao.Order.CREATED).get(0).getTitle());
+        assertEquals(0, this.app.getCourseEntries(1).size());
+        assertEquals(1, this.app.getStatistics().getInvalidations());
+    }
+
+    @Test
+    public void deleteRemovesEntryFromCachedViews() {
+        this.app.createBook("Kirja", "", "Kirjailija", "1");
+        this.app.getEntries();
+        assertTrue(this.app.deleteEntry(this.app.getEntries().get(0)));
+
+        assertTrue(this.app.getEntries().isEmpty());
+    }
+
+    @Test
+    public void viewsAreEvictedWhenMaxSizeIsExceeded() {
+        for (int i = 0; i < 6; i++) {
+            this.app.createBook("Kirja " + i, "", "Kirjailija", "" + i);
+        }
+        this.app.getEntries();
+        this.app.getBooks();
+
+        assertEquals(1, this.app.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void courseListIsInvalidatedByNewCourse() {
+        assertTrue(this.app.getCourses().isEmpty());
+        this.app.createCourse("TKT20003", "Käyttöjärjestelmät");
+
+        assertEquals(1, this.app.getCourses().size());
+    }
+}
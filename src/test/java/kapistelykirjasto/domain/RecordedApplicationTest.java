@@ -0,0 +1,110 @@
+package kapistelykirjasto.domain;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.SQLiteBookDao;
+import kapistelykirjasto.dao.SQLiteCourseDao;
+import kapistelykirjasto.dao.SQLiteEntryDao;
+import kapistelykirjasto.dao.SQLiteVideoDao;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordedApplicationTest {
+
+    private ConnectionProvider connections;
+    private Application app;
+
+    @Before
+    public void setUp() {
+        this.connections = new ConnectionProvider(":memory:");
+        this.app = RecordedApplication.wrap(new ApplicationLogic(new SQLiteBookDao(connections),
+                new SQLiteVideoDao(connections), new SQLiteCourseDao(connections),
+                new SQLiteEntryDao(connections)));
+    }
+
+    @After
+    public void tearDown() {
+        this.connections.close();
+    }
+
+    private List<RecordedEvent> record(Runnable calls, String eventName) throws IOException {
+        Path file = Files.createTempFile("recording", ".jfr");
+        Recording recording = new Recording();
+        recording.enable(eventName);
+        recording.start();
+        calls.run();
+        recording.stop();
+        recording.dump(file);
+        recording.close();
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().equals(eventName)) {
+                events.add(event);
+            }
+        }
+        Files.delete(file);
+        return events;
+    }
+
+    @Test
+    public void callsAreRecordedWithTypeAndRows() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            app.createBook("Kirja", "", "Kirjailija", "1");
+            app.createVideo("Video", "", "https://example.com", "1:00");
+            app.getEntries();
+        }, "kapistelykirjasto.Application");
+
+        assertEquals(3, events.size());
+        assertEquals("createBook", events.get(0).getString("method"));
+        assertEquals("book", events.get(0).getString("entryType"));
+        assertEquals(1, events.get(0).getInt("rows"));
+        assertEquals("video", events.get(1).getString("entryType"));
+        assertEquals("getEntries", events.get(2).getString("method"));
+        assertEquals("entry", events.get(2).getString("entryType"));
+        assertEquals(2, events.get(2).getInt("rows"));
+        assertFalse(events.get(2).getBoolean("error"));
+    }
+
+    @Test
+    public void failedCreateIsRecordedAsError() throws IOException {
+        app.createBook("Kirja", "", "Kirjailija", "1");
+        List<RecordedEvent> events = record(() -> app.createBook("Kirja", "", "Kirjailija", "1"),
+                "kapistelykirjasto.Application");
+
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).getBoolean("error"));
+        assertEquals(0, events.get(0).getInt("rows"));
+    }
+
+    @Test
+    public void statementsAreRecordedWithSqlAndRows() throws IOException {
+        app.createBook("Kirja", "", "Kirjailija", "1");
+        app.createBook("Toinen kirja", "", "Kirjailija", "2");
+        List<RecordedEvent> events = record(() -> app.getBooks(), "kapistelykirjasto.Statement");
+
+        assertEquals(1, events.size());
+        assertEquals("SELECT * FROM book", events.get(0).getString("sql"));
+        assertEquals("book", events.get(0).getString("entryType"));
+        assertEquals(2, events.get(0).getInt("rows"));
+    }
+
+    @Test
+    public void entryTypeIsTakenFromMethodName() {
+        assertEquals("book", RecordedApplication.entryType("markBookAsRead"));
+        assertEquals("video", RecordedApplication.entryType("getReadVideos"));
+        assertEquals("course", RecordedApplication.entryType("createCourse"));
+        assertEquals("entry", RecordedApplication.entryType("getCourseEntries"));
+        assertEquals("entry", RecordedApplication.entryType("search"));
+    }
+}
@@ -0,0 +1,259 @@
+package kapistelykirjasto.ui.http;
+
+import kapistelykirjasto.dao.ConnectionProvider;
+import kapistelykirjasto.dao.SQLiteBookDao;
+import kapistelykirjasto.dao.SQLiteCourseDao;
+import kapistelykirjasto.dao.SQLiteEntryDao;
+import kapistelykirjasto.dao.SQLiteVideoDao;
+import kapistelykirjasto.domain.Application;
+import kapistelykirjasto.domain.ApplicationLogic;
+import kapistelykirjasto.domain.Book;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class LibraryServerTest {
+
+    private ConnectionProvider connections;
+    private ExecutorService executor;
+    private LibraryServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.connections = new ConnectionProvider(":memory:");
+        this.executor = Executors.newCachedThreadPool();
+        start(new ApplicationLogic(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                new SQLiteCourseDao(connections), new SQLiteEntryDao(connections)), 16, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop(0);
+        this.executor.shutdown();
+        this.connections.close();
+    }
+
+    private void start(Application app, int maxConcurrent, long queueTimeoutMillis) throws IOException {
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+        this.server = new LibraryServer(app, new InetSocketAddress("localhost", 0), maxConcurrent,
+                queueTimeoutMillis, executor);
+        this.server.start();
+    }
+
+    /**
+     * Sends the request and returns the status and the body as "status body".
+     */
+    private String request(String method, String path, String form) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (form != null) {
+            connection.setDoOutput(true);
+            OutputStream out = connection.getOutputStream();
+            out.write(form.getBytes(StandardCharsets.UTF_8));
+            out.close();
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return (status + " " + read(in)).trim();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+            in.close();
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void createdBookIsListedAsJson() throws IOException {
+        assertEquals("201 {\"id\":1}", request("POST", "/books",
+                "title=Hello+Ruby%21&author=Linda+Liukas&isbn=032-135522-K&comment=%22lapsille%22%0A"));
+
+        assertEquals("200 [{\"type\":\"book\",\"id\":1,\"title\":\"Hello Ruby!\",\"author\":\"Linda Liukas\""
+                + ",\"isbn\":\"032-135522-K\",\"comment\":\"\\\"lapsille\\\"\\u000a\"}]", request("GET", "/books", null));
+    }
+
+    @Test
+    public void entriesCanBeEditedMarkedAndDeleted() throws IOException {
+        request("POST", "/videos", "title=Video&url=https%3A%2F%2Fexample.com&duration=1%3A00");
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1");
+
+        assertEquals("204", request("PUT", "/videos/1", "title=Uusi+video&duration=2%3A00"));
+        assertEquals("204", request("POST", "/books/1/read", ""));
+        assertTrue(request("GET", "/entries?read=true", null).contains("\"title\":\"Kirja\""));
+        assertTrue(request("GET", "/entries?read=false", null).contains("\"title\":\"Uusi video\""));
+        assertEquals("204", request("DELETE", "/books/1", null));
+        assertEquals("404 {\"error\":\"lukuvinkkiä ei löydy\"}", request("DELETE", "/books/1", null));
+    }
+
+    @Test
+    public void rejectedEditIsNotReportedAsMissing() throws IOException {
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1");
+        request("POST", "/books", "title=Toinen&author=Kirjailija&isbn=2");
+        request("POST", "/videos", "title=Video&url=https%3A%2F%2Fexample.com");
+
+        assertEquals("409 {\"error\":\"otsikko on jo käytössä: Toinen\"}", request("PUT", "/books/1", "title=Toinen"));
+        assertTrue(request("PUT", "/videos/1", "title=").startsWith("400 {\"error\":"));
+        assertEquals("404 {\"error\":\"lukuvinkkiä ei löydy\"}", request("PUT", "/books/3", "title=Kolmas"));
+        assertEquals("204", request("PUT", "/books/1", "title=Kirja&author=Toinen"));
+    }
+
+    @Test
+    public void invalidEntryIsRejected() throws IOException {
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1");
+
+        assertTrue(request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1").startsWith("400 {\"error\":"));
+        assertTrue(request("POST", "/videos", "title=Video").startsWith("400 {\"error\":"));
+    }
+
+    @Test
+    public void entriesArePagedAndExported() throws IOException {
+        request("POST", "/books", "title=B&author=Kirjailija&isbn=1");
+        request("POST", "/videos", "title=A&url=https%3A%2F%2Fexample.com");
+
+        String first = request("GET", "/entries?size=1&sort=title", null);
+        assertTrue(first.startsWith("200 {\"items\":[{\"type\":\"video\",\"id\":1,\"title\":\"A\""));
+        String token = first.substring(first.indexOf("\"next\":\"") + 8, first.lastIndexOf('"'));
+        assertTrue(request("GET", "/entries?size=1&sort=title&token=" + token, null).endsWith("\"next\":null}"));
+        assertTrue(request("GET", "/export", null).matches("200 \\[\\{\"type\":\"book\".*\\},\\{\"type\":\"video\".*\\}\\]"));
+    }
+
+    @Test
+    public void coursesAndCourseEntries() throws IOException {
+        assertEquals("204", request("POST", "/courses", "code=TKT20006&name=Ohjelmistotuotanto"));
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1&courses=1");
+
+        assertEquals("200 [{\"id\":1,\"code\":\"TKT20006\",\"name\":\"Ohjelmistotuotanto\"}]",
+                request("GET", "/courses", null));
+        assertTrue(request("GET", "/courses/1/entries?order=title", null).contains("\"title\":\"Kirja\""));
+    }
+
+    @Test
+    public void badRequestsAreRejected() throws IOException {
+        assertTrue(request("GET", "/nothing", null).startsWith("404"));
+        assertTrue(request("DELETE", "/books", null).startsWith("405"));
+        assertEquals("400 {\"error\":\"parametri puuttuu: title\"}", request("POST", "/books", "author=X"));
+        assertTrue(request("GET", "/entries?order=random", null).startsWith("400"));
+        assertTrue(request("GET", "/entries?size=1&token=rikki", null).startsWith("400"));
+    }
+
+    private HttpURLConnection get(String path, String ifNoneMatch) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return connection;
+    }
+
+    @Test
+    public void unchangedListingIsNotModified() throws IOException {
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1");
+        String etag = get("/entries", null).getHeaderField("ETag");
+
+        assertTrue(etag.startsWith("W/\""));
+        assertEquals(304, get("/entries", etag).getResponseCode());
+        assertEquals(304, get("/entries", "\"x\", " + etag).getResponseCode());
+        assertEquals(2, server.getCache().getNotModifiedCount());
+        request("POST", "/books/1/read", "");
+        HttpURLConnection changed = get("/entries", etag);
+        assertEquals(200, changed.getResponseCode());
+        assertNotEquals(etag, changed.getHeaderField("ETag"));
+    }
+
+    @Test
+    public void courseTagChangesOnlyWithItsEntries() throws IOException {
+        request("POST", "/courses", "code=TKT20006&name=Ohjelmistotuotanto");
+        request("POST", "/courses", "code=TKT20007&name=Ohjelmistotekniikka");
+        String etag = get("/courses/1/entries", null).getHeaderField("ETag");
+
+        request("POST", "/books", "title=Toinen&author=Kirjailija&isbn=2&courses=2");
+        assertEquals(304, get("/courses/1/entries", etag).getResponseCode());
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1&courses=1");
+        assertEquals(200, get("/courses/1/entries", etag).getResponseCode());
+        String edited = get("/courses/1/entries", null).getHeaderField("ETag");
+        request("PUT", "/books/2", "title=Muokattu&author=Kirjailija&isbn=2");
+        assertEquals(200, get("/courses/1/entries", edited).getResponseCode());
+    }
+
+    @Test
+    public void repeatedListingIsServedFromTheCache() throws Exception {
+        CountDownLatch queried = new CountDownLatch(2);
+        start(new ApplicationLogic(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                new SQLiteCourseDao(connections), new SQLiteEntryDao(connections)) {
+            @Override
+            public ArrayList<Book> getBooks() {
+                queried.countDown();
+                return super.getBooks();
+            }
+        }, 16, 1000);
+        request("POST", "/books", "title=Kirja&author=Kirjailija&isbn=1");
+
+        String first = request("GET", "/books", null);
+        assertEquals(first, request("GET", "/books", null));
+        assertEquals(1, queried.getCount());
+        assertEquals(1, server.getCache().getHits());
+        request("DELETE", "/books/1", null);
+        assertEquals("200 []", request("GET", "/books", null));
+        assertEquals(0, queried.getCount());
+    }
+
+    /**
+     * An application whose book listing signals entered and then waits for release, so that
+     * the request keeps its slot meanwhile.
+     */
+    private ApplicationLogic blockingBooks(CountDownLatch entered, CountDownLatch release) {
+        return new ApplicationLogic(new SQLiteBookDao(connections), new SQLiteVideoDao(connections),
+                new SQLiteCourseDao(connections), new SQLiteEntryDao(connections)) {
+            @Override
+            public ArrayList<Book> getBooks() {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getBooks();
+            }
+        };
+    }
+
+    @Test
+    public void requestsOverTheLimitAreShed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(1);
+        start(blockingBooks(entered, release), 1, 0);
+        Future<String> slow = Executors.newSingleThreadExecutor().submit(() -> request("GET", "/books", null));
+        entered.await();
+
+        assertTrue(request("GET", "/courses", null).startsWith("503"));
+        release.countDown();
+        assertEquals("200 []", slow.get());
+        assertEquals(1, server.getRejectedCount());
+        assertEquals(1, server.getServedCount());
+    }
+}
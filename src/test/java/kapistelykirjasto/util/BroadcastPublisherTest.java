@@ -0,0 +1,141 @@
+package kapistelykirjasto.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BroadcastPublisherTest {
+
+    private static class Recorder implements Flow.Subscriber<Long> {
+
+        final List<Long> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Long item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Test
+    public void itemsAreDeliveredOnlyAsRequested() {
+        BroadcastPublisher<Long> publisher = new BroadcastPublisher<>(10, null);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(sequence -> sequence);
+        }
+
+        assertTrue(recorder.items.isEmpty());
+        recorder.subscription.request(2);
+        assertEquals(Arrays.asList(1L, 2L), recorder.items);
+        recorder.subscription.request(5);
+        publisher.publish(sequence -> sequence);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), recorder.items);
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void subscriberThatFallsBehindIsDropped() {
+        BroadcastPublisher<Long> publisher = new BroadcastPublisher<>(2, null);
+        Recorder slow = new Recorder();
+        Recorder fast = new Recorder();
+        publisher.subscribe(slow);
+        publisher.subscribe(fast);
+        fast.subscription.request(Long.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(sequence -> sequence);
+        }
+
+        assertTrue(slow.error instanceof IllegalStateException);
+        assertTrue(slow.items.isEmpty());
+        assertEquals(Arrays.asList(1L, 2L, 3L), fast.items);
+        slow.subscription.cancel();
+        fast.subscription.cancel();
+        assertFalse(publisher.hasSubscribers());
+    }
+
+    @Test
+    public void nothingIsMadeWithoutSubscribers() {
+        BroadcastPublisher<Long> publisher = new BroadcastPublisher<>(2, null);
+        publisher.publish(sequence -> {
+            throw new AssertionError("ei tilaajia");
+        });
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertFalse(publisher.hasSubscribers());
+    }
+
+    /**
+     * Requests every item and opens done when the item numbered last arrives.
+     */
+    private static class Waiter extends Recorder {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final long last;
+
+        Waiter(long last) {
+            this.last = last;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            super.onSubscribe(subscription);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Long item) {
+            super.onNext(item);
+            if (item == last) {
+                done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void executorDeliversEveryItemInOrder() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BroadcastPublisher<Long> publisher = new BroadcastPublisher<>(10000, executor);
+            Waiter waiter = new Waiter(10000);
+            publisher.subscribe(waiter);
+            for (int i = 0; i < 10000; i++) {
+                publisher.publish(sequence -> sequence);
+            }
+            assertTrue(waiter.done.await(10, TimeUnit.SECONDS));
+            assertEquals(10000, waiter.items.size());
+            for (int i = 0; i < waiter.items.size(); i++) {
+                assertEquals(i + 1, (long) waiter.items.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
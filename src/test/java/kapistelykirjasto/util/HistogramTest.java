@@ -0,0 +1,38 @@
+package kapistelykirjasto.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndContainTheirValues() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = Histogram.bucket(value);
+            assertTrue(value <= Histogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > Histogram.highestValue(bucket - 1));
+        }
+        assertTrue(Histogram.bucket(Long.MAX_VALUE) < 64 * 16);
+    }
+
+    @Test
+    public void percentilesAreWithinOneSixteenth() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(5000000, histogram.getPercentile(0.5), 5000000 / 16.0);
+        assertEquals(9900000, histogram.getPercentile(0.99), 9900000 / 16.0);
+        assertEquals(10000000, histogram.getPercentile(1.0));
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(10000, histogram.getCount());
+    }
+}
@@ -38,4 +38,11 @@ Feature: as an user I want to see a list of entries
        When video with title "Crash Course Computer Science Preview", url "https://youtu.be/tpIctyqH29Q", duration "2:44" and comment "Kiva" is added
        When action "2" is chosen
        And type "2" is selected
-       Then system will respond with "Crash Course Computer Science Preview"
\ No newline at end of file
+       Then system will respond with "Crash Course Computer Science Preview"
+
+    Scenario: Search lists entries matching the search words
+       When book with title "Hello Ruby!", author "Linda Liukas", ISBN "032-135522-K" and comment "" is added
+       When action "2" is chosen
+       And type "4" is selected
+       And type "liukas" is selected
+       Then system will respond with "osuma: Linda [Liukas]"